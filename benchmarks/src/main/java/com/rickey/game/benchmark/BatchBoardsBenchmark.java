@@ -0,0 +1,121 @@
+package com.rickey.game.benchmark;
+
+import com.rickey.game.batch.BatchBoards;
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.strategy.ConnectWinStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class {@code BatchBoardsBenchmark} plays the same random 7 * 6 games to their
+ * end in three ways: one {@link FallDownGridPanel} per game with
+ * {@code ConnectWinStrategy(4)}, and all games at once in {@link BatchBoards}, one
+ * lane after another or with the Vector API. Every move is checked for a win and a
+ * draw. The score is games per microsecond.
+ *
+ * The fork adds {@code --add-modules jdk.incubator.vector}, so this benchmark needs
+ * Java 17 or later.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class BatchBoardsBenchmark {
+    private static final int GAMES = 4096;
+    private static final ColorDisc[] DISCS = {ColorDisc.RED_DISC, ColorDisc.GREEN_DISC};
+
+    //plies[ply][game]: the column of the move, starting from 1, 0 after the end of the game
+    private int[][] plies;
+    private FallDownGridPanel<ColorDisc>[] panels;
+    private ConnectWinStrategy winStrategy;
+    private BatchBoards scalarBoards;
+    private BatchBoards vectorBoards;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GameUserException {
+        winStrategy = new ConnectWinStrategy(4);
+        plies = new int[7 * 6][GAMES];
+        panels = new FallDownGridPanel[GAMES];
+        Random random = new Random(42);
+        for(int game = 0; game < GAMES; game++){
+            panels[game] = new FallDownGridPanel<>(7, 6);
+            FallDownGridPanel<ColorDisc> panel = panels[game];
+            for(int ply = 0; ply < plies.length; ply++){
+                int column;
+                do {
+                    column = random.nextInt(7) + 1;
+                } while(panel.getData(column - 1, 5) != null);
+                panel.put(column, DISCS[ply % 2]);
+                plies[ply][game] = column;
+                if(winStrategy.isWin(panel, panel.getLatestStep()) || winStrategy.isGameADraw(panel)){
+                    break;
+                }
+            }
+        }
+        scalarBoards = new BatchBoards(7, 6, GAMES, false);
+        vectorBoards = new BatchBoards(7, 6, GAMES, true);
+        if(!vectorBoards.isVectorized()){
+            throw new IllegalStateException("The Vector API is not available.");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public int perPanel() throws GameUserException {
+        int ended = 0;
+        for(int game = 0; game < GAMES; game++){
+            FallDownGridPanel<ColorDisc> panel = panels[game];
+            panel.cleanUpPanel();
+            for(int ply = 0; ply < plies.length && plies[ply][game] != 0; ply++){
+                panel.put(plies[ply][game], DISCS[ply % 2]);
+                if(winStrategy.isWin(panel, panel.getLatestStep()) || winStrategy.isGameADraw(panel)){
+                    ended++;
+                    break;
+                }
+            }
+        }
+        return ended;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public int batchScalar(){
+        return playAll(scalarBoards);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public int batchVector(){
+        return playAll(vectorBoards);
+    }
+
+    private int playAll(BatchBoards boards){
+        boards.clear();
+        for(int[] columns : plies){
+            if(boards.play(columns) == 0){
+                break;
+            }
+        }
+        return boards.count(BatchBoards.RESULT_WIN) + boards.count(BatchBoards.RESULT_DRAW);
+    }
+}
@@ -0,0 +1,124 @@
+package com.rickey.game.benchmark;
+
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.record.GameRecord;
+import com.rickey.game.record.GameRecordReader;
+import com.rickey.game.record.GameRecordWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class {@code GameRecordBenchmark} measures how many games per second are
+ * encoded, decoded, and decoded and replayed into a {@link FallDownGridPanel}.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GameRecordBenchmark {
+    private static final int GAMES = 1000;
+    private static final ColorDisc[] DISCS = {ColorDisc.RED_DISC, ColorDisc.GREEN_DISC};
+
+    private GameRecord[] records;
+    private byte[] archive;
+    private GameRecord record;
+    private FallDownGridPanel<ColorDisc> panel;
+    private OutputStream nullStream;
+
+    @Setup
+    public void setUp() throws IOException {
+        //random 7 * 6 games without checking for wins, of the typical length
+        Random random = new Random(42);
+        records = new GameRecord[GAMES];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GameRecordWriter writer = new GameRecordWriter(bytes);
+        for(int idx = 0; idx < GAMES; idx++){
+            records[idx] = new GameRecord();
+            records[idx].reset(7, 6, 4, GameRecord.RESULT_FIRST_PLAYER_WIN + idx % 2);
+            int[] heights = new int[7];
+            int moves = 7 + random.nextInt(30);
+            for(int move = 0; move < moves; move++){
+                int x;
+                do {
+                    x = random.nextInt(7);
+                } while(heights[x] == 6);
+                heights[x]++;
+                records[idx].addMove(x + 1);
+            }
+            writer.write(records[idx]);
+        }
+        writer.close();
+        archive = bytes.toByteArray();
+        record = new GameRecord();
+        panel = new FallDownGridPanel<>(7, 6);
+        nullStream = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public long encode() throws IOException {
+        GameRecordWriter writer = new GameRecordWriter(nullStream);
+        for(GameRecord game : records){
+            writer.write(game);
+        }
+        writer.flush();
+        return writer.getRecordCount();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public long decode() throws IOException {
+        GameRecordReader reader = new GameRecordReader(new ByteArrayInputStream(archive));
+        long moves = 0;
+        while(reader.next(record)){
+            moves += record.getMoveCount();
+        }
+        return moves;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(GAMES)
+    public long decodeAndReplay() throws IOException, GameUserException {
+        GameRecordReader reader = new GameRecordReader(new ByteArrayInputStream(archive));
+        long moves = 0;
+        while(reader.next(record)){
+            record.replay(panel, DISCS);
+            moves += panel.getMoveCount();
+            while(panel.getLatestStep() != null){
+                panel.stepBack();
+            }
+        }
+        return moves;
+    }
+}
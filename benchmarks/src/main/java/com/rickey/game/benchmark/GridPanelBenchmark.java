@@ -0,0 +1,190 @@
+package com.rickey.game.benchmark;
+
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.BitboardGridPanel;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.LineTrackingGridPanel;
+import com.rickey.game.datamodel.PackedGridPanel;
+import com.rickey.game.datamodel.SparseGridPanel;
+import com.rickey.game.strategy.ConnectWinStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class {@code GridPanelBenchmark} measures the hot paths of the grid panels
+ * and the win strategy on mid-game positions of real games, for every kind of
+ * {@link FallDownGridPanel}.
+ *
+ * Run it with {@code gradle jmh}, the GC profiler adds the allocation rate of
+ * every benchmark, and the results are written to
+ * {@code benchmarks/build/results/jmh/results.json}.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GridPanelBenchmark {
+    //moves of 7 * 6 games, columns starting from 1, nobody has won yet
+    private static final String[] MID_GAME_POSITIONS = {
+            "732335645535533245226446",
+            "44155134553343554643",
+            "451234265625545744",
+            "54744466445525515233336",
+            "243523445455143523361356",
+            "4233544543233423421",
+            "4542255564153446333",
+            "274535555424462347"
+    };
+    private static final String GAME = MID_GAME_POSITIONS[1];
+    private static final ColorDisc[] DISCS = {ColorDisc.RED_DISC, ColorDisc.GREEN_DISC};
+
+    @Param({"FallDownGridPanel", "BitboardGridPanel", "LineTrackingGridPanel", "SparseGridPanel", "PackedGridPanel"})
+    public String panelType;
+
+    private FallDownGridPanel<ColorDisc>[] positions;
+    //a column which is not full yet in every position
+    private int[] openColumns;
+    private FallDownGridPanel<ColorDisc> gamePanel;
+    private ConnectWinStrategy winStrategy;
+    private PrintStream nullStream;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GameUserException {
+        positions = new FallDownGridPanel[MID_GAME_POSITIONS.length];
+        openColumns = new int[MID_GAME_POSITIONS.length];
+        for(int idx = 0; idx < positions.length; idx++){
+            positions[idx] = createPanel();
+            play(positions[idx], MID_GAME_POSITIONS[idx]);
+            openColumns[idx] = 4;
+            while(positions[idx].getData(openColumns[idx] - 1, 5) != null){
+                openColumns[idx]++;
+            }
+        }
+        gamePanel = createPanel();
+        winStrategy = new ConnectWinStrategy(4);
+        nullStream = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    /**
+     * Take back the game of {@link #put()}, outside the measurement.
+     */
+    @Setup(Level.Invocation)
+    public void clearGame() throws GameUserException {
+        while(gamePanel.getLatestStep() != null){
+            gamePanel.stepBack();
+        }
+    }
+
+    /**
+     * Put all the discs of a game on an empty panel, one operation per disc.
+     */
+    @Benchmark
+    @OperationsPerInvocation(20)
+    public FallDownGridPanel<ColorDisc> put() throws GameUserException {
+        play(gamePanel, GAME);
+        return gamePanel;
+    }
+
+    /**
+     * A disc has to be put before it can be taken back, so every operation puts one
+     * disc on every mid-game position and takes it back. The cost of
+     * {@link #put()} is included.
+     */
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public FallDownGridPanel<ColorDisc> stepBack() throws GameUserException {
+        FallDownGridPanel<ColorDisc> panel = null;
+        for(int idx = 0; idx < positions.length; idx++){
+            panel = positions[idx];
+            panel.put(openColumns[idx], DISCS[MID_GAME_POSITIONS[idx].length() & 1]);
+            panel.stepBack();
+        }
+        return panel;
+    }
+
+    /**
+     * Check the latest step of every mid-game position.
+     */
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public int isWin(){
+        int wins = 0;
+        for(FallDownGridPanel<ColorDisc> panel : positions){
+            if(winStrategy.isWin(panel, panel.getLatestStep())){
+                wins++;
+            }
+        }
+        return wins;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public int isPanelFull(){
+        int full = 0;
+        for(FallDownGridPanel<ColorDisc> panel : positions){
+            if(panel.isPanelFull()){
+                full++;
+            }
+        }
+        return full;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void displayGridPanel(){
+        for(FallDownGridPanel<ColorDisc> panel : positions){
+            panel.displayGridPanel(nullStream);
+        }
+    }
+
+    private FallDownGridPanel<ColorDisc> createPanel(){
+        if("BitboardGridPanel".equals(panelType)){
+            return new BitboardGridPanel<>(7, 6);
+        }
+        if("LineTrackingGridPanel".equals(panelType)){
+            return new LineTrackingGridPanel<>(7, 6, 4);
+        }
+        if("SparseGridPanel".equals(panelType)){
+            return new SparseGridPanel<>(7, 6);
+        }
+        if("PackedGridPanel".equals(panelType)){
+            return new PackedGridPanel<>(7, 6);
+        }
+        return new FallDownGridPanel<>(7, 6);
+    }
+
+    private static void play(FallDownGridPanel<ColorDisc> panel, String moves) throws GameUserException {
+        for(int idx = 0; idx < moves.length(); idx++){
+            panel.put(moves.charAt(idx) - '0', DISCS[idx & 1]);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.rickey.game.benchmark;
+
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.PackedGridPanel;
+import com.rickey.game.strategy.ConnectWinStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class {@code MultiPlayerBenchmark} measures a move, its win check and its undo
+ * on a half full 20 * 16 panel, where 2 to 8 players drop their discs in turn, with
+ * a {@code Cell} per coordinate and with a {@link PackedGridPanel}. The win is checked
+ * by the coordinates of the move, so no step is built.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MultiPlayerBenchmark {
+    private static final int WIDTH = 20;
+    private static final int HEIGHT = 16;
+    private static final int MOVES = 64;
+
+    @Param({"2", "4", "8"})
+    public int players;
+
+    @Param({"FallDownGridPanel", "PackedGridPanel"})
+    public String panelType;
+
+    private FallDownGridPanel<ColorDisc> panel;
+    private ConnectWinStrategy winStrategy;
+    private int[] columns;
+    //the row where the disc of a move lands, every move is taken back
+    private int[] rows;
+    private ColorDisc[] discs;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GameUserException {
+        Random random = new Random(42);
+        panel = "PackedGridPanel".equals(panelType) ? new PackedGridPanel<>(WIDTH, HEIGHT) : new FallDownGridPanel<>(WIDTH, HEIGHT);
+        discs = new ColorDisc[players];
+        for(int idx = 0; idx < players; idx++){
+            discs[idx] = ColorDisc.valueOf(idx);
+        }
+        int[] heights = new int[WIDTH];
+        for(int idx = 0; idx < WIDTH * HEIGHT / 2; idx++){
+            int column;
+            do {
+                column = random.nextInt(WIDTH);
+            } while(heights[column] == HEIGHT - 1);
+            heights[column]++;
+            panel.put(column + 1, discs[idx % players]);
+        }
+        winStrategy = new ConnectWinStrategy(4);
+        columns = new int[MOVES];
+        rows = new int[MOVES];
+        for(int idx = 0; idx < MOVES; idx++){
+            do {
+                columns[idx] = random.nextInt(WIDTH);
+            } while(heights[columns[idx]] == HEIGHT - 1);
+            rows[idx] = heights[columns[idx]];
+            columns[idx]++;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int putCheckAndStepBack() throws GameUserException {
+        int wins = 0;
+        for(int idx = 0; idx < MOVES; idx++){
+            panel.put(columns[idx], discs[idx % players]);
+            if(winStrategy.isWin(panel, columns[idx] - 1, rows[idx])){
+                wins++;
+            }
+            panel.stepBack();
+        }
+        return wins;
+    }
+}
@@ -0,0 +1,74 @@
+package com.rickey.game.benchmark;
+
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.SparseGridPanel;
+import com.rickey.game.strategy.ConnectWinStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class {@code SparseGridPanelBenchmark} measures a move, its Connect Six win
+ * check and its undo on a 2000 * 2000 {@link SparseGridPanel} which already has
+ * many discs spread over the panel.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SparseGridPanelBenchmark {
+    private static final int SIZE = 2000;
+    private static final int DISCS_ON_PANEL = 50000;
+    private static final int MOVES = 64;
+    private static final ColorDisc[] DISCS = {ColorDisc.RED_DISC, ColorDisc.GREEN_DISC};
+
+    private SparseGridPanel<ColorDisc> panel;
+    private ConnectWinStrategy winStrategy;
+    private int[] columns;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GameUserException {
+        Random random = new Random(42);
+        panel = new SparseGridPanel<>(SIZE, SIZE);
+        for(int idx = 0; idx < DISCS_ON_PANEL; idx++){
+            panel.put(random.nextInt(SIZE) + 1, DISCS[idx & 1]);
+        }
+        winStrategy = new ConnectWinStrategy(6);
+        columns = new int[MOVES];
+        for(int idx = 0; idx < MOVES; idx++){
+            columns[idx] = random.nextInt(SIZE) + 1;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MOVES)
+    public int putCheckAndStepBack() throws GameUserException {
+        int wins = 0;
+        for(int idx = 0; idx < MOVES; idx++){
+            panel.put(columns[idx], DISCS[idx & 1]);
+            if(winStrategy.isWin(panel, panel.getLatestStep())){
+                wins++;
+            }
+            panel.stepBack();
+        }
+        return wins;
+    }
+}
@@ -0,0 +1,110 @@
+package com.rickey.game.benchmark;
+
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.Step;
+import com.rickey.game.spectator.SpectatorFeed;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class {@code SpectatorFeedBenchmark} measures how long it takes to show a
+ * move to all spectators of a game: printing the panel for every spectator, or
+ * publishing the move once to a {@link SpectatorFeed} which every spectator reads.
+ *
+ * Every invocation is a move and its undo, so the panel stays the same.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SpectatorFeedBenchmark {
+    private static final String POSITION = "44155134553343554643";
+
+    @Param({"1000"})
+    public int spectators;
+
+    private FallDownGridPanel<ColorDisc> panel;
+    private SpectatorFeed<ColorDisc> feed;
+    private SpectatorFeed<ColorDisc>.Cursor[] cursors;
+    private PrintStream nullStream;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GameUserException {
+        panel = new FallDownGridPanel<>(7, 6);
+        for(int idx = 0; idx < POSITION.length(); idx++){
+            panel.put(POSITION.charAt(idx) - '0', idx % 2 == 0 ? ColorDisc.RED_DISC : ColorDisc.GREEN_DISC);
+        }
+        feed = new SpectatorFeed<>(panel);
+        cursors = new SpectatorFeed.Cursor[spectators];
+        for(int idx = 0; idx < spectators; idx++){
+            cursors[idx] = feed.subscribe();
+            cursors[idx].read();
+        }
+        nullStream = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        });
+    }
+
+    @Benchmark
+    public FallDownGridPanel<ColorDisc> renderPerSpectator() throws GameUserException {
+        panel.put(1, ColorDisc.RED_DISC);
+        for(int idx = 0; idx < spectators; idx++){
+            panel.displayGridPanel(nullStream);
+        }
+        panel.stepBack();
+        for(int idx = 0; idx < spectators; idx++){
+            panel.displayGridPanel(nullStream);
+        }
+        return panel;
+    }
+
+    @Benchmark
+    public long publishDelta() throws GameUserException {
+        long bytes = 0;
+        panel.put(1, ColorDisc.RED_DISC);
+        feed.stepIn(panel.getLatestStep());
+        bytes += readAll();
+        Step<ColorDisc> step = panel.getLatestStep();
+        panel.stepBack();
+        feed.stepBack(step);
+        bytes += readAll();
+        return bytes;
+    }
+
+    private long readAll(){
+        long bytes = 0;
+        for(SpectatorFeed<ColorDisc>.Cursor cursor : cursors){
+            ByteBuffer frames = cursor.read();
+            bytes += frames.remaining();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,50 @@
+package com.rickey.game.metrics.jfr;
+
+import com.rickey.game.metrics.EventSink;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The class {@code JfrEventSink} writes the operations of the probes as
+ * {@link OperationEvent}s. An event is only created while a JFR recording has the
+ * event enabled, and only committed when the recording wants it, e.g. when it is
+ * above the threshold.
+ *
+ * An event is kept by the thread where its operation began, an operation which
+ * ends in another thread is only in the histograms.
+ *
+ * This class needs Java 11, it is compiled from its own source root and loaded
+ * by {@code Metrics} with reflection.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class JfrEventSink implements EventSink {
+    //only used to find out whether the event is enabled, it is never committed
+    private static final OperationEvent PROTOTYPE = new OperationEvent();
+    //the events which began in a thread and did not end yet, by operation
+    private static final ThreadLocal<Map<String, OperationEvent>> PENDING = ThreadLocal.withInitial(HashMap::new);
+
+    @Override
+    public void begin(String operation){
+        if(PROTOTYPE.isEnabled()){
+            OperationEvent event = new OperationEvent();
+            event.operation = operation;
+            event.begin();
+            PENDING.get().put(operation, event);
+        }
+    }
+
+    @Override
+    public void end(String operation){
+        //the recording may have started while the operation was running
+        OperationEvent event = PENDING.get().remove(operation);
+        if(event != null){
+            event.end();
+            if(event.shouldCommit()){
+                event.commit();
+            }
+        }
+    }
+}
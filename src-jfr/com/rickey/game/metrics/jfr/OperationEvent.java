@@ -0,0 +1,25 @@
+package com.rickey.game.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event for an operation measured by a probe of the game engine. It is timed
+ * with {@link #begin()} and {@link #end()}, so it has the built-in duration of JFR.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+@Name("com.rickey.game.Operation")
+@Label("Game Operation")
+@Category("Connect Four")
+@Description("A put, undo, win check, draw check or turn of the game engine")
+@StackTrace(false)
+class OperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+}
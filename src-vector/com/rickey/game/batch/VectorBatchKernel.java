@@ -0,0 +1,82 @@
+package com.rickey.game.batch;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The class {@code VectorBatchKernel} plays the lanes of a {@link BatchBoards} with
+ * the Vector API, as many lanes at once as the preferred vector holds, e.g. 8 with
+ * AVX-512. The lanes which do not fill a whole vector are played one by one.
+ *
+ * This class needs Java 17 or later with {@code --add-modules jdk.incubator.vector},
+ * it is compiled from its own source root and loaded by {@link BatchKernel} with
+ * reflection.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+final class VectorBatchKernel extends BatchKernel {
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    //the results of the lanes of a vector in which a game ended
+    private final long[] ended = new long[SPECIES.length()];
+
+    VectorBatchKernel(int width, int height){
+        super(width, height);
+    }
+
+    @Override
+    boolean isVectorized(){
+        return true;
+    }
+
+    @Override
+    int play(long[] current, long[] occupied, long[] moves, byte[] results, int count){
+        int bound = SPECIES.loopBound(count);
+        int played = 0;
+        int idx = 0;
+        for(; idx < bound; idx += SPECIES.length()){
+            LongVector move = LongVector.fromArray(SPECIES, moves, idx);
+            LongVector before = LongVector.fromArray(SPECIES, occupied, idx);
+            VectorMask<Long> play = move.compare(VectorOperators.NE, 0L)
+                    .and(before.and(move.lanewise(VectorOperators.LSHL, topShift)).compare(VectorOperators.EQ, 0L));
+            if(!play.anyTrue()){
+                continue;
+            }
+            LongVector turn = LongVector.fromArray(SPECIES, current, idx);
+            LongVector after = before.or(before.add(move));
+            LongVector mover = turn.or(after.lanewise(VectorOperators.XOR, before));
+            //the discs of the opponent do not change, and the opponent moves next
+            turn.blend(turn.lanewise(VectorOperators.XOR, before), play).intoArray(current, idx);
+            before.blend(after, play).intoArray(occupied, idx);
+
+            VectorMask<Long> win = fours(mover).compare(VectorOperators.NE, 0L).and(play);
+            VectorMask<Long> draw = after.compare(VectorOperators.EQ, fullMask).and(play).andNot(win);
+            if(win.or(draw).anyTrue()){
+                //a mask is not turned into bits without boxing before Java 19, the rare ends go through an array
+                LongVector.zero(SPECIES).blend(BatchBoards.RESULT_WIN, win).blend(BatchBoards.RESULT_DRAW, draw).intoArray(ended, 0);
+                for(int lane = 0; lane < ended.length; lane++){
+                    if(ended[lane] != 0){
+                        results[idx + lane] = (byte) ended[lane];
+                    }
+                }
+            }
+            played += play.trueCount();
+        }
+        return played + play(current, occupied, moves, results, idx, count);
+    }
+
+    /**
+     * @return the first discs of all fours in a row, in every direction
+     */
+    private LongVector fours(LongVector mask){
+        return fours(mask, 1).or(fours(mask, columnBits)).or(fours(mask, columnBits - 1)).or(fours(mask, columnBits + 1));
+    }
+
+    private static LongVector fours(LongVector mask, int shift){
+        LongVector pairs = mask.and(mask.lanewise(VectorOperators.LSHR, shift));
+        return pairs.and(pairs.lanewise(VectorOperators.LSHR, 2 * shift));
+    }
+}
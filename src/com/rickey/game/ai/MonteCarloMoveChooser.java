@@ -0,0 +1,93 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.GamePlayer;
+import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IAnytimeMoveChooser;
+
+/**
+ * The class {@code MonteCarloMoveChooser} is a computer player which chooses its
+ * columns with a {@link MonteCarloTreeSearch}. Without a deadline it plays a fixed
+ * number of games per move, with a deadline it plays until the deadline.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class MonteCarloMoveChooser implements IAnytimeMoveChooser {
+    private long playouts;
+    private int threads;
+    //cancel() may come from another thread while the search is created
+    private volatile MonteCarloTreeSearch search;
+    private volatile boolean cancelled;
+    private MonteCarloResult lastResult;
+
+    /**
+     * @param playouts
+     *         how many games to play per move without a deadline
+     * @param threads
+     *         how many threads grow the tree
+     */
+    public MonteCarloMoveChooser(long playouts, int threads){
+        this.playouts = playouts;
+        this.threads = threads;
+    }
+
+    @Override
+    public int chooseColumn(GridPanel panel, GamePlayer player) {
+        lastResult = getSearch(panel).search(toFallDown(panel), player.getDisc(), playouts);
+        return lastResult.getColumn();
+    }
+
+    @Override
+    public int chooseColumn(GridPanel panel, GamePlayer player, long deadline) {
+        lastResult = getSearch(panel).searchUntil(toFallDown(panel), player.getDisc(), deadline);
+        return lastResult.getColumn();
+    }
+
+    @Override
+    public void cancel(){
+        cancelled = true;
+        MonteCarloTreeSearch current = search;
+        if(current != null){
+            current.cancel();
+        }
+    }
+
+    @Override
+    public int getLastDepth(){
+        return lastResult == null ? 0 : lastResult.getDepth();
+    }
+
+    @Override
+    public long getLastElapsedNanos(){
+        return lastResult == null ? 0 : lastResult.getElapsedNanos();
+    }
+
+    /**
+     * @return the result of the latest search, {@code null} if no move was chosen yet
+     */
+    public MonteCarloResult getLastResult(){
+        return lastResult;
+    }
+
+    private MonteCarloTreeSearch getSearch(GridPanel panel){
+        //the arena is kept between moves
+        MonteCarloTreeSearch current = search;
+        if(current == null){
+            current = new MonteCarloTreeSearch(panel.getMaxX(), panel.getMaxY(), threads);
+            search = current;
+            if(cancelled){
+                current.cancel();
+            }
+        }
+        return current;
+    }
+
+    private static FallDownGridPanel<?> toFallDown(GridPanel panel){
+        if(!(panel instanceof FallDownGridPanel)){
+            throw new GameSystemException("Internal error: Monte Carlo tree search plays on fall down panels only.");
+        }
+        return (FallDownGridPanel<?>) panel;
+    }
+}
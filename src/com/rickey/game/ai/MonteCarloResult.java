@@ -0,0 +1,88 @@
+package com.rickey.game.ai;
+
+/**
+ * {@code MonteCarloResult} is the outcome of a {@link MonteCarloTreeSearch} on a
+ * position, with the statistics of the search.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class MonteCarloResult {
+    private int column;
+    private int visits;
+    private double winRate;
+    private long playouts;
+    private int treeNodes;
+    private int depth;
+    private int threads;
+    private long elapsedNanos;
+
+    public MonteCarloResult(int column, int visits, double winRate, long playouts, int treeNodes, int depth,
+                            int threads, long elapsedNanos){
+        this.column = column;
+        this.visits = visits;
+        this.winRate = winRate;
+        this.playouts = playouts;
+        this.treeNodes = treeNodes;
+        this.depth = depth;
+        this.threads = threads;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the most visited column, starting from 1
+     */
+    public int getColumn(){
+        return column;
+    }
+
+    /**
+     * @return how many playouts went through the chosen column
+     */
+    public int getVisits(){
+        return visits;
+    }
+
+    /**
+     * @return the share of the points of the playouts through the chosen column, a draw is half a point
+     */
+    public double getWinRate(){
+        return winRate;
+    }
+
+    public long getPlayouts(){
+        return playouts;
+    }
+
+    /**
+     * @return how many nodes of the arena the tree used
+     */
+    public int getTreeNodes(){
+        return treeNodes;
+    }
+
+    /**
+     * @return the deepest ply of the tree which was reached
+     */
+    public int getDepth(){
+        return depth;
+    }
+
+    public int getThreads(){
+        return threads;
+    }
+
+    public long getElapsedNanos(){
+        return elapsedNanos;
+    }
+
+    public long getPlayoutsPerSecond(){
+        return elapsedNanos == 0 ? 0 : playouts * 1000000000L / elapsedNanos;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("column %d, win rate %.3f over %d visits, depth %d, %d nodes, %d playouts in %d ms (%d playouts/s)",
+                column, winRate, visits, depth, treeNodes, playouts, elapsedNanos / 1000000, getPlayoutsPerSecond());
+    }
+}
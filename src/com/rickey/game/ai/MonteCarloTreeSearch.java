@@ -0,0 +1,566 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.BitboardGridPanel;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.IDisc;
+import com.rickey.game.strategy.ConnectWinStrategy;
+import com.rickey.game.strategy.IWinStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * The class {@code MonteCarloTreeSearch} chooses moves by Monte Carlo tree search
+ * with the UCT policy. Every iteration walks down the tree to a leaf, plays a random
+ * game from there to its end, and adds the result to the nodes on the way.
+ *
+ * Several threads grow one shared tree without locks. The tree is kept in an arena
+ * of primitive arrays, a node is an index:
+ * <pre>
+ * visits[node], scores[node]   atomic counters, the score is 2 for a win, 1 for a draw
+ * children[node]               0 for a leaf, -1 while it is expanded, else its first child
+ * childCounts[node]            the children of a node are allocated next to each other
+ * columns[node]                the column of the move which leads to the node
+ * outcomes[node]               whether the move wins or draws the game, once it is known
+ * </pre>
+ * A leaf is expanded by the thread which swaps its children from 0 to -1, the
+ * children are published by writing the index of the first one. On its way down, a
+ * thread adds a virtual loss to every node, so the other threads prefer other paths
+ * until its playout is over.
+ *
+ * Every thread plays on its own panel, which is created once by the panel factory
+ * and rewound to the root after every iteration, and the results of the games are
+ * found by the {@link IWinStrategy}. So no object is created per iteration.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class MonteCarloTreeSearch {
+    public static final int DEFAULT_MAX_NODES = 1 << 20;
+    //the exploration constant of UCT, for scores from 0 to 1
+    private static final double EXPLORATION = 1.4;
+    //the visits added on the way down, they become a real visit with the result
+    private static final int VIRTUAL_LOSS = 3;
+    //a leaf is expanded once it has been visited before
+    private static final int EXPAND_VISITS = VIRTUAL_LOSS + 1;
+    private static final int EXPANDING = -1;
+    private static final int WIN = 2;
+    private static final int DRAW = 1;
+    private static final byte OUTCOME_UNKNOWN = 0;
+    private static final byte OUTCOME_NONE = 1;
+    private static final byte OUTCOME_WIN = 2;
+    private static final byte OUTCOME_DRAW = 3;
+    //the playouts are counted in batches, so the threads share no counter per playout
+    private static final int PLAYOUT_BATCH = 64;
+
+    private final Supplier<? extends FallDownGridPanel<IDisc>> panelFactory;
+    private final IWinStrategy winStrategy;
+    private final int threads;
+    private final int maxNodes;
+
+    private final AtomicIntegerArray visits;
+    private final AtomicIntegerArray scores;
+    private final AtomicIntegerArray children;
+    private final byte[] childCounts;
+    private final byte[] columns;
+    private final byte[] outcomes;
+    private final AtomicInteger nextNode = new AtomicInteger();
+
+    //the helper threads, created by the first search with more than one thread
+    private ThreadPoolExecutor pool;
+    private volatile boolean cancelled;
+
+    //the root of the latest search
+    private FallDownGridPanel<IDisc> rootPanel;
+    private IDisc[] discs;
+    //the playouts left, and the System.nanoTime() when the search stops
+    private final AtomicLong playoutsLeft = new AtomicLong();
+    private volatile boolean hasDeadline;
+    private volatile long deadline;
+
+    /**
+     * Constructs a search for Connect Four on {@code width * height} panels, it plays
+     * on {@link BitboardGridPanel}s.
+     */
+    public MonteCarloTreeSearch(int width, int height, int threads){
+        this(() -> new BitboardGridPanel<>(width, height), ConnectWinStrategy.CONNECTION_FOUR_STRATEGY, threads, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * Constructs a search.
+     *
+     * @param panelFactory
+     *         creates the empty panel of every thread, it must have the dimension of the positions to search
+     * @param winStrategy
+     *         finds the end of the games
+     * @param threads
+     *         how many threads grow the tree, the thread of the search is one of them
+     * @param maxNodes
+     *         the capacity of the arena, once it is full the leaves are not expanded any more
+     */
+    public MonteCarloTreeSearch(Supplier<? extends FallDownGridPanel<IDisc>> panelFactory, IWinStrategy winStrategy,
+                                int threads, int maxNodes){
+        if(threads < 1 || maxNodes < 1){
+            throw new GameSystemException(String.format("Internal error: invalid search of %d threads and %d nodes.", threads, maxNodes));
+        }
+        this.panelFactory = panelFactory;
+        this.winStrategy = winStrategy;
+        this.threads = threads;
+        this.maxNodes = maxNodes;
+        visits = new AtomicIntegerArray(maxNodes);
+        scores = new AtomicIntegerArray(maxNodes);
+        children = new AtomicIntegerArray(maxNodes);
+        childCounts = new byte[maxNodes];
+        columns = new byte[maxNodes];
+        outcomes = new byte[maxNodes];
+    }
+
+    /**
+     * Search a position for a number of playouts.
+     *
+     * @param panel
+     *         the position
+     * @param disc
+     *         the disc of the player to move
+     * @param playouts
+     *         how many games to play
+     * @return the most visited move with the statistics of the search
+     */
+    public MonteCarloResult search(FallDownGridPanel<?> panel, IDisc disc, long playouts){
+        hasDeadline = false;
+        return run(panel, disc, playouts);
+    }
+
+    /**
+     * Search a position until the deadline.
+     *
+     * @param deadline
+     *         the {@link System#nanoTime()} when the search has to stop
+     */
+    public MonteCarloResult searchUntil(FallDownGridPanel<?> panel, IDisc disc, long deadline){
+        this.deadline = deadline;
+        hasDeadline = true;
+        return run(panel, disc, Long.MAX_VALUE);
+    }
+
+    /**
+     * Stop the current search and every later one as soon as possible. It can be
+     * called from any thread, a stopped search still returns a move.
+     */
+    public void cancel(){
+        cancelled = true;
+    }
+
+    /**
+     * Stop the helper threads.
+     */
+    public void shutdown(){
+        if(pool != null){
+            pool.shutdown();
+        }
+    }
+
+    public int getThreads(){
+        return threads;
+    }
+
+    private MonteCarloResult run(FallDownGridPanel<?> panel, IDisc disc, long playouts){
+        long start = System.nanoTime();
+        rootPanel = copy(panel);
+        discs = new IDisc[]{disc, findOpponentDisc(panel, disc)};
+        playoutsLeft.set(playouts);
+        if(!hasOpenColumn(rootPanel)){
+            throw new GameSystemException("Internal error: no move on a full panel.");
+        }
+        //the root is a fresh leaf
+        nextNode.set(1);
+        visits.set(0, 0);
+        scores.set(0, 0);
+        children.set(0, 0);
+
+        List<Future<Worker>> helpers = new ArrayList<>(threads - 1);
+        if(threads > 1){
+            if(pool == null){
+                pool = new ThreadPoolExecutor(threads - 1, threads - 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "mcts-worker");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                pool.allowCoreThreadTimeOut(true);
+            }
+            for(int idx = 1; idx < threads; idx++){
+                helpers.add(pool.submit(() -> {
+                    Worker worker = new Worker();
+                    worker.run();
+                    return worker;
+                }));
+            }
+        }
+        Worker main = new Worker();
+        main.run();
+        long total = main.playouts;
+        int maxDepth = main.maxDepth;
+        try {
+            for(Future<Worker> helper : helpers){
+                Worker worker = helper.get();
+                total += worker.playouts;
+                maxDepth = Math.max(maxDepth, worker.maxDepth);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GameSystemException("Internal error: the search was interrupted.");
+        } catch (ExecutionException e) {
+            throw new GameSystemException(String.format("Internal error: a search thread failed, %s", e.getCause()));
+        }
+        return result(total, maxDepth, System.nanoTime() - start);
+    }
+
+    /**
+     * The most visited move is the best one, it is the most robust against the noise of the playouts.
+     */
+    private MonteCarloResult result(long playouts, int maxDepth, long elapsedNanos){
+        int first = children.get(0);
+        int count = first > 0 ? childCounts[0] : 0;
+        int best = -1;
+        for(int child = first; child < first + count; child++){
+            if(best < 0 || visits.get(child) > visits.get(best)){
+                best = child;
+            }
+        }
+        if(best < 0){
+            //not even one iteration, take any column
+            for(int x = 0; ; x++){
+                if(rootPanel.getData(x, rootPanel.getMaxY() - 1) == null){
+                    return new MonteCarloResult(x + 1, 0, 0, playouts, nextNode.get(), maxDepth, threads, elapsedNanos);
+                }
+            }
+        }
+        return new MonteCarloResult(columns[best] + 1, visits.get(best), scores.get(best) / (2.0 * Math.max(visits.get(best), 1)),
+                playouts, Math.min(nextNode.get(), maxNodes), maxDepth, threads, elapsedNanos);
+    }
+
+    /**
+     * Replay the moves of a panel on a new panel of the factory.
+     */
+    private FallDownGridPanel<IDisc> copy(FallDownGridPanel<?> panel){
+        FallDownGridPanel<IDisc> copy = panelFactory.get();
+        if(copy.getMaxX() != panel.getMaxX() || copy.getMaxY() != panel.getMaxY()){
+            throw new GameSystemException("Internal error: the panel does not match the search.");
+        }
+        int[] heights = new int[panel.getMaxX()];
+        try {
+            for(int idx = 0; idx < panel.getMoveCount(); idx++){
+                int x = panel.getMoveColumn(idx) - 1;
+                copy.put(x + 1, panel.getData(x, heights[x]++));
+            }
+        } catch (GameUserException e) {
+            throw new GameSystemException(String.format("Internal error: the panel cannot be copied, %s", e.getMessage()));
+        }
+        return copy;
+    }
+
+    /**
+     * The opponent is the owner of any other disc on the panel. On a panel without one,
+     * the players have the two color discs.
+     */
+    private static IDisc findOpponentDisc(FallDownGridPanel<?> panel, IDisc disc){
+        for(int x = 0; x < panel.getMaxX(); x++){
+            IDisc data;
+            for(int y = 0; y < panel.getMaxY() && (data = panel.getData(x, y)) != null; y++){
+                if(!data.equals(disc)){
+                    return data;
+                }
+            }
+        }
+        return disc == ColorDisc.RED_DISC ? ColorDisc.GREEN_DISC : ColorDisc.RED_DISC;
+    }
+
+    private static boolean hasOpenColumn(FallDownGridPanel<?> panel){
+        for(int x = 0; x < panel.getMaxX(); x++){
+            if(panel.getData(x, panel.getMaxY() - 1) == null){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Grow the tree until the playouts are used up, the deadline has passed or the search is cancelled.
+     */
+    private final class Worker {
+        private final FallDownGridPanel<IDisc> panel = copy(rootPanel);
+        private final int width = panel.getMaxX();
+        private final int height = panel.getMaxY();
+        private final int[] heights = new int[width];
+        //the nodes and the columns from the root, and the columns of the random game
+        private final int[] path;
+        private final int[] moves;
+        private final int[] open;
+        private final SplittableRandom random = new SplittableRandom();
+        private int moveCount;
+        private long playouts;
+        private int maxDepth;
+
+        private Worker(){
+            int cells = width * height;
+            path = new int[cells + 1];
+            moves = new int[cells];
+            open = new int[width];
+            for(int x = 0; x < width; x++){
+                while(heights[x] < height && panel.getData(x, heights[x]) != null){
+                    heights[x]++;
+                }
+            }
+        }
+
+        private void run(){
+            long batch = 0;
+            while(!cancelled){
+                if(batch == 0){
+                    batch = claimPlayouts();
+                    if(batch == 0){
+                        break;
+                    }
+                }
+                if(hasDeadline && System.nanoTime() - deadline >= 0){
+                    break;
+                }
+                iterate();
+                playouts++;
+                batch--;
+            }
+        }
+
+        private long claimPlayouts(){
+            long left;
+            long batch;
+            do {
+                left = playoutsLeft.get();
+                batch = Math.min(left, PLAYOUT_BATCH);
+            } while(batch > 0 && !playoutsLeft.compareAndSet(left, left - batch));
+            return batch;
+        }
+
+        /**
+         * One iteration: select a leaf, maybe expand it, play a random game, and back up its result.
+         */
+        private void iterate(){
+            int node = 0;
+            int depth = 0;
+            path[0] = 0;
+            visits.addAndGet(0, VIRTUAL_LOSS);
+            //the index of the winner from the root player, -1 for a draw or no result yet
+            int result = -1;
+            boolean over = false;
+            while(true){
+                int first = children.get(node);
+                if(first <= 0){
+                    if(first == 0 && visits.get(node) >= EXPAND_VISITS){
+                        first = expand(node);
+                    }
+                    if(first <= 0){
+                        break;
+                    }
+                }
+                int child = select(node, first, childCounts[node]);
+                visits.addAndGet(child, VIRTUAL_LOSS);
+                path[++depth] = child;
+                int x = columns[child];
+                play(x, (depth - 1) & 1);
+                byte outcome = outcomes[child];
+                if(outcome == OUTCOME_UNKNOWN){
+                    //several threads may find it, they all find the same
+                    outcome = winStrategy.isWin(panel, x, heights[x] - 1) ? OUTCOME_WIN
+                            : winStrategy.isGameADraw(panel) ? OUTCOME_DRAW : OUTCOME_NONE;
+                    outcomes[child] = outcome;
+                }
+                if(outcome != OUTCOME_NONE){
+                    over = true;
+                    result = outcome == OUTCOME_WIN ? (depth - 1) & 1 : -1;
+                    break;
+                }
+                node = child;
+            }
+            if(depth > maxDepth){
+                maxDepth = depth;
+            }
+            if(!over){
+                result = playout(depth);
+            }
+            backUp(depth, result);
+            rewind();
+        }
+
+        /**
+         * @return the child with the highest upper confidence bound, an unvisited child first
+         */
+        private int select(int node, int first, int count){
+            double logVisits = Math.log(Math.max(visits.get(node), 1));
+            int best = first;
+            double bestValue = Double.NEGATIVE_INFINITY;
+            for(int child = first; child < first + count; child++){
+                int childVisits = visits.get(child);
+                if(childVisits == 0){
+                    return child;
+                }
+                double value = scores.get(child) / (2.0 * childVisits) + EXPLORATION * Math.sqrt(logVisits / childVisits);
+                if(value > bestValue){
+                    bestValue = value;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Allocate the children of a leaf, one per open column.
+         *
+         * @return the first child, or not more than 0 if another thread expands it or the arena is full
+         */
+        private int expand(int node){
+            if(!children.compareAndSet(node, 0, EXPANDING)){
+                return EXPANDING;
+            }
+            int count = 0;
+            for(int x = 0; x < width; x++){
+                if(heights[x] < height){
+                    count++;
+                }
+            }
+            int first = nextNode.get() + count > maxNodes ? maxNodes : nextNode.getAndAdd(count);
+            if(first + count > maxNodes){
+                //the arena is full, the node stays a leaf
+                return EXPANDING;
+            }
+            int child = first;
+            for(int x = 0; x < width; x++){
+                if(heights[x] < height){
+                    visits.set(child, 0);
+                    scores.set(child, 0);
+                    children.set(child, 0);
+                    columns[child] = (byte) x;
+                    outcomes[child] = OUTCOME_UNKNOWN;
+                    child++;
+                }
+            }
+            childCounts[node] = (byte) count;
+            //publish the children
+            children.set(node, first);
+            return first;
+        }
+
+        /**
+         * Play random moves until the game is over.
+         *
+         * @return the index of the winner from the root player, -1 for a draw
+         */
+        private int playout(int depth){
+            for(int ply = depth; ; ply++){
+                int count = 0;
+                for(int x = 0; x < width; x++){
+                    if(heights[x] < height){
+                        open[count++] = x;
+                    }
+                }
+                int x = open[random.nextInt(count)];
+                play(x, ply & 1);
+                if(winStrategy.isWin(panel, x, heights[x] - 1)){
+                    return ply & 1;
+                }
+                if(winStrategy.isGameADraw(panel)){
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Add the result to the nodes on the path, every node from the view of the player
+         * who moved into it, and turn the virtual losses into one real visit.
+         */
+        private void backUp(int depth, int winner){
+            for(int idx = 0; idx <= depth; idx++){
+                int node = path[idx];
+                if(VIRTUAL_LOSS != 1){
+                    visits.addAndGet(node, 1 - VIRTUAL_LOSS);
+                }
+                int mover = (idx - 1) & 1;
+                int score = winner < 0 ? DRAW : winner == mover ? WIN : 0;
+                if(score != 0 && idx > 0){
+                    scores.addAndGet(node, score);
+                }
+            }
+        }
+
+        private void play(int x, int player){
+            try {
+                panel.put(x + 1, discs[player]);
+            } catch (GameUserException e) {
+                throw new GameSystemException(String.format("Internal error: the search played a full column [%d].", x + 1));
+            }
+            heights[x]++;
+            moves[moveCount++] = x;
+        }
+
+        /**
+         * Take back the moves of the iteration, the panel is at the root again.
+         */
+        private void rewind(){
+            try {
+                while(moveCount > 0){
+                    panel.stepBack();
+                    heights[moves[--moveCount]]--;
+                }
+            } catch (GameUserException e) {
+                throw new GameSystemException(String.format("Internal error: the search cannot take back a move, %s", e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Search a 7 * 6 position for some seconds with 1, 2, 4, ... threads, and print
+     * the playouts per second of every thread count.
+     *
+     * Usage: MonteCarloTreeSearch [moves [seconds [maxThreads]]], e.g. MonteCarloTreeSearch 4453 2 8
+     */
+    public static void main(String[] args){
+        String moves = args.length > 0 ? args[0] : "";
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 2;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        FallDownGridPanel<IDisc> panel = new FallDownGridPanel<>(7, 6);
+        IDisc[] discs = {ColorDisc.RED_DISC, ColorDisc.GREEN_DISC};
+        try {
+            for(int idx = 0; idx < moves.length(); idx++){
+                panel.put(moves.charAt(idx) - '0', discs[idx & 1]);
+            }
+        } catch (GameUserException e) {
+            throw new GameSystemException(String.format("Invalid moves [%s], %s", moves, e.getMessage()));
+        }
+
+        long baseline = 0;
+        for(int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(threads * 2, maxThreads) : threads + 1){
+            MonteCarloTreeSearch search = new MonteCarloTreeSearch(7, 6, threads);
+            //warm up the JIT before measuring
+            search.searchUntil(panel, discs[moves.length() & 1], System.nanoTime() + 200000000L);
+            MonteCarloResult result = search.searchUntil(panel, discs[moves.length() & 1], System.nanoTime() + (long) (seconds * 1e9));
+            search.shutdown();
+            if(threads == 1){
+                baseline = result.getPlayoutsPerSecond();
+            }
+            System.out.println(String.format("Position [%s], %d threads: %s, speedup %.2f", moves, threads, result,
+                    baseline == 0 ? 0 : (double) result.getPlayoutsPerSecond() / baseline));
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.datamodel.GamePlayer;
+import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IAnytimeMoveChooser;
+
+/**
+ * The class {@code NegamaxMoveChooser} is a computer player which chooses its
+ * columns with a {@link NegamaxSolver}.
+ *
+ * With a deadline, the search is deepened until the deadline and the best move of
+ * the deepest completed iteration is chosen.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class NegamaxMoveChooser implements IAnytimeMoveChooser {
+    private int maxDepth;
+    private OpeningBook openingBook;
+    private long tableMegabytes;
+    //cancel() may come from another thread while the solver is created
+    private volatile NegamaxSolver solver;
+    private volatile boolean cancelled;
+    private SearchResult lastResult;
+
+    /**
+     * Constructs a chooser which searches up to {@code maxDepth} plies per move.
+     *
+     * @param maxDepth
+     *         the maximum number of plies to search
+     */
+    public NegamaxMoveChooser(int maxDepth){
+        this(maxDepth, null);
+    }
+
+    /**
+     * Constructs a chooser which looks up the opening book first, and searches up to
+     * {@code maxDepth} plies per move for the positions out of the book.
+     *
+     * @param maxDepth
+     *         the maximum number of plies to search
+     * @param openingBook
+     *         the opening book, {@code null} for no book
+     */
+    public NegamaxMoveChooser(int maxDepth, OpeningBook openingBook){
+        this(maxDepth, openingBook, NegamaxSolver.DEFAULT_TABLE_MEGABYTES);
+    }
+
+    /**
+     * @param tableMegabytes
+     *         the size of the transposition table in MB, e.g. smaller for many
+     *         choosers playing at the same time
+     */
+    public NegamaxMoveChooser(int maxDepth, OpeningBook openingBook, long tableMegabytes){
+        this.maxDepth = maxDepth;
+        this.openingBook = openingBook;
+        this.tableMegabytes = tableMegabytes;
+    }
+
+    @Override
+    public int chooseColumn(GridPanel panel, GamePlayer player) {
+        NegamaxSolver solver = loadSolver(panel, player);
+        lastResult = solver.search(maxDepth);
+        return lastResult.getColumn();
+    }
+
+    @Override
+    public int chooseColumn(GridPanel panel, GamePlayer player, long deadline) {
+        NegamaxSolver solver = loadSolver(panel, player);
+        lastResult = solver.search(maxDepth, deadline);
+        return lastResult.getColumn();
+    }
+
+    @Override
+    public void cancel(){
+        cancelled = true;
+        NegamaxSolver current = solver;
+        if(current != null){
+            current.cancel();
+        }
+    }
+
+    @Override
+    public int getLastDepth(){
+        return lastResult == null ? 0 : lastResult.getDepth();
+    }
+
+    @Override
+    public long getLastElapsedNanos(){
+        return lastResult == null ? 0 : lastResult.getElapsedNanos();
+    }
+
+    private NegamaxSolver loadSolver(GridPanel panel, GamePlayer player){
+        //the solver is kept between moves, so is its transposition table
+        NegamaxSolver current = solver;
+        if(current == null || current.getWidth() != panel.getMaxX() || current.getHeight() != panel.getMaxY()){
+            current = new NegamaxSolver(panel.getMaxX(), panel.getMaxY(), tableMegabytes);
+            if(openingBook != null && openingBook.getWidth() == panel.getMaxX() && openingBook.getHeight() == panel.getMaxY()){
+                current.setOpeningBook(openingBook);
+            }
+            solver = current;
+            if(cancelled){
+                current.cancel();
+            }
+        }
+        current.load(panel, player.getDisc());
+        return current;
+    }
+
+    /**
+     * @return the result of the latest search, {@code null} if no move was chosen yet
+     */
+    public SearchResult getLastResult(){
+        return lastResult;
+    }
+}
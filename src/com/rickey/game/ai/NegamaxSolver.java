@@ -0,0 +1,666 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.datamodel.BitboardGridPanel;
+import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IDisc;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The class {@code NegamaxSolver} searches Connect Four positions with negamax and
+ * alpha-beta pruning. The position is kept in a {@link BitboardGridPanel}, so the
+ * search does not create any object per node.
+ *
+ * A search to the end of the game without a deadline solves the root at full depth
+ * at once. Its score is found with null-window searches, which bisect the score
+ * range, and every probe reuses the transposition table of the probes before. A
+ * search with fewer plies or with a deadline is deepened iteratively, every iteration
+ * bisects the score range the same way, and its moves are ordered by the best moves
+ * the table kept from the iteration before. The table is keyed by the Zobrist key
+ * of the board, which is updated with every move and undo. A position and its
+ * mirror image share the entry of the smaller of their Zobrist keys. The moves
+ * are tried by the number of new winning cells they create, ties are broken by
+ * trying the center columns first. A position is not searched further once it is
+ * known that the player to move cannot avoid a loss.
+ *
+ * A search can be bounded by a deadline, see {@link #search(int, long)}, and it can
+ * be cancelled from another thread by {@link #cancel()}. Both are checked every
+ * {@value #STOP_CHECK_INTERVAL} nodes, the iteration which is stopped is thrown away
+ * and the result of the last completed iteration is returned.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class NegamaxSolver {
+    public static final int CONNECT_COUNT = 4;
+    public static final long DEFAULT_TABLE_MEGABYTES = 64;
+    //the deadline and the cancellation are checked once per this number of nodes
+    public static final int STOP_CHECK_INTERVAL = 1024;
+
+    private final int width;
+    private final int height;
+    private final int cells;
+    private final long bottomMask;
+    private final long boardMask;
+    private final int[] columnOrder;
+    private final TranspositionTable table;
+    //move ordering buffers, one row per ply, so ordering does not allocate
+    private final int[][] plyMoves;
+    private final int[][] plyScores;
+    private OpeningBook openingBook;
+
+    protected final BitboardGridPanel<IDisc> board;
+    protected int rootPlayer;
+    //the best column (starting from 0) found by the latest searchMoves(), -1 if no move raised alpha
+    protected int bestMove;
+    protected long nodes;
+    private int rootBestColumn;
+    //the search stops at this System.nanoTime(), if it has a deadline
+    private boolean hasDeadline;
+    private long deadline;
+    //shared by the copies of a solver, so all of them stop when it is cancelled
+    private final AtomicBoolean cancelled;
+    //set once the deadline has passed or the search was cancelled
+    private boolean stopped;
+
+    public NegamaxSolver(int width, int height){
+        this(width, height, DEFAULT_TABLE_MEGABYTES);
+    }
+
+    /**
+     * Constructs a solver for a {@code width * height} panel.
+     *
+     * @param width
+     *         X dimension
+     * @param height
+     *         Y dimension
+     * @param tableMegabytes
+     *         the size of the transposition table in MB
+     */
+    public NegamaxSolver(int width, int height, long tableMegabytes){
+        this(width, height, new TranspositionTable(tableMegabytes));
+    }
+
+    /**
+     * Constructs a solver for a {@code width * height} panel which uses an existing
+     * transposition table.
+     *
+     * @param width
+     *         X dimension
+     * @param height
+     *         Y dimension
+     * @param table
+     *         the transposition table, it can be shared by several solvers
+     */
+    public NegamaxSolver(int width, int height, TranspositionTable table){
+        if(3 * (height + 2) >= Long.SIZE){
+            throw new GameSystemException(String.format("Internal error: height [%d] is too large for the solver.", height));
+        }
+        this.width = width;
+        this.height = height;
+        cells = width * height;
+        board = new BitboardGridPanel<>(width, height);
+        bottomMask = board.getBottomMask();
+        boardMask = board.getBoardMask();
+        this.table = table;
+        cancelled = new AtomicBoolean();
+        plyMoves = new int[cells + 1][width];
+        plyScores = new int[cells + 1][width];
+        columnOrder = new int[width];
+        for(int idx = 0; idx < width; idx++){
+            //e.g. 3, 2, 4, 1, 5, 0, 6 for 7 columns
+            columnOrder[idx] = width / 2 + (1 - 2 * (idx % 2)) * (idx + 1) / 2;
+        }
+    }
+
+    /**
+     * Constructs a solver on a copy of the current position of another solver. Both
+     * solvers share the transposition table, so they can search in different threads.
+     *
+     * @param solver
+     *         the solver to copy
+     */
+    protected NegamaxSolver(NegamaxSolver solver){
+        width = solver.width;
+        height = solver.height;
+        cells = solver.cells;
+        bottomMask = solver.bottomMask;
+        boardMask = solver.boardMask;
+        columnOrder = solver.columnOrder;
+        table = solver.table;
+        plyMoves = new int[cells + 1][width];
+        plyScores = new int[cells + 1][width];
+        board = new BitboardGridPanel<>(solver.board);
+        rootPlayer = solver.rootPlayer;
+        hasDeadline = solver.hasDeadline;
+        deadline = solver.deadline;
+        cancelled = solver.cancelled;
+    }
+
+    /**
+     * Load a position from a grid panel.
+     *
+     * @param panel
+     *         the panel to copy, it must have the same dimension as the solver
+     * @param disc
+     *         the disc of the player to move
+     */
+    public void load(GridPanel panel, IDisc disc){
+        if(panel.getMaxX() != width || panel.getMaxY() != height){
+            throw new GameSystemException("Internal error: the panel does not match the solver.");
+        }
+        board.cleanUpPanel();
+        int discs = 0;
+        for(int x = 0; x < width; x++){
+            for(int y = 0; y < height && panel.getData(x, y) != null; y++){
+                discs++;
+            }
+        }
+        //player 0 moved first, so the player to move is known from the number of discs
+        rootPlayer = discs & 1;
+        for(int x = 0; x < width; x++){
+            IDisc data;
+            for(int y = 0; y < height && (data = panel.getData(x, y)) != null; y++){
+                board.play(x, disc.equals(data) ? rootPlayer : 1 - rootPlayer);
+            }
+        }
+    }
+
+    /**
+     * Load a position from a sequence of columns, e.g. "4453". Players move alternately.
+     *
+     * @param moves
+     *         the columns, starting from 1
+     */
+    public void load(String moves){
+        board.cleanUpPanel();
+        for(int idx = 0; idx < moves.length(); idx++){
+            int x = moves.charAt(idx) - '1';
+            if(x < 0 || x >= width || !board.canPlay(x)){
+                throw new GameSystemException(String.format("Invalid move [%c] in [%s]", moves.charAt(idx), moves));
+            }
+            board.play(x, idx & 1);
+        }
+        rootPlayer = moves.length() & 1;
+    }
+
+    /**
+     * Load a position from its key in an opening book.
+     *
+     * @param bookKey
+     *         the key of the position
+     * @see #getBookKey()
+     */
+    public void load(long bookKey){
+        board.cleanUpPanel();
+        int columnBits = board.getColumnBits();
+        long columnCode = (1L << columnBits) - 1;
+        for(int x = 0; x < width; x++){
+            long code = (bookKey >>> x * columnBits) & columnCode;
+            int columnHeight = Long.SIZE - 1 - Long.numberOfLeadingZeros(code);
+            if(columnHeight < 0 || columnHeight > height){
+                throw new GameSystemException(String.format("Invalid opening book key [%x]", bookKey));
+            }
+            for(int y = 0; y < columnHeight; y++){
+                //player 0 moved first
+                board.play(x, (int) (~code >>> y) & 1);
+            }
+        }
+        rootPlayer = board.getMoveCount() & 1;
+    }
+
+    /**
+     * @return the key of the loaded position in an opening book, the same for its mirror image
+     * @see BitboardGridPanel#getCanonicalKey()
+     */
+    public long getBookKey(){
+        return board.getCanonicalKey();
+    }
+
+    /**
+     * Let the searches look up the positions of an opening book first.
+     *
+     * @param openingBook
+     *         the book, it must have the same dimension as the solver, {@code null} for no book
+     */
+    public void setOpeningBook(OpeningBook openingBook){
+        if(openingBook != null && (openingBook.getWidth() != width || openingBook.getHeight() != height)){
+            throw new GameSystemException("Internal error: the opening book does not match the solver.");
+        }
+        this.openingBook = openingBook;
+    }
+
+    public OpeningBook getOpeningBook(){
+        return openingBook;
+    }
+
+    /**
+     * Search the loaded position. When {@code maxDepth} reaches the end of the game,
+     * the position is solved at full depth. Otherwise the search stops when the
+     * position is solved, or after the iteration of {@code maxDepth} plies. Once an
+     * iteration proves a win or a loss, the next iteration searches {@code maxDepth}
+     * plies directly.
+     * A position found in the opening book is not searched at all.
+     *
+     * @param maxDepth
+     *         the maximum number of plies to search
+     * @return the best move with its score and the search statistics
+     */
+    public SearchResult search(int maxDepth){
+        long start = System.nanoTime();
+        nodes = 0;
+        stopped = false;
+        table.newSearch();
+        int moveCount = board.getMoveCount();
+        if(moveCount >= cells){
+            throw new GameSystemException("Internal error: no move on a full panel.");
+        }
+        if(openingBook != null && moveCount <= openingBook.getDepth()){
+            int index = openingBook.find(getBookKey());
+            if(index >= 0){
+                int column = openingBook.getColumn(index);
+                if(board.isCanonicalMirrored()){
+                    column = width + 1 - column;
+                }
+                return result(column, openingBook.getScore(index), cells - moveCount, true, start);
+            }
+        }
+        long current = board.getPlayerMask(rootPlayer);
+        long occupied = board.getOccupiedMask();
+        long possible = (occupied + bottomMask) & boardMask;
+        long winningMoves = winningCells(current, occupied) & possible;
+        if(winningMoves != 0){
+            return result(columnOf(winningMoves), (cells + 1 - moveCount) / 2, 1, true, start);
+        }
+        long nonLosing = nonLosingMoves(current, board.getPlayerMask(1 - rootPlayer), occupied);
+        if(nonLosing == 0){
+            return result(columnOf(possible & -possible), -(cells - moveCount) / 2, 1, true, start);
+        }
+
+        int remaining = cells - moveCount;
+        int maxPlies = Math.min(maxDepth, remaining);
+        if(maxPlies == remaining && !hasDeadline){
+            //a full solve probes the score range once at full depth, the probes share the table
+            int score = solve(remaining, nonLosing, 0);
+            return result(rootBestColumn, score, remaining, !stopped, start);
+        }
+        int score = 0;
+        int depth = 0;
+        //until an iteration is completed, any move which does not lose at once
+        int column = columnOf(nonLosing & -nonLosing);
+        while(depth < maxPlies){
+            //a score other than 0 proves a win or a loss, the last iteration only finds how fast it is
+            int iterationDepth = score == 0 ? depth + 1 : maxPlies;
+            int iterationScore = solve(iterationDepth, nonLosing, score);
+            if(stopped){
+                break;
+            }
+            depth = iterationDepth;
+            score = iterationScore;
+            column = rootBestColumn;
+        }
+        return result(column, score, depth, depth >= remaining, start);
+    }
+
+    /**
+     * Search the loaded position until the deadline. The search is deepened the same
+     * way as {@link #search(int)}, when the deadline has passed, the iteration which
+     * is being searched is stopped, and the best move of the deepest completed
+     * iteration is returned.
+     *
+     * @param maxDepth
+     *         the maximum number of plies to search
+     * @param deadline
+     *         the {@link System#nanoTime()} when the search has to stop
+     * @return the best move with its score and the search statistics, the depth is the one of
+     * the deepest completed iteration
+     */
+    public SearchResult search(int maxDepth, long deadline){
+        this.deadline = deadline;
+        hasDeadline = true;
+        try {
+            return search(maxDepth);
+        } finally {
+            hasDeadline = false;
+        }
+    }
+
+    /**
+     * Stop the search of this solver and every later search as soon as possible, e.g.
+     * when the game is over. It can be called from any thread.
+     */
+    public void cancel(){
+        cancelled.set(true);
+    }
+
+    public boolean isCancelled(){
+        return cancelled.get();
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * @return how many nodes the latest search visited
+     */
+    public long getNodes(){
+        return nodes;
+    }
+
+    public TranspositionTable getTranspositionTable(){
+        return table;
+    }
+
+    /**
+     * Find the depth-limited score of the root with null-window searches.
+     *
+     * @param provenScore
+     *         the score of the previous iteration, when it is not 0, the root is
+     *         known to be at least as good as a positive one, or at most as good as
+     *         a negative one
+     */
+    private int solve(int depth, long nonLosing, int provenScore){
+        int moveCount = board.getMoveCount();
+        if(provenScore == 0){
+            //if every probe fails low, any move reaches the lowest score
+            rootBestColumn = columnOf(nonLosing & -nonLosing);
+        }
+        //otherwise the move of the previous iteration reaches the proven score
+        int min = provenScore > 0 ? provenScore : -(cells - moveCount) / 2;
+        int max = provenScore < 0 ? provenScore : (cells + 1 - moveCount) / 2;
+        while(min < max){
+            int med = min + (max - min) / 2;
+            //probe around 0 first, most scores are close to a draw
+            if(med <= 0 && min / 2 < med){
+                med = min / 2;
+            }else if(med >= 0 && max / 2 > med){
+                med = max / 2;
+            }
+            int score = rootSearch(med, med + 1, depth);
+            if(stopped){
+                return min;
+            }
+            if(score <= med){
+                max = score;
+            }else{
+                min = score;
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Search the moves of the root. The move which fails high is remembered, after
+     * the null-window searches it is a move which reaches the score of the root.
+     */
+    private int rootSearch(int alpha, int beta, int depth){
+        nodes++;
+        int[] moves = plyMoves[board.getMoveCount()];
+        long entry = table.probe(positionKey());
+        int tableMove = entry == 0 ? -1 : tableMove(entry);
+        int count = orderMoves(rootPlayer, moves, plyScores[board.getMoveCount()], tableMove);
+        int score = searchMoves(rootPlayer, alpha, beta, depth, moves, count);
+        if(bestMove >= 0){
+            rootBestColumn = bestMove + 1;
+        }
+        return score;
+    }
+
+    /**
+     * Negamax with alpha-beta pruning. The player to move must not be able to win
+     * with the next move.
+     *
+     * @return the score of the position, or a bound of the score when it is out of
+     * the window (alpha, beta)
+     */
+    protected int negamax(int player, int alpha, int beta, int depth){
+        nodes++;
+        if(isAborted()){
+            return 0;
+        }
+        int moveCount = board.getMoveCount();
+        long current = board.getPlayerMask(player);
+        long occupied = board.getOccupiedMask();
+        if(nonLosingMoves(current, occupied ^ current, occupied) == 0){
+            return -(cells - moveCount) / 2;
+        }
+        if(moveCount >= cells - 2){
+            return 0;
+        }
+
+        int min = -(cells - 2 - moveCount) / 2;
+        if(alpha < min){
+            alpha = min;
+            if(alpha >= beta){
+                return alpha;
+            }
+        }
+        int max = (cells - 1 - moveCount) / 2;
+        if(beta > max){
+            beta = max;
+            if(alpha >= beta){
+                return beta;
+            }
+        }
+
+        long key = positionKey();
+        int draft = Math.min(depth, cells - moveCount);
+        long entry = table.probe(key);
+        int tableMove = entry == 0 ? -1 : tableMove(entry);
+        if(entry != 0 && TranspositionTable.depth(entry) >= draft){
+            int score = TranspositionTable.score(entry);
+            switch (TranspositionTable.bound(entry)){
+                case TranspositionTable.BOUND_EXACT:
+                    return score;
+                case TranspositionTable.BOUND_LOWER:
+                    alpha = Math.max(alpha, score);
+                    break;
+                default:
+                    beta = Math.min(beta, score);
+                    break;
+            }
+            if(alpha >= beta){
+                return score;
+            }
+        }
+        if(depth <= 0){
+            return 0;
+        }
+
+        int[] moves = plyMoves[moveCount];
+        int count = orderMoves(player, moves, plyScores[moveCount], tableMove);
+        int score = searchMoves(player, alpha, beta, depth, moves, count);
+        if(isAborted()){
+            //the score of an aborted search is not reliable, it must not be stored
+            return score;
+        }
+        int bound = score >= beta ? TranspositionTable.BOUND_LOWER
+                : bestMove >= 0 ? TranspositionTable.BOUND_EXACT : TranspositionTable.BOUND_UPPER;
+        table.store(key, score, bound, draft, bestMove < 0 || !isKeyMirrored() ? bestMove : width - 1 - bestMove);
+        return score;
+    }
+
+    /**
+     * Search the ordered moves of the current position one by one, and set
+     * {@link #bestMove} before returning.
+     *
+     * @return the score of the position, or a bound of the score when it is out of
+     * the window (alpha, beta)
+     */
+    protected int searchMoves(int player, int alpha, int beta, int depth, int[] moves, int count){
+        int best = -1;
+        for(int idx = 0; idx < count; idx++){
+            board.play(moves[idx], player);
+            int score = -negamax(1 - player, -beta, -alpha, depth - 1);
+            board.undo();
+            if(isAborted()){
+                break;
+            }
+            if(score >= beta){
+                bestMove = moves[idx];
+                return score;
+            }
+            if(score > alpha){
+                alpha = score;
+                best = moves[idx];
+            }
+        }
+        bestMove = best;
+        return alpha;
+    }
+
+    /**
+     * Whether the search should stop as soon as possible. The scores of an aborted
+     * search are thrown away.
+     *
+     * @return {@code true} to abort the search
+     */
+    protected boolean isAborted(){
+        if(!stopped && (nodes & (STOP_CHECK_INTERVAL - 1)) == 0){
+            checkStopped();
+        }
+        return stopped;
+    }
+
+    /**
+     * Check the deadline and the cancellation now, not only every
+     * {@value #STOP_CHECK_INTERVAL} nodes, e.g. after the copies of the solver were
+     * stopped.
+     *
+     * @return {@code true} if the search has to stop
+     */
+    protected boolean checkStopped(){
+        if(!stopped){
+            stopped = cancelled.get() || hasDeadline && System.nanoTime() - deadline >= 0;
+        }
+        return stopped;
+    }
+
+    /**
+     * Fill the non-losing moves of a player into {@code moves}. The best move found
+     * in the transposition table comes first, then the moves creating more winning
+     * cells, then the center columns.
+     *
+     * @return how many moves are filled
+     */
+    private int orderMoves(int player, int[] moves, int[] scores, int tableMove){
+        long current = board.getPlayerMask(player);
+        long occupied = board.getOccupiedMask();
+        long nonLosing = nonLosingMoves(current, occupied ^ current, occupied);
+        int count = 0;
+        for(int idx = 0; idx < width; idx++){
+            int x = columnOrder[idx];
+            long move = nonLosing & board.columnMask(x);
+            if(move == 0){
+                continue;
+            }
+            int score = x == tableMove ? Integer.MAX_VALUE : Long.bitCount(winningCells(current | move, occupied | move));
+            int pos = count++;
+            for(; pos > 0 && scores[pos - 1] < score; pos--){
+                moves[pos] = moves[pos - 1];
+                scores[pos] = scores[pos - 1];
+            }
+            moves[pos] = x;
+            scores[pos] = score;
+        }
+        return count;
+    }
+
+    /**
+     * The playable cells which neither let the opponent win directly, nor leave an
+     * opponent's winning cell open.
+     *
+     * @return 0 if the player to move cannot avoid a loss
+     */
+    private long nonLosingMoves(long current, long opponent, long occupied){
+        long possible = (occupied + bottomMask) & boardMask;
+        long opponentWin = winningCells(opponent, occupied);
+        long forced = possible & opponentWin;
+        if(forced != 0){
+            if((forced & (forced - 1)) != 0){
+                //more than one winning cell to block
+                return 0;
+            }
+            possible = forced;
+        }
+        //do not play below a winning cell of the opponent
+        return possible & ~(opponentWin >>> 1);
+    }
+
+    /**
+     * The empty cells which complete a line of four for the discs in {@code position}.
+     */
+    private long winningCells(long position, long occupied){
+        //vertical
+        long result = (position << 1) & (position << 2) & (position << 3);
+        //horizontal, diagonal and back diagonal
+        result |= lineCells(position, height + 1);
+        result |= lineCells(position, height + 2);
+        result |= lineCells(position, height);
+        return result & (boardMask ^ occupied);
+    }
+
+    private static long lineCells(long position, int shift){
+        long pair = (position << shift) & (position << 2 * shift);
+        long result = pair & (position << 3 * shift);
+        result |= pair & (position >>> shift);
+        pair = (position >>> shift) & (position >>> 2 * shift);
+        result |= pair & (position << shift);
+        result |= pair & (position >>> 3 * shift);
+        return result;
+    }
+
+    /**
+     * The key of the position in the transposition table, the Zobrist key which the
+     * board updates with every move and undo. Player 0 always moves first, so the
+     * discs of the key tell the player to move too. A position and its mirror image
+     * have the same score, so they share the entry of the smaller key.
+     */
+    private long positionKey(){
+        return Math.min(board.getZobristKey(), board.getMirrorZobristKey());
+    }
+
+    /**
+     * @return {@code true} if the entry of the position is stored as its mirror image
+     */
+    private boolean isKeyMirrored(){
+        return board.getMirrorZobristKey() < board.getZobristKey();
+    }
+
+    /**
+     * @return the best move of a table entry on the board, which may be the mirror image of the stored position
+     */
+    private int tableMove(long entry){
+        int move = TranspositionTable.move(entry);
+        return move < 0 || !isKeyMirrored() ? move : width - 1 - move;
+    }
+
+    private int columnOf(long move){
+        return Long.numberOfTrailingZeros(move) / board.getColumnBits() + 1;
+    }
+
+    private SearchResult result(int column, int score, int depth, boolean solved, long start){
+        return new SearchResult(column, score, depth, solved, stopped, getNodes(), System.nanoTime() - start);
+    }
+
+    /**
+     * Solve a 7 * 6 position from the command line and print the search statistics.
+     *
+     * Usage: NegamaxSolver [moves [maxDepth [tableMegabytes]]], e.g. NegamaxSolver 4453 20 1024
+     */
+    public static void main(String[] args){
+        String moves = args.length > 0 ? args[0] : "";
+        int maxDepth = args.length > 1 ? Integer.parseInt(args[1]) : 7 * 6;
+        long tableMegabytes = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_TABLE_MEGABYTES;
+        NegamaxSolver solver = new NegamaxSolver(7, 6, tableMegabytes);
+        solver.load(moves);
+        System.out.println(String.format("Position [%s]: %s", moves, solver.search(maxDepth)));
+        System.out.println(String.format("Transposition table: %s", solver.getTranspositionTable().getStatistics()));
+    }
+}
@@ -0,0 +1,175 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.common.GameSystemException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The class {@code OpeningBook} looks up the game-theoretic values of the early
+ * positions from a book file. The file is mapped read-only into memory, so opening
+ * a book is instant and costs no heap.
+ *
+ * The file starts with a header, followed by records sorted by position key:
+ * <pre>
+ * header: magic (int), version (int), width (int), height (int), depth (int), record count (int)
+ * record: position key (long), score (byte), best column starting from 0 (byte)
+ * </pre>
+ * The score is from the view of the player to move, the same as {@link SearchResult#getScore()}.
+ *
+ * A position and its mirror image have the same value, so only the one with the smaller
+ * key is stored, and its best column is the column of that position. The book of
+ * version 1 stored both, a book of version 1 has to be generated again.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ * @see OpeningBookGenerator
+ */
+public class OpeningBook {
+    public static final int MAGIC = 0x43344F42;
+    public static final int VERSION = 2;
+
+    private static final int HEADER_BYTES = 24;
+    private static final int RECORD_BYTES = 10;
+
+    private final MappedByteBuffer buffer;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int count;
+
+    private OpeningBook(MappedByteBuffer buffer){
+        this.buffer = buffer;
+        if(buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+            throw new GameSystemException("Internal error: not an opening book of this version.");
+        }
+        width = buffer.getInt(8);
+        height = buffer.getInt(12);
+        depth = buffer.getInt(16);
+        count = buffer.getInt(20);
+        if(buffer.capacity() != HEADER_BYTES + (long) count * RECORD_BYTES){
+            throw new GameSystemException("Internal error: the opening book is truncated.");
+        }
+    }
+
+    /**
+     * Map a book file into memory.
+     *
+     * @param file
+     *         the book file written by {@link OpeningBookGenerator}
+     * @return the opening book
+     * @throws IOException
+     *          if the file cannot be read
+     */
+    public static OpeningBook open(File file) throws IOException {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel()){
+            //the mapping stays valid after the channel is closed
+            return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Find a position in the book.
+     *
+     * @param positionKey
+     *         the key of the position
+     * @return the index of the record, -1 if the position is not in the book
+     * @see #positionKey(long, long, long)
+     */
+    public int find(long positionKey){
+        int low = 0;
+        int high = count - 1;
+        while(low <= high){
+            int middle = (low + high) >>> 1;
+            long key = buffer.getLong(HEADER_BYTES + middle * RECORD_BYTES);
+            if(key < positionKey){
+                low = middle + 1;
+            }else if(key > positionKey){
+                high = middle - 1;
+            }else{
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    public int getScore(int index){
+        return buffer.get(HEADER_BYTES + index * RECORD_BYTES + 8);
+    }
+
+    /**
+     * @return the best column, starting from 1
+     */
+    public int getColumn(int index){
+        return buffer.get(HEADER_BYTES + index * RECORD_BYTES + 9) + 1;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * @return the book contains the positions with no more than this number of discs
+     */
+    public int getDepth(){
+        return depth;
+    }
+
+    public int getCount(){
+        return count;
+    }
+
+    /**
+     * Encode a position of a bitboard into a key. Every column is encoded as the discs
+     * of the first player plus one bit on top of the column, so the key is unique, and
+     * does not depend on the order of the moves.
+     *
+     * @param firstPlayerMask
+     *         the discs of the player who moved first
+     * @param occupied
+     *         the discs of both players
+     * @param bottomMask
+     *         the bottom bit of every column
+     * @return the key of the position
+     */
+    public static long positionKey(long firstPlayerMask, long occupied, long bottomMask){
+        return firstPlayerMask + occupied + bottomMask;
+    }
+
+    /**
+     * Write a book file.
+     *
+     * @param keys
+     *         the position keys in ascending order
+     * @param scores
+     *         the score of every position
+     * @param columns
+     *         the best column of every position, starting from 0
+     */
+    static void write(File file, int width, int height, int depth, long[] keys, byte[] scores, byte[] columns) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))){
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(depth);
+            out.writeInt(keys.length);
+            for(int idx = 0; idx < keys.length; idx++){
+                out.writeLong(keys[idx]);
+                out.writeByte(scores[idx]);
+                out.writeByte(columns[idx]);
+            }
+        }
+    }
+}
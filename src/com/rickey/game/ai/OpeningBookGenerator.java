@@ -0,0 +1,228 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.datamodel.BitboardGridPanel;
+import com.rickey.game.datamodel.IDisc;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * The class {@code OpeningBookGenerator} writes the {@link OpeningBook} of all the
+ * positions with no more than {@code depth} discs.
+ *
+ * The positions are collected ply by ply as sorted arrays of book keys, so every
+ * position is kept only once, however many move orders reach it. Only the positions
+ * of the deepest ply are searched, on all cores with one solver per thread. The
+ * positions of a shallower ply are scored from the scores of their children, so the
+ * hardest positions near the empty panel are never searched.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class OpeningBookGenerator {
+    public static final int DEFAULT_DEPTH = 8;
+    public static final String DEFAULT_BOOK_FILE = "connectfour.book";
+
+    private final int width;
+    private final int height;
+    private final int cells;
+    private final int depth;
+    private final long tableMegabytes;
+    private final int[] columnOrder;
+    private long[][] keys;
+    private byte[][] scores;
+    private byte[][] columns;
+
+    /**
+     * Constructs a generator for a {@code width * height} panel.
+     *
+     * @param depth
+     *         the book contains the positions with no more than this number of discs
+     * @param tableMegabytes
+     *         the size of the transposition table of every searching thread in MB
+     */
+    public OpeningBookGenerator(int width, int height, int depth, long tableMegabytes){
+        this.width = width;
+        this.height = height;
+        cells = width * height;
+        this.depth = Math.min(depth, cells - 1);
+        this.tableMegabytes = tableMegabytes;
+        columnOrder = new int[width];
+        for(int idx = 0; idx < width; idx++){
+            columnOrder[idx] = width / 2 + (1 - 2 * (idx % 2)) * (idx + 1) / 2;
+        }
+    }
+
+    /**
+     * Solve all the positions and write them to a book file.
+     *
+     * @param file
+     *         the book file
+     */
+    public void generate(File file) throws IOException {
+        keys = new long[depth + 1][];
+        scores = new byte[depth + 1][];
+        columns = new byte[depth + 1][];
+        NegamaxSolver solver = new NegamaxSolver(width, height, 1);
+        solver.load("");
+        keys[0] = new long[]{solver.getBookKey()};
+        for(int ply = 0; ply < depth; ply++){
+            keys[ply + 1] = expand(solver, keys[ply]);
+            System.out.println(String.format("Ply %d: %d positions", ply + 1, keys[ply + 1].length));
+        }
+
+        solveDeepest();
+        for(int ply = depth - 1; ply >= 0; ply--){
+            scores[ply] = new byte[keys[ply].length];
+            columns[ply] = new byte[keys[ply].length];
+            for(int idx = 0; idx < keys[ply].length; idx++){
+                backUp(solver, ply, idx);
+            }
+        }
+        write(file);
+    }
+
+    /**
+     * @return the sorted keys of the positions after one more move, except the
+     * positions where the game is over
+     */
+    private long[] expand(NegamaxSolver solver, long[] parents){
+        BitboardGridPanel<IDisc> board = solver.board;
+        long[] children = new long[parents.length * width];
+        int count = 0;
+        for(long parent : parents){
+            solver.load(parent);
+            int player = board.getMoveCount() & 1;
+            for(int x = 0; x < width; x++){
+                if(board.canPlay(x) && !board.isWinningMove(x, player, NegamaxSolver.CONNECT_COUNT)){
+                    board.play(x, player);
+                    if(!board.isPanelFull()){
+                        children[count++] = board.getCanonicalKey();
+                    }
+                    board.undo();
+                }
+            }
+        }
+        Arrays.sort(children, 0, count);
+        int unique = 0;
+        for(int idx = 0; idx < count; idx++){
+            if(unique == 0 || children[idx] != children[unique - 1]){
+                children[unique++] = children[idx];
+            }
+        }
+        return Arrays.copyOf(children, unique);
+    }
+
+    /**
+     * Search all the positions of the deepest ply in parallel.
+     */
+    private void solveDeepest(){
+        final long[] positions = keys[depth];
+        final byte[] plyScores = scores[depth] = new byte[positions.length];
+        final byte[] plyColumns = columns[depth] = new byte[positions.length];
+        final ThreadLocal<NegamaxSolver> solvers = ThreadLocal.withInitial(() -> new NegamaxSolver(width, height, tableMegabytes));
+        final AtomicInteger solved = new AtomicInteger();
+        final long start = System.nanoTime();
+        IntStream.range(0, positions.length).parallel().forEach(idx -> {
+            NegamaxSolver solver = solvers.get();
+            solver.load(positions[idx]);
+            SearchResult result = solver.search(cells);
+            plyScores[idx] = (byte) result.getScore();
+            plyColumns[idx] = (byte) (result.getColumn() - 1);
+            int count = solved.incrementAndGet();
+            if(count % 1000 == 0 || count == positions.length){
+                System.out.println(String.format("Ply %d: %d / %d positions solved in %d s", depth, count,
+                        positions.length, (System.nanoTime() - start) / 1000000000L));
+            }
+        });
+    }
+
+    /**
+     * Score a position from the scores of its children, which are either in the book,
+     * or end the game.
+     */
+    private void backUp(NegamaxSolver solver, int ply, int idx){
+        BitboardGridPanel<IDisc> board = solver.board;
+        solver.load(keys[ply][idx]);
+        int player = ply & 1;
+        int best = Integer.MIN_VALUE;
+        int bestColumn = -1;
+        for(int x : columnOrder){
+            if(!board.canPlay(x)){
+                continue;
+            }
+            int score;
+            if(board.isWinningMove(x, player, NegamaxSolver.CONNECT_COUNT)){
+                score = (cells + 1 - ply) / 2;
+            }else if(ply + 1 == cells){
+                score = 0;
+            }else{
+                board.play(x, player);
+                int child = Arrays.binarySearch(keys[ply + 1], board.getCanonicalKey());
+                board.undo();
+                score = -scores[ply + 1][child];
+            }
+            if(score > best){
+                best = score;
+                bestColumn = x;
+            }
+        }
+        scores[ply][idx] = (byte) best;
+        columns[ply][idx] = (byte) bestColumn;
+    }
+
+    /**
+     * Merge all plies into one sorted book file.
+     */
+    private void write(File file) throws IOException {
+        int total = 0;
+        for(long[] plyKeys : keys){
+            total += plyKeys.length;
+        }
+        long[] bookKeys = new long[total];
+        int offset = 0;
+        for(long[] plyKeys : keys){
+            System.arraycopy(plyKeys, 0, bookKeys, offset, plyKeys.length);
+            offset += plyKeys.length;
+        }
+        Arrays.sort(bookKeys);
+        byte[] bookScores = new byte[total];
+        byte[] bookColumns = new byte[total];
+        for(int idx = 0; idx < total; idx++){
+            int ply = plyOf(bookKeys[idx]);
+            int index = Arrays.binarySearch(keys[ply], bookKeys[idx]);
+            bookScores[idx] = scores[ply][index];
+            bookColumns[idx] = columns[ply][index];
+        }
+        OpeningBook.write(file, width, height, depth, bookKeys, bookScores, bookColumns);
+        System.out.println(String.format("%d positions written to %s", total, file));
+    }
+
+    /**
+     * @return the number of discs of the position with the key
+     */
+    private int plyOf(long bookKey){
+        int columnBits = height + 1;
+        int ply = 0;
+        for(int x = 0; x < width; x++){
+            long code = (bookKey >>> x * columnBits) & ((1L << columnBits) - 1);
+            ply += Long.SIZE - 1 - Long.numberOfLeadingZeros(code);
+        }
+        return ply;
+    }
+
+    /**
+     * Generate the 7 * 6 opening book.
+     *
+     * Usage: OpeningBookGenerator [depth [file [tableMegabytes]]], e.g. OpeningBookGenerator 8 connectfour.book 256
+     */
+    public static void main(String[] args) throws IOException {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_DEPTH;
+        File file = new File(args.length > 1 ? args[1] : DEFAULT_BOOK_FILE);
+        long tableMegabytes = args.length > 2 ? Long.parseLong(args[2]) : NegamaxSolver.DEFAULT_TABLE_MEGABYTES;
+        new OpeningBookGenerator(7, 6, depth, tableMegabytes).generate(file);
+    }
+}
@@ -0,0 +1,280 @@
+package com.rickey.game.ai;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class {@code ParallelSolver} is a {@link NegamaxSolver} which searches on
+ * several cores with a {@link ForkJoinPool}.
+ *
+ * The moves near the root are split in the Young Brothers Wait way: the first move,
+ * which is the most likely to be the best one, is searched alone. Only when it does
+ * not cut off, the other moves are searched in parallel with the window it leaves.
+ * Every parallel task searches on its own copy of the board, only the transposition
+ * table is shared. When one task cuts off, the brothers after it in the move order
+ * are aborted, the ones before it go on. The copies stop at the deadline of the
+ * search, or when the solver is cancelled.
+ *
+ * Every probe of the root score only tells whether the score is above or below a
+ * value, so the solved score is the same as the one of a sequential search. When
+ * several moves cut off, or reach the same score, the first one in the move order
+ * is taken, as a sequential search does, so the best column is the same too.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class ParallelSolver extends NegamaxSolver {
+    public static final int DEFAULT_SPLIT_PLIES = 4;
+
+    private final ForkJoinPool pool;
+    private final int splitPlies;
+    //nodes visited by the copies, shared by all the copies of a solver
+    private final LongAdder copyNodes;
+    //the split point where this copy was created, null for the solver itself
+    private final SplitPoint splitPoint;
+    //the index of the move of this copy in the move order of its split point
+    private final int brotherIndex;
+    private int rootMoveCount;
+
+    /**
+     * Constructs a parallel solver for a {@code width * height} panel.
+     *
+     * @param width
+     *         X dimension
+     * @param height
+     *         Y dimension
+     * @param table
+     *         the transposition table shared by all threads
+     * @param threads
+     *         how many threads to search with
+     */
+    public ParallelSolver(int width, int height, TranspositionTable table, int threads){
+        this(width, height, table, threads, DEFAULT_SPLIT_PLIES);
+    }
+
+    /**
+     * Constructs a parallel solver for a {@code width * height} panel.
+     *
+     * @param splitPlies
+     *         how many plies below the root are split into parallel tasks
+     */
+    public ParallelSolver(int width, int height, TranspositionTable table, int threads, int splitPlies){
+        super(width, height, table);
+        pool = new ForkJoinPool(threads);
+        this.splitPlies = splitPlies;
+        copyNodes = new LongAdder();
+        splitPoint = null;
+        brotherIndex = 0;
+    }
+
+    private ParallelSolver(ParallelSolver solver, SplitPoint splitPoint, int brotherIndex){
+        super(solver);
+        pool = solver.pool;
+        splitPlies = solver.splitPlies;
+        copyNodes = solver.copyNodes;
+        rootMoveCount = solver.rootMoveCount;
+        this.splitPoint = splitPoint;
+        this.brotherIndex = brotherIndex;
+    }
+
+    @Override
+    public SearchResult search(final int maxDepth){
+        rootMoveCount = board.getMoveCount();
+        copyNodes.reset();
+        //the tasks must be forked from a thread of the pool
+        return pool.invoke(new RecursiveTask<SearchResult>() {
+            @Override
+            protected SearchResult compute() {
+                return ParallelSolver.super.search(maxDepth);
+            }
+        });
+    }
+
+    @Override
+    public long getNodes(){
+        return nodes + copyNodes.sum();
+    }
+
+    public int getThreads(){
+        return pool.getParallelism();
+    }
+
+    /**
+     * Stop the threads of this solver.
+     */
+    public void shutdown(){
+        pool.shutdown();
+    }
+
+    @Override
+    protected int searchMoves(int player, int alpha, int beta, int depth, int[] moves, int count){
+        if(count < 2 || depth < 2 || board.getMoveCount() - rootMoveCount >= splitPlies){
+            return super.searchMoves(player, alpha, beta, depth, moves, count);
+        }
+
+        //the eldest brother is searched alone
+        board.play(moves[0], player);
+        int score = -negamax(1 - player, -beta, -alpha, depth - 1);
+        board.undo();
+        if(isAborted()){
+            bestMove = -1;
+            return alpha;
+        }
+        if(score >= beta){
+            bestMove = moves[0];
+            return score;
+        }
+        int best = -1;
+        if(score > alpha){
+            alpha = score;
+            best = moves[0];
+        }
+
+        //then the young brothers in parallel
+        SplitPoint split = new SplitPoint(splitPoint, brotherIndex);
+        BrotherTask[] tasks = new BrotherTask[count - 1];
+        for(int idx = 1; idx < count; idx++){
+            tasks[idx - 1] = new BrotherTask(new ParallelSolver(this, split, idx), split, idx, player, moves[idx], alpha, beta, depth);
+        }
+        ForkJoinTask.invokeAll(tasks);
+        //the copies may have stopped at the deadline before this solver checked it
+        if(isAborted() || checkStopped()){
+            bestMove = -1;
+            return alpha;
+        }
+        //the brothers before the first one which cut off are all completed, so it is
+        //the move a sequential search would have taken
+        int result = alpha;
+        for(BrotherTask task : tasks){
+            if(!task.completed){
+                //aborted by an earlier brother which cut off
+                continue;
+            }
+            score = task.getRawResult();
+            if(score >= beta){
+                bestMove = task.move;
+                return score;
+            }
+            if(score > result){
+                result = score;
+                best = task.move;
+            }
+        }
+        bestMove = best;
+        return result;
+    }
+
+    @Override
+    protected boolean isAborted(){
+        return splitPoint != null && splitPoint.isCut(brotherIndex) || super.isAborted();
+    }
+
+    /**
+     * A split point is cut for the brothers after the first one which cuts off there.
+     * The tasks below a brother which is cut are aborted too.
+     */
+    private static final class SplitPoint {
+        private final SplitPoint parent;
+        //the index of the brother of the parent split point this one was created below
+        private final int parentIndex;
+        //the lowest index of the brothers which cut off, Integer.MAX_VALUE while none did
+        private volatile int cutIndex = Integer.MAX_VALUE;
+
+        private SplitPoint(SplitPoint parent, int parentIndex){
+            this.parent = parent;
+            this.parentIndex = parentIndex;
+        }
+
+        private synchronized void cut(int index){
+            if(index < cutIndex){
+                cutIndex = index;
+            }
+        }
+
+        /**
+         * @param index
+         *         the index of a brother of this split point
+         * @return {@code true} if an earlier brother cut off, here or above this split point
+         */
+        private boolean isCut(int index){
+            for(SplitPoint point = this; point != null; index = point.parentIndex, point = point.parent){
+                if(point.cutIndex < index){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Search one of the young brothers on a copy of the board.
+     */
+    private static final class BrotherTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final ParallelSolver solver;
+        private final SplitPoint split;
+        private final int index;
+        private final int player;
+        private final int move;
+        private final int alpha;
+        private final int beta;
+        private final int depth;
+        private boolean completed;
+
+        private BrotherTask(ParallelSolver solver, SplitPoint split, int index, int player, int move, int alpha, int beta, int depth){
+            this.solver = solver;
+            this.split = split;
+            this.index = index;
+            this.player = player;
+            this.move = move;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            solver.board.play(move, player);
+            int score = -solver.negamax(1 - player, -beta, -alpha, depth - 1);
+            completed = !solver.isAborted();
+            if(completed && score >= beta){
+                split.cut(index);
+            }
+            solver.copyNodes.add(solver.nodes);
+            return score;
+        }
+    }
+
+    /**
+     * Solve a 7 * 6 position with a sequential search and with parallel searches of
+     * 1, 2, 4, ... threads, and print the speedup of every thread count.
+     *
+     * Usage: ParallelSolver [moves [maxThreads [tableMegabytes]]]
+     */
+    public static void main(String[] args){
+        String moves = args.length > 0 ? args[0] : "";
+        int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long tableMegabytes = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_TABLE_MEGABYTES;
+        TranspositionTable table = new TranspositionTable(tableMegabytes);
+
+        NegamaxSolver sequential = new NegamaxSolver(7, 6, table);
+        sequential.load(moves);
+        SearchResult baseline = sequential.search(7 * 6);
+        System.out.println(String.format("Position [%s], sequential: %s", moves, baseline));
+
+        for(int threads = 1; threads <= maxThreads; threads = threads < maxThreads ? Math.min(threads * 2, maxThreads) : threads + 1){
+            table.clear();
+            ParallelSolver solver = new ParallelSolver(7, 6, table, threads);
+            solver.load(moves);
+            SearchResult result = solver.search(7 * 6);
+            solver.shutdown();
+            System.out.println(String.format("%d threads: %s, speedup %.2f%s%s", threads, result,
+                    (double) baseline.getElapsedNanos() / result.getElapsedNanos(),
+                    result.getColumn() == baseline.getColumn() ? "" : ", COLUMN MISMATCH",
+                    result.getScore() == baseline.getScore() ? "" : ", SCORE MISMATCH"));
+        }
+    }
+}
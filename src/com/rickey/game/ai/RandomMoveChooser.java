@@ -0,0 +1,34 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.datamodel.GamePlayer;
+import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IMoveChooser;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The class {@code RandomMoveChooser} is a computer player which drops its discs
+ * into random columns which are not full. It is the cheapest player, e.g. for
+ * measuring how fast the games themselves run.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class RandomMoveChooser implements IMoveChooser {
+    @Override
+    public int chooseColumn(GridPanel panel, GamePlayer player) {
+        int top = panel.getMaxY() - 1;
+        int open = 0;
+        for(int x = 0; x < panel.getMaxX(); x++){
+            if(panel.getData(x, top) == null){
+                open++;
+            }
+        }
+        int choice = ThreadLocalRandom.current().nextInt(open);
+        for(int x = 0; ; x++){
+            if(panel.getData(x, top) == null && choice-- == 0){
+                return x + 1;
+            }
+        }
+    }
+}
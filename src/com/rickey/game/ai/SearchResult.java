@@ -0,0 +1,91 @@
+package com.rickey.game.ai;
+
+/**
+ * {@code SearchResult} is the outcome of a search on a position, with the
+ * statistics of the search.
+ *
+ * The score is from the point of view of the player to move. A positive score
+ * means a win, the earlier the win, the higher the score. A negative score means
+ * a loss, and 0 means a draw, or no result found within the searched depth.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class SearchResult {
+    private int column;
+    private int score;
+    private int depth;
+    private boolean solved;
+    private boolean interrupted;
+    private long nodes;
+    private long elapsedNanos;
+
+    public SearchResult(int column, int score, int depth, boolean solved, long nodes, long elapsedNanos){
+        this(column, score, depth, solved, false, nodes, elapsedNanos);
+    }
+
+    /**
+     * @param interrupted
+     *         whether the search was stopped by its deadline or cancelled before {@code maxDepth}
+     */
+    public SearchResult(int column, int score, int depth, boolean solved, boolean interrupted, long nodes, long elapsedNanos){
+        this.column = column;
+        this.score = score;
+        this.depth = depth;
+        this.solved = solved;
+        this.interrupted = interrupted;
+        this.nodes = nodes;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the best column, starting from 1
+     */
+    public int getColumn(){
+        return column;
+    }
+
+    public int getScore(){
+        return score;
+    }
+
+    /**
+     * @return how many plies were searched by the last completed iteration
+     */
+    public int getDepth(){
+        return depth;
+    }
+
+    /**
+     * @return {@code true} if the score is the game-theoretic value of the position
+     */
+    public boolean isSolved(){
+        return solved;
+    }
+
+    /**
+     * @return {@code true} if the search was stopped by its deadline or cancelled, then the
+     * result is the one of the deepest completed iteration
+     */
+    public boolean isInterrupted(){
+        return interrupted;
+    }
+
+    public long getNodes(){
+        return nodes;
+    }
+
+    public long getElapsedNanos(){
+        return elapsedNanos;
+    }
+
+    public long getNodesPerSecond(){
+        return elapsedNanos == 0 ? 0 : nodes * 1000000000L / elapsedNanos;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("column %d, score %d, depth %d%s%s, %d nodes in %d ms (%d nodes/s)",
+                column, score, depth, solved ? " (solved)" : "", interrupted ? " (interrupted)" : "", nodes, elapsedNanos / 1000000, getNodesPerSecond());
+    }
+}
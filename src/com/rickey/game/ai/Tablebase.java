@@ -0,0 +1,268 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IDisc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The class {@code Tablebase} looks up the game-theoretic value of any position of a
+ * small panel, e.g. 5 * 4, 6 * 5 or 7 * 4, from a table of all positions. The file is
+ * mapped read-only into memory, so a lookup costs no search and no heap.
+ *
+ * The file starts with a header, followed by one layer of values per number of discs,
+ * from the empty panel to the full one:
+ * <pre>
+ * header: magic (int), version (int), width (int), height (int)
+ * layer:  one value (byte) per position, in the order of {@link TablebaseIndex}
+ * value:  distance to the end (6 bits), result (2 bits)
+ * </pre>
+ * The result is from the view of the player to move. The distance is the number of
+ * plies until the game is over, when the winner wins as fast as possible and the
+ * loser loses as slowly as possible. A drawn game is over when the panel is full.
+ *
+ * A file can be larger than one mapping, so it is mapped in chunks of 1 GB.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ * @see TablebaseGenerator
+ */
+public class Tablebase {
+    public static final int MAGIC = 0x43345442;
+    public static final int VERSION = 1;
+    public static final int RESULT_LOSS = 1;
+    public static final int RESULT_DRAW = 2;
+    public static final int RESULT_WIN = 3;
+
+    static final int HEADER_BYTES = 16;
+    private static final int RESULT_BITS = 2;
+
+    private final TablebaseIndex index;
+    private final Chunks[] layers;
+
+    private Tablebase(FileChannel channel) throws IOException {
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(HEADER_BYTES, channel.size()));
+        if(header.capacity() < HEADER_BYTES || header.getInt(0) != MAGIC || header.getInt(4) != VERSION){
+            throw new GameSystemException("Internal error: not a tablebase of this version.");
+        }
+        index = new TablebaseIndex(header.getInt(8), header.getInt(12));
+        if(channel.size() != HEADER_BYTES + getTotalSize(index)){
+            throw new GameSystemException("Internal error: the tablebase is truncated.");
+        }
+        layers = new Chunks[index.getCells() + 1];
+        long offset = HEADER_BYTES;
+        for(int discs = 0; discs <= index.getCells(); discs++){
+            layers[discs] = new Chunks(channel, FileChannel.MapMode.READ_ONLY, offset, index.getLayerSize(discs));
+            offset += index.getLayerSize(discs);
+        }
+    }
+
+    /**
+     * Map a tablebase file into memory.
+     *
+     * @param file
+     *         the tablebase file written by {@link TablebaseGenerator}
+     * @return the tablebase
+     * @throws IOException
+     *          if the file cannot be read
+     */
+    public static Tablebase open(File file) throws IOException {
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+            FileChannel channel = randomAccessFile.getChannel()){
+            //the mappings stay valid after the channel is closed
+            return new Tablebase(channel);
+        }
+    }
+
+    /**
+     * @return the number of positions of all layers, which is the size of the file without the header
+     */
+    static long getTotalSize(TablebaseIndex index){
+        long total = 0;
+        for(int discs = 0; discs <= index.getCells(); discs++){
+            total += index.getLayerSize(discs);
+        }
+        return total;
+    }
+
+    public int getWidth(){
+        return index.getWidth();
+    }
+
+    public int getHeight(){
+        return index.getHeight();
+    }
+
+    /**
+     * Look up a position given as bitboards with the layout of {@link com.rickey.game.datamodel.BitboardGridPanel}.
+     *
+     * @param firstMask
+     *         the discs of the player who moved first
+     * @param occupied
+     *         the discs of both players
+     * @return the value of the position
+     */
+    public int probe(long firstMask, long occupied){
+        return layers[Long.bitCount(occupied)].get(index.index(firstMask, occupied)) & 0xFF;
+    }
+
+    /**
+     * Look up a position given as a sequence of columns, e.g. "3342". Players move alternately.
+     *
+     * @param moves
+     *         the columns, starting from 1
+     * @return the value of the position
+     */
+    public int probe(String moves){
+        int columnBits = index.getColumnBits();
+        int[] heights = new int[index.getWidth()];
+        long firstMask = 0;
+        long occupied = 0;
+        for(int idx = 0; idx < moves.length(); idx++){
+            int x = moves.charAt(idx) - '1';
+            if(x < 0 || x >= heights.length || heights[x] == index.getHeight()){
+                throw new GameSystemException(String.format("Invalid move [%c] in [%s]", moves.charAt(idx), moves));
+            }
+            long bit = 1L << x * columnBits + heights[x]++;
+            occupied |= bit;
+            if((idx & 1) == 0){
+                firstMask |= bit;
+            }
+        }
+        return probe(firstMask, occupied);
+    }
+
+    /**
+     * Look up the position of a panel.
+     *
+     * @param panel
+     *         the panel, it must have the same dimension as the tablebase
+     * @param disc
+     *         the disc of the player to move
+     * @return the value of the position
+     */
+    public int probe(GridPanel panel, IDisc disc){
+        if(panel.getMaxX() != index.getWidth() || panel.getMaxY() != index.getHeight()){
+            throw new GameSystemException("Internal error: the panel does not match the tablebase.");
+        }
+        int columnBits = index.getColumnBits();
+        long toMoveMask = 0;
+        long occupied = 0;
+        for(int x = 0; x < index.getWidth(); x++){
+            IDisc data;
+            for(int y = 0; y < index.getHeight() && (data = panel.getData(x, y)) != null; y++){
+                long bit = 1L << x * columnBits + y;
+                occupied |= bit;
+                if(data.equals(disc)){
+                    toMoveMask |= bit;
+                }
+            }
+        }
+        //the player to move moved first when the number of discs is even
+        return probe((Long.bitCount(occupied) & 1) == 0 ? toMoveMask : occupied ^ toMoveMask, occupied);
+    }
+
+    /**
+     * @return {@link #RESULT_WIN}, {@link #RESULT_DRAW} or {@link #RESULT_LOSS} for the player to move
+     */
+    public static int getResult(int value){
+        return value & ((1 << RESULT_BITS) - 1);
+    }
+
+    /**
+     * @return how many plies the game lasts with perfect play
+     */
+    public static int getDistance(int value){
+        return value >>> RESULT_BITS;
+    }
+
+    static byte value(int result, int distance){
+        return (byte) (distance << RESULT_BITS | result);
+    }
+
+    /**
+     * Convert a value into the score of {@link SearchResult#getScore()}.
+     *
+     * @param discs
+     *         the number of discs of the position
+     */
+    public int toScore(int value, int discs){
+        int result = getResult(value);
+        if(result == RESULT_DRAW){
+            return 0;
+        }
+        //the winner drops its last disc as disc number discs + distance
+        int score = (index.getCells() + 2 - discs - getDistance(value)) / 2;
+        return result == RESULT_WIN ? score : -score;
+    }
+
+    public static String toString(int value){
+        int result = getResult(value);
+        return String.format("%s in %d plies", result == RESULT_WIN ? "win" : result == RESULT_LOSS ? "loss" : "draw", getDistance(value));
+    }
+
+    /**
+     * Print the value of a position and of every move.
+     *
+     * Usage: Tablebase file [moves], e.g. Tablebase tablebase-5x4.c4t 3342
+     */
+    public static void main(String[] args) throws IOException {
+        Tablebase tablebase = open(new File(args[0]));
+        String moves = args.length > 1 ? args[1] : "";
+        System.out.println(String.format("Position [%s] on %d * %d: %s", moves, tablebase.getWidth(), tablebase.getHeight(),
+                toString(tablebase.probe(moves))));
+        int[] heights = new int[tablebase.getWidth()];
+        for(int idx = 0; idx < moves.length(); idx++){
+            heights[moves.charAt(idx) - '1']++;
+        }
+        for(int x = 0; x < tablebase.getWidth(); x++){
+            if(heights[x] < tablebase.getHeight()){
+                //the value of the move is the opposite of the value of the position after it
+                int value = tablebase.probe(moves + (x + 1));
+                int result = getResult(value);
+                System.out.println(String.format("Column %d: %s", x + 1, toString(value(RESULT_WIN + RESULT_LOSS - result, getDistance(value) + 1))));
+            }
+        }
+    }
+
+    /**
+     * A region of a file which is mapped in chunks, so it can be larger than one mapping.
+     */
+    static final class Chunks {
+        private static final int CHUNK_BITS = 30;
+        private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+        private final MappedByteBuffer[] buffers;
+
+        Chunks(FileChannel channel, FileChannel.MapMode mode, long offset, long size) throws IOException {
+            buffers = new MappedByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_BITS)];
+            for(int idx = 0; idx < buffers.length; idx++){
+                long start = (long) idx << CHUNK_BITS;
+                buffers[idx] = channel.map(mode, offset + start, Math.min(size - start, 1L << CHUNK_BITS));
+            }
+        }
+
+        byte get(long position){
+            return buffers[(int) (position >>> CHUNK_BITS)].get((int) (position & CHUNK_MASK));
+        }
+
+        /**
+         * Several threads may put at different positions at the same time, an absolute put
+         * does not change the state of the buffer.
+         */
+        void put(long position, byte value){
+            buffers[(int) (position >>> CHUNK_BITS)].put((int) (position & CHUNK_MASK), value);
+        }
+
+        void force(){
+            for(MappedByteBuffer buffer : buffers){
+                buffer.force();
+            }
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.rickey.game.ai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * The class {@code TablebaseGenerator} writes the {@link Tablebase} of all positions
+ * of a small panel by backward induction.
+ *
+ * The layers are solved from the full panel down to the empty one. A position is over
+ * when the player who moved last has four in a row, or when the panel is full.
+ * Otherwise its value comes from the values of its children, which are all in the
+ * next layer, so every pass only reads the layer which was written before.
+ *
+ * The table is written straight into the mapped file, and every pass maps only the
+ * two layers it works on. The rest of the table stays on disk, so the table does
+ * not have to fit in the heap. The positions of a layer are split by their column
+ * heights and solved on all cores.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class TablebaseGenerator {
+    private final TablebaseIndex index;
+    private final int cells;
+
+    /**
+     * Constructs a generator for a {@code width * height} panel.
+     */
+    public TablebaseGenerator(int width, int height){
+        index = new TablebaseIndex(width, height);
+        cells = index.getCells();
+    }
+
+    /**
+     * @return the number of positions of the panel, which is the number of bytes of the table
+     */
+    public long getPositionCount(){
+        return Tablebase.getTotalSize(index);
+    }
+
+    /**
+     * Solve all the positions and write them to a tablebase file.
+     *
+     * @param file
+     *         the tablebase file
+     * @return the statistics of the layers, in the order they were solved, from the full panel to the empty one
+     */
+    public List<TablebaseLayerStats> generate(File file) throws IOException {
+        return generate(file, null);
+    }
+
+    /**
+     * Solve all the positions and write them to a tablebase file.
+     *
+     * @param file
+     *         the tablebase file
+     * @param progress
+     *         gets the statistics of every layer as soon as it is solved, {@code null} for none
+     * @return the statistics of the layers, in the order they were solved, from the full panel to the empty one
+     */
+    public List<TablebaseLayerStats> generate(File file, Consumer<TablebaseLayerStats> progress) throws IOException {
+        long total = Tablebase.getTotalSize(index);
+        List<TablebaseLayerStats> layers = new ArrayList<>(cells + 1);
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            FileChannel channel = randomAccessFile.getChannel()){
+            randomAccessFile.setLength(0);
+            randomAccessFile.setLength(Tablebase.HEADER_BYTES + total);
+            long[] offsets = new long[cells + 2];
+            offsets[0] = Tablebase.HEADER_BYTES;
+            for(int discs = 0; discs <= cells; discs++){
+                offsets[discs + 1] = offsets[discs] + index.getLayerSize(discs);
+            }
+
+            Tablebase.Chunks next = null;
+            for(int discs = cells; discs >= 0; discs--){
+                long start = System.nanoTime();
+                Tablebase.Chunks layer = new Tablebase.Chunks(channel, FileChannel.MapMode.READ_WRITE, offsets[discs], index.getLayerSize(discs));
+                LongAdder[] results = {new LongAdder(), new LongAdder(), new LongAdder(), new LongAdder()};
+                solveLayer(discs, layer, next, results);
+                layer.force();
+                TablebaseLayerStats stats = new TablebaseLayerStats(discs, index.getLayerSize(discs), results[Tablebase.RESULT_WIN].sum(),
+                        results[Tablebase.RESULT_DRAW].sum(), results[Tablebase.RESULT_LOSS].sum(), System.nanoTime() - start);
+                layers.add(stats);
+                if(progress != null){
+                    progress.accept(stats);
+                }
+                next = layer;
+            }
+
+            //the header is written last, so an unfinished file is never taken for a tablebase
+            ByteBuffer header = ByteBuffer.allocate(Tablebase.HEADER_BYTES);
+            header.putInt(Tablebase.MAGIC).putInt(Tablebase.VERSION).putInt(index.getWidth()).putInt(index.getHeight());
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        return layers;
+    }
+
+    private void solveLayer(int discs, Tablebase.Chunks layer, Tablebase.Chunks next, LongAdder[] results){
+        List<int[]> heights = index.getHeights(discs);
+        IntStream.range(0, heights.size()).parallel().forEach(rank -> {
+            long[] counts = new long[4];
+            solveHeights(discs, heights.get(rank), rank, layer, next, counts);
+            for(int result = 0; result < counts.length; result++){
+                results[result].add(counts[result]);
+            }
+        });
+    }
+
+    /**
+     * Solve all positions with the same column heights.
+     */
+    private void solveHeights(int discs, int[] heights, long rank, Tablebase.Chunks layer, Tablebase.Chunks next, long[] counts){
+        int width = index.getWidth();
+        int firstDiscs = TablebaseIndex.firstPlayerDiscs(discs);
+        long combinations = index.binomial(discs, firstDiscs);
+        long base = rank * combinations;
+        long occupied = index.toOccupied(heights);
+        //the disc of the player to move is a bit of the mask if that player moved first
+        long mover = (discs & 1) == 0 ? 1 : 0;
+
+        //where the children of every move are, and where the new disc goes in the mask
+        long[] childBases = new long[width];
+        int[] insertions = new int[width];
+        int offset = 0;
+        for(int x = 0; x < width; x++){
+            insertions[x] = offset + heights[x];
+            offset += heights[x];
+            if(heights[x] < index.getHeight()){
+                heights[x]++;
+                childBases[x] = index.rankHeights(heights) * index.binomial(discs + 1, TablebaseIndex.firstPlayerDiscs(discs + 1));
+                heights[x]--;
+            }
+        }
+
+        long mask = (1L << firstDiscs) - 1;
+        for(long idx = 0; idx < combinations; idx++){
+            long firstMask = index.toBitboard(heights, mask);
+            long lastMoverMask = (discs & 1) == 1 ? firstMask : occupied ^ firstMask;
+            byte value;
+            if(discs > 0 && index.hasFour(lastMoverMask)){
+                value = Tablebase.value(Tablebase.RESULT_LOSS, 0);
+            }else if(discs == cells){
+                value = Tablebase.value(Tablebase.RESULT_DRAW, 0);
+            }else{
+                value = solveChildren(discs, heights, mask, mover, childBases, insertions, next);
+            }
+            layer.put(base + idx, value);
+            counts[Tablebase.getResult(value)]++;
+            if(idx + 1 < combinations){
+                mask = TablebaseIndex.nextMask(mask);
+            }
+        }
+    }
+
+    /**
+     * The player to move wins as fast as possible, or draws, or loses as slowly as possible.
+     */
+    private byte solveChildren(int discs, int[] heights, long mask, long mover, long[] childBases, int[] insertions,
+                               Tablebase.Chunks next){
+        int fastestWin = Integer.MAX_VALUE;
+        boolean draw = false;
+        int slowestLoss = 0;
+        for(int x = 0; x < heights.length; x++){
+            if(heights[x] == index.getHeight()){
+                continue;
+            }
+            int position = insertions[x];
+            long low = mask & ((1L << position) - 1);
+            long child = low | mover << position | (mask ^ low) << 1;
+            int value = next.get(childBases[x] + index.rankMask(child)) & 0xFF;
+            int distance = Tablebase.getDistance(value) + 1;
+            switch (Tablebase.getResult(value)){
+                case Tablebase.RESULT_LOSS:
+                    fastestWin = Math.min(fastestWin, distance);
+                    break;
+                case Tablebase.RESULT_DRAW:
+                    draw = true;
+                    break;
+                default:
+                    slowestLoss = Math.max(slowestLoss, distance);
+                    break;
+            }
+        }
+        if(fastestWin != Integer.MAX_VALUE){
+            return Tablebase.value(Tablebase.RESULT_WIN, fastestWin);
+        }
+        if(draw){
+            //a drawn game is over when the panel is full
+            return Tablebase.value(Tablebase.RESULT_DRAW, cells - discs);
+        }
+        return Tablebase.value(Tablebase.RESULT_LOSS, slowestLoss);
+    }
+
+    /**
+     * Generate the tablebase of a small panel, and print every layer when it is solved.
+     *
+     * Usage: TablebaseGenerator [width [height [file]]], e.g. TablebaseGenerator 5 4 tablebase-5x4.c4t
+     */
+    public static void main(String[] args) throws IOException {
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        File file = new File(args.length > 2 ? args[2] : String.format("tablebase-%dx%d.c4t", width, height));
+        TablebaseGenerator generator = new TablebaseGenerator(width, height);
+        System.out.println(String.format("%d * %d: %d positions", width, height, generator.getPositionCount()));
+        generator.generate(file, System.out::println);
+        System.out.println(String.format("Written to %s", file));
+    }
+}
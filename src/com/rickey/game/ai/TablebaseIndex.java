@@ -0,0 +1,216 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.common.GameSystemException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The class {@code TablebaseIndex} numbers all the positions of a panel without any
+ * gap, so a table of the positions needs no key.
+ *
+ * The positions are grouped into layers by the number of discs. In the layer of
+ * {@code n} discs, the player who moved first has {@code (n + 1) / 2} of them. A
+ * position is the column heights plus the owners of the discs, read column by column
+ * from the bottom, so its index in the layer is
+ * <pre>
+ * rank of the heights * C(n, (n + 1) / 2) + rank of the discs of the first player
+ * </pre>
+ * The heights are ranked in lexicographic order among all heights of {@code n}
+ * discs. The discs of the first player are a mask of {@code n} bits, ranked in
+ * colexicographic order, which is the numeric order of the masks with the same
+ * number of bits.
+ *
+ * The positions are kept as bitboards with the layout of {@link com.rickey.game.datamodel.BitboardGridPanel}.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+final class TablebaseIndex {
+    private final int width;
+    private final int height;
+    private final int cells;
+    private final int columnBits;
+    //ways[k][s]: how many heights of k columns hold s discs
+    private final long[][] ways;
+    private final long[][] binomials;
+
+    TablebaseIndex(int width, int height){
+        if(width < 1 || height < 1 || width * (height + 1) >= Long.SIZE || width * height > 62){
+            throw new GameSystemException(String.format("Internal error: the panel %d * %d is too large for a tablebase.", width, height));
+        }
+        this.width = width;
+        this.height = height;
+        cells = width * height;
+        columnBits = height + 1;
+        binomials = new long[cells + 2][cells + 2];
+        for(int n = 0; n <= cells + 1; n++){
+            binomials[n][0] = 1;
+            for(int k = 1; k <= n; k++){
+                binomials[n][k] = binomials[n - 1][k - 1] + binomials[n - 1][k];
+            }
+        }
+        ways = new long[width + 1][cells + 1];
+        ways[0][0] = 1;
+        for(int k = 1; k <= width; k++){
+            for(int s = 0; s <= cells; s++){
+                for(int v = 0; v <= height && v <= s; v++){
+                    ways[k][s] += ways[k - 1][s - v];
+                }
+            }
+        }
+    }
+
+    int getWidth(){
+        return width;
+    }
+
+    int getHeight(){
+        return height;
+    }
+
+    int getCells(){
+        return cells;
+    }
+
+    int getColumnBits(){
+        return columnBits;
+    }
+
+    /**
+     * @return how many discs the player who moved first has, when there are {@code discs} discs
+     */
+    static int firstPlayerDiscs(int discs){
+        return (discs + 1) / 2;
+    }
+
+    /**
+     * @return the number of positions with {@code discs} discs
+     */
+    long getLayerSize(int discs){
+        return ways[width][discs] * binomial(discs, firstPlayerDiscs(discs));
+    }
+
+    long binomial(int n, int k){
+        return k < 0 || k > n ? 0 : binomials[n][k];
+    }
+
+    /**
+     * @return all heights of the layer, in the order of their ranks
+     */
+    List<int[]> getHeights(int discs){
+        List<int[]> list = new ArrayList<>();
+        addHeights(list, new int[width], 0, discs);
+        return list;
+    }
+
+    private void addHeights(List<int[]> list, int[] heights, int column, int left){
+        if(column == width){
+            if(left == 0){
+                list.add(heights.clone());
+            }
+            return;
+        }
+        for(int v = 0; v <= height && v <= left; v++){
+            heights[column] = v;
+            addHeights(list, heights, column + 1, left - v);
+        }
+    }
+
+    /**
+     * @return the rank of the heights among all heights with the same number of discs
+     */
+    long rankHeights(int[] heights){
+        int left = 0;
+        for(int h : heights){
+            left += h;
+        }
+        long rank = 0;
+        for(int column = 0; column < width; column++){
+            for(int v = 0; v < heights[column]; v++){
+                rank += ways[width - 1 - column][left - v];
+            }
+            left -= heights[column];
+        }
+        return rank;
+    }
+
+    /**
+     * @return the rank of a mask among the masks with the same number of bits
+     */
+    long rankMask(long mask){
+        long rank = 0;
+        int count = 0;
+        while(mask != 0){
+            int position = Long.numberOfTrailingZeros(mask);
+            rank += binomials[position][++count];
+            mask &= mask - 1;
+        }
+        return rank;
+    }
+
+    /**
+     * @param firstMask
+     *         the discs of the player who moved first
+     * @param occupied
+     *         the discs of both players
+     * @return the index of the position in the layer of its number of discs
+     */
+    long index(long firstMask, long occupied){
+        int[] heights = new int[width];
+        long discMask = 0;
+        int offset = 0;
+        for(int x = 0; x < width; x++){
+            int h = Long.bitCount((occupied >>> x * columnBits) & ((1L << columnBits) - 1));
+            heights[x] = h;
+            discMask |= ((firstMask >>> x * columnBits) & ((1L << h) - 1)) << offset;
+            offset += h;
+        }
+        return rankHeights(heights) * binomial(offset, firstPlayerDiscs(offset)) + rankMask(discMask);
+    }
+
+    /**
+     * @return the discs of the first player as a bitboard
+     */
+    long toBitboard(int[] heights, long discMask){
+        long bitboard = 0;
+        int offset = 0;
+        for(int x = 0; x < width; x++){
+            bitboard |= ((discMask >>> offset) & ((1L << heights[x]) - 1)) << x * columnBits;
+            offset += heights[x];
+        }
+        return bitboard;
+    }
+
+    /**
+     * @return all the cells of the heights as a bitboard
+     */
+    long toOccupied(int[] heights){
+        long occupied = 0;
+        for(int x = 0; x < width; x++){
+            occupied |= ((1L << heights[x]) - 1) << x * columnBits;
+        }
+        return occupied;
+    }
+
+    /**
+     * @return the next mask with the same number of bits, Gosper's hack
+     */
+    static long nextMask(long mask){
+        long lowest = mask & -mask;
+        long ripple = mask + lowest;
+        return (((ripple ^ mask) >>> 2) / lowest) | ripple;
+    }
+
+    /**
+     * @return {@code true} if the discs have four in a row in any direction
+     */
+    boolean hasFour(long mask){
+        return hasFour(mask, 1) || hasFour(mask, columnBits) || hasFour(mask, columnBits - 1) || hasFour(mask, columnBits + 1);
+    }
+
+    private static boolean hasFour(long mask, int shift){
+        long pairs = mask & (mask >>> shift);
+        return (pairs & (pairs >>> 2 * shift)) != 0;
+    }
+}
@@ -0,0 +1,60 @@
+package com.rickey.game.ai;
+
+/**
+ * {@code TablebaseLayerStats} tells how one layer of a {@link Tablebase} was solved by
+ * the {@link TablebaseGenerator}: how many positions with the same number of discs
+ * are wins, draws and losses for the player to move, and how long the pass took.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class TablebaseLayerStats {
+    private int discs;
+    private long positions;
+    private long wins;
+    private long draws;
+    private long losses;
+    private long elapsedNanos;
+
+    public TablebaseLayerStats(int discs, long positions, long wins, long draws, long losses, long elapsedNanos){
+        this.discs = discs;
+        this.positions = positions;
+        this.wins = wins;
+        this.draws = draws;
+        this.losses = losses;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of discs of every position of the layer
+     */
+    public int getDiscs(){
+        return discs;
+    }
+
+    public long getPositions(){
+        return positions;
+    }
+
+    public long getWins(){
+        return wins;
+    }
+
+    public long getDraws(){
+        return draws;
+    }
+
+    public long getLosses(){
+        return losses;
+    }
+
+    public long getElapsedNanos(){
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("Layer %d: %d positions, %d wins, %d draws, %d losses in %d ms", discs, positions, wins, draws,
+                losses, elapsedNanos / 1000000);
+    }
+}
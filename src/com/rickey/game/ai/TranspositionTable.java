@@ -0,0 +1,244 @@
+package com.rickey.game.ai;
+
+import com.rickey.game.common.GameSystemException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code TranspositionTable} remembers the results of searched positions, so a
+ * position reached by different move orders is only searched once.
+ *
+ * The table lives off-heap in direct {@link ByteBuffer} segments, so it can be
+ * several GB large without any cost for the garbage collector. It is open-addressed
+ * with buckets of {@value #BUCKET_ENTRIES} entries. Every entry is one 64-bit word:
+ * <pre>
+ *  63        32 31     30    23 22   17 16    10 9     8 7     0
+ * | key bits   | - | generation | move | depth | bound | score |
+ * </pre>
+ * The low bits of the key select the bucket, the high 32 bits are kept in the entry
+ * to tell the positions of a bucket apart. A word is written at once, so a reader
+ * never sees half of an entry.
+ *
+ * When a bucket is full, the entry of an older search is replaced first, then the
+ * entry with the smallest depth.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class TranspositionTable {
+    public static final int BOUND_EXACT = 1;
+    public static final int BOUND_LOWER = 2;
+    public static final int BOUND_UPPER = 3;
+    public static final int BUCKET_ENTRIES = 4;
+
+    private static final int ENTRY_BYTES = 8;
+    private static final int SEGMENT_BITS = 27;
+    private static final int SCORE_OFFSET = 128;
+    private static final int MAX_DEPTH = 0x7f;
+
+    private final ByteBuffer[] segments;
+    private final long bucketMask;
+    private final long entryCount;
+    private int generation;
+
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+    private final LongAdder replacements = new LongAdder();
+
+    /**
+     * Constructs a table which takes up to {@code megabytes} MB off-heap memory.
+     * The number of entries is rounded down to a power of 2.
+     *
+     * @param megabytes
+     *         the size of the table in MB
+     */
+    public TranspositionTable(long megabytes){
+        if(megabytes <= 0){
+            throw new GameSystemException(String.format("Invalid transposition table size [%d] MB.", megabytes));
+        }
+        long bytes = Long.highestOneBit(megabytes << 20);
+        entryCount = bytes / ENTRY_BYTES;
+        bucketMask = entryCount / BUCKET_ENTRIES - 1;
+        int segmentBytes = (int) Math.min(bytes, 1L << SEGMENT_BITS);
+        segments = new ByteBuffer[(int) (bytes / segmentBytes)];
+        for(int idx = 0; idx < segments.length; idx++){
+            segments[idx] = ByteBuffer.allocateDirect(segmentBytes).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Start a new search. Entries of previous searches are replaced first.
+     */
+    public void newSearch(){
+        generation = (generation + 1) & 0xff;
+    }
+
+    /**
+     * Look up a position.
+     *
+     * @param key
+     *         the key of the position
+     * @return the packed entry, 0 if the position is not found
+     * @see #score(long)
+     * @see #bound(long)
+     * @see #depth(long)
+     * @see #move(long)
+     */
+    public long probe(long key){
+        probes.increment();
+        long offset = bucketOffset(key);
+        ByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+        int position = (int) (offset & ((1L << SEGMENT_BITS) - 1));
+        boolean full = true;
+        for(int idx = 0; idx < BUCKET_ENTRIES; idx++){
+            long entry = segment.getLong(position + idx * ENTRY_BYTES);
+            if(entry == 0){
+                full = false;
+            }else if(sameKey(entry, key)){
+                hits.increment();
+                return entry;
+            }
+        }
+        if(full){
+            collisions.increment();
+        }
+        return 0L;
+    }
+
+    /**
+     * Store the result of a position.
+     *
+     * @param key
+     *         the key of the position
+     * @param score
+     *         the score of the position
+     * @param bound
+     *         whether the score is exact, a lower bound or an upper bound
+     * @param depth
+     *         how deep the position was searched
+     * @param move
+     *         the best column starting from 0, -1 if unknown
+     */
+    public void store(long key, int score, int bound, int depth, int move){
+        stores.increment();
+        long offset = bucketOffset(key);
+        ByteBuffer segment = segments[(int) (offset >>> SEGMENT_BITS)];
+        int position = (int) (offset & ((1L << SEGMENT_BITS) - 1));
+        int victim = -1;
+        int victimPriority = Integer.MAX_VALUE;
+        for(int idx = 0; idx < BUCKET_ENTRIES; idx++){
+            long entry = segment.getLong(position + idx * ENTRY_BYTES);
+            if(entry == 0 || sameKey(entry, key)){
+                victim = idx;
+                victimPriority = -1;
+                break;
+            }
+            int priority = depth(entry) + (generation(entry) == generation ? MAX_DEPTH + 1 : 0);
+            if(priority < victimPriority){
+                victim = idx;
+                victimPriority = priority;
+            }
+        }
+        if(victimPriority >= 0){
+            replacements.increment();
+        }
+        long data = (score + SCORE_OFFSET)
+                | ((long) bound << 8)
+                | ((long) Math.min(depth, MAX_DEPTH) << 10)
+                | ((long) (move + 1) << 17)
+                | ((long) generation << 23);
+        segment.putLong(position + victim * ENTRY_BYTES, (key & 0xffffffff00000000L) | data);
+    }
+
+    /**
+     * Remove all entries and reset the statistics.
+     */
+    public void clear(){
+        for(ByteBuffer segment : segments){
+            for(int position = 0; position < segment.capacity(); position += ENTRY_BYTES){
+                segment.putLong(position, 0L);
+            }
+        }
+        probes.reset();
+        hits.reset();
+        collisions.reset();
+        stores.reset();
+        replacements.reset();
+    }
+
+    public long getEntryCount(){
+        return entryCount;
+    }
+
+    public long getProbes(){
+        return probes.sum();
+    }
+
+    public long getHits(){
+        return hits.sum();
+    }
+
+    /**
+     * @return how many probes missed while all entries of the bucket held other positions
+     */
+    public long getCollisions(){
+        return collisions.sum();
+    }
+
+    public long getStores(){
+        return stores.sum();
+    }
+
+    /**
+     * @return how many stores overwrote the entry of another position
+     */
+    public long getReplacements(){
+        return replacements.sum();
+    }
+
+    /**
+     * @return a line with the hit, collision and replacement rates
+     */
+    public String getStatistics(){
+        long probeCount = Math.max(1, getProbes());
+        long storeCount = Math.max(1, getStores());
+        return String.format("%d MB, %d probes, hit rate %.2f%%, collision rate %.2f%%, replacement rate %.2f%%",
+                entryCount * ENTRY_BYTES >> 20, getProbes(), 100.0 * getHits() / probeCount,
+                100.0 * getCollisions() / probeCount, 100.0 * getReplacements() / storeCount);
+    }
+
+    public static int score(long entry){
+        return (int) (entry & 0xff) - SCORE_OFFSET;
+    }
+
+    public static int bound(long entry){
+        return (int) (entry >>> 8) & 0x3;
+    }
+
+    public static int depth(long entry){
+        return (int) (entry >>> 10) & MAX_DEPTH;
+    }
+
+    /**
+     * @return the best column starting from 0, -1 if unknown
+     */
+    public static int move(long entry){
+        return ((int) (entry >>> 17) & 0x3f) - 1;
+    }
+
+    private static int generation(long entry){
+        return (int) (entry >>> 23) & 0xff;
+    }
+
+    private static boolean sameKey(long entry, long key){
+        return ((entry ^ key) & 0xffffffff00000000L) == 0;
+    }
+
+    private long bucketOffset(long key){
+        return (key & bucketMask) * BUCKET_ENTRIES * ENTRY_BYTES;
+    }
+}
@@ -0,0 +1,196 @@
+package com.rickey.game.batch;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.datamodel.FallDownGridPanel;
+
+import java.util.Arrays;
+
+/**
+ * The class {@code BatchBoards} holds many independent boards of the same size for
+ * bulk analysis, e.g. to play out millions of positions. The boards are not objects,
+ * each board is a lane of a few parallel primitive arrays:
+ * <pre>
+ * current:  the discs of the player to move (long)
+ * occupied: the discs of both players (long)
+ * results:  {@link #RESULT_NONE}, {@link #RESULT_WIN} or {@link #RESULT_DRAW} (byte)
+ * </pre>
+ * The discs are bitboards with the layout of {@link com.rickey.game.datamodel.BitboardGridPanel}.
+ * A move of every lane is played by one call, which walks the arrays from the start
+ * to the end, and checks every lane for four in a row and a full panel.
+ *
+ * With Java 17 or later and {@code --add-modules jdk.incubator.vector}, the lanes are
+ * played with the Vector API, as many lanes at once as a vector register holds. Otherwise
+ * they are played one after another.
+ *
+ * The results are the same as those of a {@link FallDownGridPanel} with
+ * {@code ConnectWinStrategy(4)}: a game is won by the player who moved last when the
+ * new disc makes four or more in a row, and a draw when the panel is full.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class BatchBoards {
+    public static final byte RESULT_NONE = 0;
+    //the player who moved last has won
+    public static final byte RESULT_WIN = 1;
+    public static final byte RESULT_DRAW = 2;
+
+    private final int width;
+    private final int height;
+    private final int columnBits;
+    private final int size;
+    private final long[] current;
+    private final long[] occupied;
+    private final long[] moves;
+    private final byte[] results;
+    private final BatchKernel kernel;
+
+    /**
+     * Constructs empty boards, played with the Vector API if it can be used.
+     *
+     * @param width
+     *         the number of columns
+     * @param height
+     *         the number of rows
+     * @param size
+     *         the number of boards
+     */
+    public BatchBoards(int width, int height, int size){
+        this(width, height, size, true);
+    }
+
+    /**
+     * Constructs empty boards.
+     *
+     * @param vectorized
+     *         {@code false} to play one lane after another even if the Vector API can be used
+     */
+    public BatchBoards(int width, int height, int size, boolean vectorized){
+        if(width < 1 || height < 1 || width * (height + 1) > Long.SIZE){
+            throw new GameSystemException(String.format("Internal error: the panel %d * %d does not fit in a bitboard.", width, height));
+        }
+        this.width = width;
+        this.height = height;
+        this.size = size;
+        columnBits = height + 1;
+        current = new long[size];
+        occupied = new long[size];
+        moves = new long[size];
+        results = new byte[size];
+        kernel = BatchKernel.create(width, height, vectorized);
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * @return the number of boards
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @return {@code true} if the lanes are played with the Vector API
+     */
+    public boolean isVectorized(){
+        return kernel.isVectorized();
+    }
+
+    /**
+     * Empty all boards.
+     */
+    public void clear(){
+        Arrays.fill(current, 0L);
+        Arrays.fill(occupied, 0L);
+        Arrays.fill(results, RESULT_NONE);
+    }
+
+    /**
+     * Set a board to the position of a panel, which has the same dimension.
+     *
+     * @param lane
+     *         the index of the board
+     * @param panel
+     *         the panel, its moves are replayed
+     */
+    public void load(int lane, FallDownGridPanel<?> panel){
+        if(panel.getMaxX() != width || panel.getMaxY() != height){
+            throw new GameSystemException("Internal error: the panel does not match the boards.");
+        }
+        current[lane] = 0;
+        occupied[lane] = 0;
+        results[lane] = RESULT_NONE;
+        for(int idx = 0; idx < panel.getMoveCount() && results[lane] == RESULT_NONE; idx++){
+            moves[lane] = 1L << (panel.getMoveColumn(idx) - 1) * columnBits;
+            kernel.play(current, occupied, moves, results, lane, lane + 1);
+        }
+    }
+
+    /**
+     * Play a move in every board. A board whose game is over, or whose column is out
+     * of the panel or full, stays as it is.
+     *
+     * @param columns
+     *         the column of every board, starting from 1, 0 for no move; there may be
+     *         fewer columns than boards, the other boards do not move
+     * @return the number of boards which moved
+     */
+    public int play(int[] columns){
+        int count = Math.min(columns.length, size);
+        for(int idx = 0; idx < count; idx++){
+            int x = columns[idx] - 1;
+            moves[idx] = x >= 0 && x < width && results[idx] == RESULT_NONE ? 1L << x * columnBits : 0L;
+        }
+        return kernel.play(current, occupied, moves, results, count);
+    }
+
+    /**
+     * @return {@link #RESULT_NONE}, {@link #RESULT_WIN} or {@link #RESULT_DRAW}
+     */
+    public byte getResult(int lane){
+        return results[lane];
+    }
+
+    /**
+     * @return the number of boards with the result
+     */
+    public int count(byte result){
+        int count = 0;
+        for(byte value : results){
+            if(value == result){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of discs on a board
+     */
+    public int getMoveCount(int lane){
+        return Long.bitCount(occupied[lane]);
+    }
+
+    /**
+     * @param x
+     *         column index
+     * @param y
+     *         row index
+     * @return 0 for an empty cell, 1 for a disc of the player who moved first, 2 for the other player
+     */
+    public int getDisc(int lane, int x, int y){
+        long bit = 1L << x * columnBits + y;
+        if((occupied[lane] & bit) == 0){
+            return 0;
+        }
+        boolean toMove = (current[lane] & bit) != 0;
+        //the player who moved first is to move when the number of discs is even
+        return toMove == ((getMoveCount(lane) & 1) == 0) ? 1 : 2;
+    }
+}
@@ -0,0 +1,109 @@
+package com.rickey.game.batch;
+
+/**
+ * The class {@code BatchKernel} plays the moves of the lanes of a {@link BatchBoards}
+ * one lane after another. It is the fallback when the Vector API is not there, and
+ * it plays the lanes which do not fill a whole vector.
+ *
+ * The vector kernel needs Java 17 or later with {@code --add-modules jdk.incubator.vector},
+ * it is compiled from its own source root and loaded by {@link #create(int, int, boolean)}
+ * with reflection.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+class BatchKernel {
+    private static final String VECTOR_KERNEL_CLASS = "com.rickey.game.batch.VectorBatchKernel";
+
+    //a move into a full column would overflow into the cell above the top
+    protected final int topShift;
+    protected final int columnBits;
+    protected final long fullMask;
+
+    BatchKernel(int width, int height){
+        topShift = height - 1;
+        columnBits = height + 1;
+        long bottomMask = 0;
+        for(int x = 0; x < width; x++){
+            bottomMask |= 1L << x * columnBits;
+        }
+        fullMask = bottomMask * ((1L << height) - 1);
+    }
+
+    /**
+     * @param vectorized
+     *         {@code true} for the vector kernel if the Vector API can be used
+     * @return the vector kernel, or this kernel if the Vector API cannot be used
+     */
+    static BatchKernel create(int width, int height, boolean vectorized){
+        if(vectorized){
+            try {
+                Class.forName("jdk.incubator.vector.LongVector");
+                return (BatchKernel) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor(int.class, int.class)
+                        .newInstance(width, height);
+            } catch (ReflectiveOperationException | LinkageError e) {
+                //falls back to one lane after another
+            }
+        }
+        return new BatchKernel(width, height);
+    }
+
+    boolean isVectorized(){
+        return false;
+    }
+
+    /**
+     * Drop a disc into every lane which has a move to a column which is not full,
+     * then mark the lanes whose player has four in a row, or whose panel is full.
+     *
+     * @param current
+     *         the discs of the player to move of every lane
+     * @param occupied
+     *         the discs of both players of every lane
+     * @param moves
+     *         the bottom cell of the column of every lane, 0 for no move
+     * @param results
+     *         the result of every lane, it is only written when a lane ends
+     * @param count
+     *         the number of lanes
+     * @return the number of lanes which played
+     */
+    int play(long[] current, long[] occupied, long[] moves, byte[] results, int count){
+        return play(current, occupied, moves, results, 0, count);
+    }
+
+    final int play(long[] current, long[] occupied, long[] moves, byte[] results, int from, int to){
+        int played = 0;
+        for(int idx = from; idx < to; idx++){
+            long move = moves[idx];
+            long before = occupied[idx];
+            if(move == 0 || (before & move << topShift) != 0){
+                continue;
+            }
+            long after = before | (before + move);
+            long mover = current[idx] | (after ^ before);
+            //the discs of the opponent do not change, and the opponent moves next
+            current[idx] ^= before;
+            occupied[idx] = after;
+            if(hasFour(mover)){
+                results[idx] = BatchBoards.RESULT_WIN;
+            }else if(after == fullMask){
+                results[idx] = BatchBoards.RESULT_DRAW;
+            }
+            played++;
+        }
+        return played;
+    }
+
+    /**
+     * @return {@code true} if the discs have four in a row in any direction
+     */
+    final boolean hasFour(long mask){
+        return hasFour(mask, 1) || hasFour(mask, columnBits) || hasFour(mask, columnBits - 1) || hasFour(mask, columnBits + 1);
+    }
+
+    private static boolean hasFour(long mask, int shift){
+        long pairs = mask & (mask >>> shift);
+        return (pairs & (pairs >>> 2 * shift)) != 0;
+    }
+}
@@ -17,6 +17,6 @@ public class GameSystemException  extends RuntimeException {
 
     @Override
     public String getMessage(){
-        return "GameSystemException: " + getMessage();
+        return "GameSystemException: " + super.getMessage();
     }
 }
@@ -1,12 +1,19 @@
 package com.rickey.game.connectfour;
 
+import com.rickey.game.ai.NegamaxMoveChooser;
+import com.rickey.game.ai.OpeningBook;
+import com.rickey.game.ai.OpeningBookGenerator;
 import com.rickey.game.controller.ConnectGameController;
 import com.rickey.game.datamodel.ColorDisc;
 import com.rickey.game.datamodel.FallDownGridPanel;
 import com.rickey.game.datamodel.GamePlayer;
+import com.rickey.game.datamodel.IDisc;
+import com.rickey.game.record.GameRecordWriter;
 import com.rickey.game.strategy.ConnectWinStrategy;
 import com.rickey.game.strategy.IWinStrategy;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Scanner;
 
 /**
@@ -17,14 +24,19 @@ import java.util.Scanner;
  */
 public class ConnectFourGame {
     public static final int WIN_CONNECTION_COUNT = 4;
+    public static final int COMPUTER_SEARCH_DEPTH = 12;
+    public static final String COMPUTER_PLAYER = "computer";
 
     public static void main(String[] args){
         //the grid panel for ConnectFour game is 7 * 6
         FallDownGridPanel<ColorDisc> panel = new FallDownGridPanel<>(7, 6);
 
         //we have two players in ConnectFour game, player 1 with red discs, and player 2 with green discs
-        GamePlayer[] players = new GamePlayer[]{new GamePlayer("Player 1", ColorDisc.RED_DISC),
-                new GamePlayer("Player 2", ColorDisc.GREEN_DISC)};
+        //e.g. "ConnectFourGame human computer" lets the computer play for player 2
+        //and "ConnectFourGame human computer games.c4r" records the game at the end of games.c4r
+        OpeningBook openingBook = loadOpeningBook();
+        GamePlayer[] players = new GamePlayer[]{createPlayer("Player 1", ColorDisc.RED_DISC, args, 0, openingBook),
+                createPlayer("Player 2", ColorDisc.GREEN_DISC, args, 1, openingBook)};
 
         //define the win strategy of connect four
         IWinStrategy winStrategy = new ConnectWinStrategy(WIN_CONNECTION_COUNT);
@@ -33,6 +45,40 @@ public class ConnectFourGame {
         gameController.setWinStrategy(winStrategy);
 
         //start the game
-        gameController.start();
+        if(args.length > 2){
+            try (GameRecordWriter recordWriter = GameRecordWriter.append(new File(args[2]))) {
+                gameController.setRecordWriter(recordWriter);
+                gameController.start();
+            } catch (IOException e) {
+                System.out.println(String.format("Cannot record the game to [%s]: %s", args[2], e.getMessage()));
+            }
+        }else{
+            gameController.start();
+        }
+    }
+
+    private static GamePlayer createPlayer(String name, IDisc disc, String[] args, int index, OpeningBook openingBook){
+        if(args.length > index && COMPUTER_PLAYER.equalsIgnoreCase(args[index])){
+            return new GamePlayer(name, disc, new NegamaxMoveChooser(COMPUTER_SEARCH_DEPTH, openingBook));
+        }
+        return new GamePlayer(name, disc);
+    }
+
+    /**
+     * Map the opening book of the working directory, if there is one.
+     *
+     * @return the opening book, {@code null} if there is no book
+     */
+    private static OpeningBook loadOpeningBook(){
+        File file = new File(OpeningBookGenerator.DEFAULT_BOOK_FILE);
+        if(!file.isFile()){
+            return null;
+        }
+        try {
+            return OpeningBook.open(file);
+        } catch (IOException e) {
+            System.out.println(String.format("Cannot read the opening book [%s]: %s", file, e.getMessage()));
+            return null;
+        }
     }
 }
@@ -0,0 +1,100 @@
+package com.rickey.game.connectfour;
+
+import com.rickey.game.ai.MonteCarloMoveChooser;
+import com.rickey.game.ai.NegamaxMoveChooser;
+import com.rickey.game.ai.RandomMoveChooser;
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.controller.TournamentRunner;
+import com.rickey.game.datamodel.BitboardGridPanel;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.IDisc;
+import com.rickey.game.datamodel.IMoveChooser;
+import com.rickey.game.datamodel.LineTrackingGridPanel;
+import com.rickey.game.metrics.Metrics;
+import com.rickey.game.strategy.ConnectWinStrategy;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The class {@code ConnectFourTournament} lets two computer players play many
+ * ConnectFour games against each other without printing the games, and prints
+ * the results.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class ConnectFourTournament {
+    public static final String RANDOM_PLAYER = "random";
+    public static final String NEGAMAX_PLAYER = "negamax";
+    public static final String MCTS_PLAYER = "mcts";
+    //the playouts of a Monte Carlo player per move without a time limit
+    private static final long MCTS_PLAYOUTS = 20000;
+    //a panel which counts the discs of every line, so a game without any winnable line ends as a draw
+    public static final String TRACKING_PANEL = "tracking";
+    //every negamax player has its own transposition table
+    private static final long NEGAMAX_TABLE_MEGABYTES = 4;
+
+    /**
+     * Usage: ConnectFourTournament [games [player1 [player2 [falldown|bitboard|tracking [moveMillis]]]]], where
+     * a player is {@value #RANDOM_PLAYER}, {@value #NEGAMAX_PLAYER}[:depth] or {@value #MCTS_PLAYER}[:playouts], e.g.
+     * ConnectFourTournament 100 random negamax:6. With moveMillis, a negamax or mcts player searches
+     * until the time of the move is over, e.g. ConnectFourTournament 100 negamax:42 mcts falldown 50
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        String player1 = args.length > 1 ? args[1] : RANDOM_PLAYER;
+        String player2 = args.length > 2 ? args[2] : RANDOM_PLAYER;
+        String panelType = args.length > 3 ? args[3] : Perft.FALL_DOWN_PANEL;
+        long moveMillis = args.length > 4 ? Long.parseLong(args[4]) : 0;
+
+        Supplier<FallDownGridPanel<IDisc>> panelFactory;
+        if(Perft.BITBOARD_PANEL.equals(panelType)){
+            panelFactory = () -> new BitboardGridPanel<>(7, 6);
+        }else if(TRACKING_PANEL.equals(panelType)){
+            panelFactory = () -> new LineTrackingGridPanel<>(7, 6, ConnectFourGame.WIN_CONNECTION_COUNT);
+        }else{
+            panelFactory = () -> new FallDownGridPanel<>(7, 6);
+        }
+        TournamentRunner runner = new TournamentRunner(panelFactory, new ConnectWinStrategy(ConnectFourGame.WIN_CONNECTION_COUNT),
+                new String[]{"Player 1 (" + player1 + ")", "Player 2 (" + player2 + ")"},
+                new IDisc[]{ColorDisc.RED_DISC, ColorDisc.GREEN_DISC},
+                Arrays.asList(chooserFactory(player1), chooserFactory(player2)),
+                RANDOM_PLAYER.equals(player1) && RANDOM_PLAYER.equals(player2)
+                        ? Integer.MAX_VALUE : 2 * Runtime.getRuntime().availableProcessors());
+        runner.setMoveTimeLimit(moveMillis, TimeUnit.MILLISECONDS);
+
+        System.out.println(String.format("Playing %d games in %s", games,
+                TournamentRunner.isVirtualThreadAvailable() ? "virtual threads" : "a pool of platform threads"));
+        TournamentRunner.Standings standings = runner.run(games);
+        System.out.println(standings);
+        for(int moves = 0; moves <= standings.getMaxLength(); moves++){
+            if(standings.getGamesOfLength(moves) > 0){
+                System.out.println(String.format("%2d moves: %d games", moves, standings.getGamesOfLength(moves)));
+            }
+        }
+        if(Metrics.ENABLED){
+            Metrics.dumpText(System.out);
+        }
+    }
+
+    private static Supplier<IMoveChooser> chooserFactory(String player){
+        if(RANDOM_PLAYER.equals(player)){
+            return RandomMoveChooser::new;
+        }
+        if(player.startsWith(NEGAMAX_PLAYER)){
+            int depth = player.startsWith(NEGAMAX_PLAYER + ":")
+                    ? Integer.parseInt(player.substring(NEGAMAX_PLAYER.length() + 1)) : ConnectFourGame.COMPUTER_SEARCH_DEPTH;
+            return () -> new NegamaxMoveChooser(depth, null, NEGAMAX_TABLE_MEGABYTES);
+        }
+        if(player.startsWith(MCTS_PLAYER)){
+            long playouts = player.startsWith(MCTS_PLAYER + ":")
+                    ? Long.parseLong(player.substring(MCTS_PLAYER.length() + 1)) : MCTS_PLAYOUTS;
+            //the games run in parallel already, so every Monte Carlo player searches with one thread
+            return () -> new MonteCarloMoveChooser(playouts, 1);
+        }
+        throw new GameSystemException(String.format("Unknown player [%s]", player));
+    }
+}
@@ -0,0 +1,48 @@
+package com.rickey.game.connectfour;
+
+import com.rickey.game.ai.RandomMoveChooser;
+import com.rickey.game.controller.ConnectGameController;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.GamePlayer;
+import com.rickey.game.datamodel.PackedGridPanel;
+import com.rickey.game.strategy.ConnectWinStrategy;
+
+import java.util.Scanner;
+
+/**
+ * The class {@code MultiPlayerGame} is a connect game of up to eight players on a
+ * {@link PackedGridPanel}. The players drop their discs in turn, the first one who
+ * connects {@code winCount} discs wins.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class MultiPlayerGame {
+    /**
+     * Usage: MultiPlayerGame [players [width [height [winCount [computer]]]]], e.g. MultiPlayerGame 4 12 10 4 computer
+     *
+     * With "computer", every player after the first one drops its discs into random columns.
+     */
+    public static void main(String[] args){
+        int playerCount = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int width = args.length > 1 ? Integer.parseInt(args[1]) : 9;
+        int height = args.length > 2 ? Integer.parseInt(args[2]) : 7;
+        int winCount = args.length > 3 ? Integer.parseInt(args[3]) : ConnectFourGame.WIN_CONNECTION_COUNT;
+        boolean computers = args.length > 4 && ConnectFourGame.COMPUTER_PLAYER.equalsIgnoreCase(args[4]);
+        if(playerCount < 2 || playerCount > ColorDisc.PLAYER_DISC_COUNT){
+            System.out.println(String.format("A game has 2 to %d players.", ColorDisc.PLAYER_DISC_COUNT));
+            return;
+        }
+
+        GamePlayer[] players = new GamePlayer[playerCount];
+        for(int idx = 0; idx < playerCount; idx++){
+            String name = String.format("Player %d", idx + 1);
+            players[idx] = computers && idx > 0 ? new GamePlayer(name, ColorDisc.valueOf(idx), new RandomMoveChooser())
+                    : new GamePlayer(name, ColorDisc.valueOf(idx));
+        }
+        ConnectGameController gameController = new ConnectGameController(new PackedGridPanel<ColorDisc>(width, height), System.out,
+                players, new Scanner(System.in));
+        gameController.setWinStrategy(new ConnectWinStrategy(winCount));
+        gameController.start();
+    }
+}
@@ -0,0 +1,374 @@
+package com.rickey.game.connectfour;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.BitboardGridPanel;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.strategy.ConnectWinStrategy;
+import com.rickey.game.strategy.IWinStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The class {@code Perft} counts all the move sequences from a position up to a
+ * depth, with {@link FallDownGridPanel#put(int, com.rickey.game.datamodel.IDisc)}
+ * and {@link FallDownGridPanel#stepBack()}. A sequence stops when the win strategy
+ * finds a win or a draw.
+ *
+ * The counts of a depth are the same for every correct panel implementation, so
+ * perft checks a panel against another one, and measures how fast it moves.
+ *
+ * The tree is walked sequentially for the first {@value #DEFAULT_SPLIT_PLIES} plies,
+ * the subtrees below are walked in parallel, every one on its own panel.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class Perft {
+    public static final int DEFAULT_SPLIT_PLIES = 2;
+    public static final String FALL_DOWN_PANEL = "falldown";
+    public static final String BITBOARD_PANEL = "bitboard";
+
+    private static final ColorDisc[] DISCS = {ColorDisc.RED_DISC, ColorDisc.GREEN_DISC};
+    //the known counts of the empty 7 * 6 panel, the first win comes at ply 7
+    private static final long[] KNOWN_NODES = {1L, 7L, 49L, 343L, 2401L, 16807L, 117649L, 823536L, 5673234L};
+    private static final long[] KNOWN_WINS = {0L, 0L, 0L, 0L, 0L, 0L, 0L, 13032L, 44430L};
+    private static final int[] CHECKED_SPLIT_PLIES = {0, 1, 2, 3};
+
+    private final int width;
+    private final int height;
+    private final String panelType;
+    private final IWinStrategy winStrategy;
+    private final int splitPlies;
+
+    /**
+     * Constructs a perft for a {@code width * height} panel.
+     *
+     * @param panelType
+     *         {@value #FALL_DOWN_PANEL} or {@value #BITBOARD_PANEL}
+     * @param winCount
+     *         the number of connected discs to win
+     */
+    public Perft(int width, int height, String panelType, int winCount){
+        this(width, height, panelType, winCount, DEFAULT_SPLIT_PLIES);
+    }
+
+    /**
+     * @param splitPlies
+     *         the subtrees below this number of plies are walked in parallel
+     */
+    public Perft(int width, int height, String panelType, int winCount, int splitPlies){
+        if(!FALL_DOWN_PANEL.equals(panelType) && !BITBOARD_PANEL.equals(panelType)){
+            throw new GameSystemException(String.format("Unknown panel type [%s]", panelType));
+        }
+        this.width = width;
+        this.height = height;
+        this.panelType = panelType;
+        winStrategy = new ConnectWinStrategy(winCount);
+        this.splitPlies = splitPlies;
+    }
+
+    /**
+     * Count the move sequences from a position.
+     *
+     * @param moves
+     *         the position as the played columns, starting from 1, e.g. "4453"
+     * @param depth
+     *         the maximum number of plies
+     * @param pool
+     *         the threads to walk the subtrees
+     * @return the counts of every ply
+     * @throws GameUserException
+     *          if the moves are not valid
+     */
+    public Counts run(String moves, int depth, ForkJoinPool pool) throws GameUserException {
+        Walker root = new Walker(moves, depth);
+        if(root.isGameOver()){
+            return root.counts;
+        }
+        //walk the first plies here, and collect the positions to split
+        List<String> splits = new ArrayList<>();
+        root.collect(moves, 0, Math.min(splitPlies, depth), splits);
+        List<SubtreeTask> tasks = new ArrayList<>();
+        for(String split : splits){
+            tasks.add(new SubtreeTask(new Walker(split, depth), split.length() - moves.length()));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+        for(SubtreeTask task : tasks){
+            root.counts.add(task.walker.counts);
+        }
+        return root.counts;
+    }
+
+    private FallDownGridPanel<ColorDisc> createPanel(){
+        if(BITBOARD_PANEL.equals(panelType)){
+            return new BitboardGridPanel<>(width, height);
+        }
+        return new FallDownGridPanel<>(width, height);
+    }
+
+    /**
+     * The numbers of positions, wins and draws after every ply.
+     */
+    public static final class Counts {
+        private final long[] nodes;
+        private final long[] wins;
+        private final long[] draws;
+
+        private Counts(int depth){
+            nodes = new long[depth + 1];
+            wins = new long[depth + 1];
+            draws = new long[depth + 1];
+        }
+
+        private void add(Counts counts){
+            for(int ply = 0; ply < nodes.length; ply++){
+                nodes[ply] += counts.nodes[ply];
+                wins[ply] += counts.wins[ply];
+                draws[ply] += counts.draws[ply];
+            }
+        }
+
+        public int getDepth(){
+            return nodes.length - 1;
+        }
+
+        /**
+         * @return the number of move sequences of {@code ply} moves
+         */
+        public long getNodes(int ply){
+            return nodes[ply];
+        }
+
+        /**
+         * @return the number of move sequences of {@code ply} moves which end with a win
+         */
+        public long getWins(int ply){
+            return wins[ply];
+        }
+
+        /**
+         * @return the number of move sequences of {@code ply} moves which end with a draw
+         */
+        public long getDraws(int ply){
+            return draws[ply];
+        }
+
+        /**
+         * @return the number of positions visited at all plies
+         */
+        public long getTotalNodes(){
+            long total = 0;
+            for(long count : nodes){
+                total += count;
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Walks the tree on its own panel, so every walker can run in its own thread.
+     */
+    private final class Walker {
+        private final FallDownGridPanel<ColorDisc> panel;
+        private final int[] heights;
+        private final Counts counts;
+        private boolean gameOver;
+
+        private Walker(String moves, int depth) throws GameUserException {
+            panel = createPanel();
+            heights = new int[width];
+            counts = new Counts(depth);
+            for(int idx = 0; idx < moves.length(); idx++){
+                int x = moves.charAt(idx) - '1';
+                if(gameOver){
+                    throw new GameUserException(String.format("The game of [%s] is over before move %d.", moves, idx + 1));
+                }
+                panel.put(x + 1, DISCS[idx & 1]);
+                heights[x]++;
+                gameOver = isTerminal(x) != 0;
+            }
+        }
+
+        private boolean isGameOver(){
+            return gameOver;
+        }
+
+        /**
+         * Count the first plies, and collect the positions reached after {@code plies} moves.
+         */
+        private void collect(String moves, int ply, int plies, List<String> splits) throws GameUserException {
+            if(ply == plies){
+                splits.add(moves);
+                return;
+            }
+            for(int x = 0; x < width; x++){
+                if(heights[x] < height){
+                    if(play(x, ply + 1)){
+                        collect(moves + (char) ('1' + x), ply + 1, plies, splits);
+                    }
+                    undo(x);
+                }
+            }
+        }
+
+        /**
+         * Count the subtree below the current position.
+         *
+         * @param ply
+         *         the number of moves played since the root of the perft
+         */
+        private void walk(int ply) throws GameUserException {
+            if(ply == counts.getDepth()){
+                return;
+            }
+            for(int x = 0; x < width; x++){
+                if(heights[x] < height){
+                    if(play(x, ply + 1)){
+                        walk(ply + 1);
+                    }
+                    undo(x);
+                }
+            }
+        }
+
+        /**
+         * Put a disc and count the new position.
+         *
+         * @return {@code true} if the game goes on
+         */
+        private boolean play(int x, int ply) throws GameUserException {
+            //the colour follows the discs on the panel, a split walker starts below the perft root
+            panel.put(x + 1, DISCS[panel.getMoveCount() & 1]);
+            heights[x]++;
+            counts.nodes[ply]++;
+            switch (isTerminal(x)){
+                case 1:
+                    counts.wins[ply]++;
+                    return false;
+                case 2:
+                    counts.draws[ply]++;
+                    return false;
+                default:
+                    return true;
+            }
+        }
+
+        private void undo(int x) throws GameUserException {
+            panel.stepBack();
+            heights[x]--;
+        }
+
+        /**
+         * @return 1 for a win, 2 for a draw, 0 if the game goes on
+         */
+        private int isTerminal(int x){
+            if(winStrategy.isWin(panel, x, heights[x] - 1)){
+                return 1;
+            }
+            return winStrategy.isGameADraw(panel) ? 2 : 0;
+        }
+    }
+
+    private static final class SubtreeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Walker walker;
+        private final int ply;
+
+        private SubtreeTask(Walker walker, int ply){
+            this.walker = walker;
+            this.ply = ply;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                walker.walk(ply);
+            } catch (GameUserException e) {
+                throw new GameSystemException(String.format("Internal error: %s", e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Count the empty 7 * 6 panel on both panel types and with several split depths,
+     * and compare the counts with the known ones.
+     *
+     * @throws GameSystemException
+     *          if a count does not match
+     */
+    public static void check(ForkJoinPool pool) throws GameUserException {
+        int depth = KNOWN_NODES.length - 1;
+        for(String panelType : new String[]{FALL_DOWN_PANEL, BITBOARD_PANEL}){
+            for(int splitPlies : CHECKED_SPLIT_PLIES){
+                Perft perft = new Perft(7, 6, panelType, ConnectFourGame.WIN_CONNECTION_COUNT, splitPlies);
+                Counts counts = perft.run("", depth, pool);
+                for(int ply = 1; ply <= depth; ply++){
+                    if(counts.getNodes(ply) != KNOWN_NODES[ply] || counts.getWins(ply) != KNOWN_WINS[ply] || counts.getDraws(ply) != 0){
+                        throw new GameSystemException(String.format(
+                                "Internal error: perft on %s panel split at %d plies counts %d nodes, %d wins, %d draws at depth %d, expected %d nodes, %d wins",
+                                panelType, splitPlies, counts.getNodes(ply), counts.getWins(ply), counts.getDraws(ply), ply,
+                                KNOWN_NODES[ply], KNOWN_WINS[ply]));
+                    }
+                }
+                System.out.println(String.format("Perft on %s panel split at %d plies matches the known counts up to depth %d",
+                        panelType, splitPlies, depth));
+            }
+        }
+    }
+
+    /**
+     * Count the move sequences of a 7 * 6 position and print the counts of every ply,
+     * or check the counts of the empty panel with {@code check}.
+     *
+     * Usage: Perft [depth [moves [threads [falldown|bitboard]]]], e.g. Perft 8 44 4 bitboard
+     *        Perft check [threads]
+     */
+    public static void main(String[] args) throws GameUserException {
+        if(args.length > 0 && "check".equals(args[0])){
+            ForkJoinPool pool = new ForkJoinPool(args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors());
+            try {
+                check(pool);
+            } finally {
+                pool.shutdown();
+            }
+            return;
+        }
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+        String moves = args.length > 1 ? args[1] : "";
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        String panelType = args.length > 3 ? args[3] : FALL_DOWN_PANEL;
+
+        Perft perft = new Perft(7, 6, panelType, ConnectFourGame.WIN_CONNECTION_COUNT);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        long start = System.nanoTime();
+        Counts counts = perft.run(moves, depth, pool);
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+
+        System.out.println(String.format("Perft of [%s] on %s panel, %d threads", moves, panelType, threads));
+        long nodes = 0;
+        long wins = 0;
+        long draws = 0;
+        for(int ply = 1; ply <= counts.getDepth(); ply++){
+            nodes += counts.getNodes(ply);
+            wins += counts.getWins(ply);
+            draws += counts.getDraws(ply);
+            System.out.println(String.format("depth %2d: %15d nodes, %13d wins, %13d draws, total %15d nodes, %13d wins, %13d draws",
+                    ply, counts.getNodes(ply), counts.getWins(ply), counts.getDraws(ply), nodes, wins, draws));
+        }
+        System.out.println(String.format("%d nodes in %d ms (%d nodes/s)", nodes, elapsed / 1000000L,
+                elapsed == 0 ? 0 : nodes * 1000000000L / elapsed));
+    }
+}
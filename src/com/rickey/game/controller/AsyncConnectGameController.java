@@ -0,0 +1,173 @@
+package com.rickey.game.controller;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.GamePlayer;
+import com.rickey.game.datamodel.PlayerAction;
+
+import java.io.PrintStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * The class {@code AsyncConnectGameController} runs a game without a thread of its
+ * own. It asks the current player for an action, and goes on when the action
+ * arrives: it plays the action, passes the turn, prints the panel and checks for a
+ * winner or a draw, then asks the next player. So many games can share a small
+ * pool of threads, and a slow player holds no thread while the game waits for it.
+ *
+ * A player with an {@link com.rickey.game.datamodel.IAsyncMoveChooser}, e.g. a
+ * {@link LineInputChooser} or a remote client, sends its actions when they are
+ * ready. A computer player with a move chooser thinks on a thread of the pool. The
+ * rules are the same as in {@link ConnectGameController}: an invalid input is
+ * refused and the player is asked again, "u" takes back the latest move and the
+ * player who made it moves again, and "r" redoes it.
+ *
+ * The steps of a game run one after another, each on some thread of the pool, so
+ * the panel is only touched by one thread at a time.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class AsyncConnectGameController extends ConnectGameController {
+    private final Executor executor;
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private volatile CompletableFuture<PlayerAction> pendingAction;
+
+    /**
+     * @param executor
+     *         the threads which run the steps of the game and think for the computer players
+     */
+    public AsyncConnectGameController(FallDownGridPanel panel, PrintStream printStream, GamePlayer[] players, Executor executor){
+        super(panel, printStream, players, null);
+        this.executor = executor;
+        for(GamePlayer player : players){
+            if(player.getMoveChooser() == null && player.getAsyncMoveChooser() == null){
+                throw new GameSystemException(String.format("Internal error: %s has no chooser to send its actions.", player));
+            }
+        }
+    }
+
+    /**
+     * Start the game and return at once.
+     *
+     * @return the future which completes when the game is over or cancelled
+     */
+    public CompletableFuture<Void> play(){
+        executor.execute(() -> step(() -> {
+            if(displayPanelAndCheckWin()){
+                finished.complete(null);
+            }else{
+                requestAction();
+            }
+        }));
+        return finished;
+    }
+
+    /**
+     * Play the game and wait until it is over.
+     */
+    @Override
+    public void start(){
+        try {
+            play().join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Stop the game. The action which the game waits for is cancelled, so the game
+     * is over at once.
+     */
+    @Override
+    public void cancel(){
+        super.cancel();
+        CompletableFuture<PlayerAction> action = pendingAction;
+        if(action != null){
+            action.cancel(false);
+        }
+    }
+
+    private void requestAction(){
+        if(isCancelled()){
+            finished.complete(null);
+            return;
+        }
+        final GamePlayer player = getCurrentPlayer();
+        final long start;
+        CompletableFuture<PlayerAction> action;
+        if(player.getAsyncMoveChooser() != null){
+            start = INPUT_WAIT_PROBE.start();
+            action = player.getAsyncMoveChooser().chooseAction(gridPanel, player);
+        }else{
+            //the wait of a computer player is measured by chooseColumn
+            start = 0L;
+            action = CompletableFuture.supplyAsync(() -> PlayerAction.move(chooseColumn(player)), executor);
+        }
+        pendingAction = action;
+        //a cancel which came before the action was pending
+        if(isCancelled()){
+            action.cancel(false);
+        }
+        action.whenCompleteAsync((result, error) -> step(() -> {
+            if(player.getAsyncMoveChooser() != null){
+                INPUT_WAIT_PROBE.stop(start);
+            }
+            actionArrived(player, result, error);
+        }), executor);
+    }
+
+    private void actionArrived(GamePlayer player, PlayerAction action, Throwable error){
+        pendingAction = null;
+        if(isCancelled()){
+            finished.complete(null);
+            return;
+        }
+        if(error != null){
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if(!(cause instanceof GameUserException)){
+                finished.completeExceptionally(cause);
+                return;
+            }
+            out.println(String.format("%s, please select a valid column.", cause.getMessage()));
+            requestAction();
+            return;
+        }
+
+        if(player.getAsyncMoveChooser() == null){
+            playComputerMove(player, action.getColumn());
+        }else{
+            out.println(String.format("%s - choose column (1-%d): %s", player, gridPanel.getMaxX(), action));
+            try {
+                applyAction(player, action);
+            } catch (GameUserException e) {
+                out.println(String.format("%s, please select a valid column.", e.getMessage()));
+                requestAction();
+                return;
+            }
+        }
+        passTurn(!action.isUndo());
+        if(displayPanelAndCheckWin()){
+            finished.complete(null);
+        }else{
+            requestAction();
+        }
+    }
+
+    /**
+     * Run a step of the game, an error ends the game with the error.
+     */
+    private void step(Runnable step){
+        try {
+            step.run();
+        } catch (RuntimeException e) {
+            finished.completeExceptionally(e);
+        }
+    }
+}
@@ -2,9 +2,13 @@ package com.rickey.game.controller;
 
 import com.rickey.game.common.*;
 import com.rickey.game.datamodel.*;
+import com.rickey.game.journal.SessionJournal;
+import com.rickey.game.metrics.Counter;
+import com.rickey.game.metrics.Metrics;
 
 import java.io.PrintStream;
 import java.util.Scanner;
+import java.util.concurrent.CompletionException;
 
 /**
  * The class {@code ConnectGameController} is an implement of {@link GameController}.
@@ -16,6 +20,9 @@ import java.util.Scanner;
  * @since 1.0
  */
 public class ConnectGameController extends GameController{
+    private static final Counter UNDOS = Metrics.counter("controller.undos");
+    private static final Counter REDOS = Metrics.counter("controller.redos");
+
     private Scanner scanner;
 
     public ConnectGameController(FallDownGridPanel panel, GamePlayer[] players, Scanner scanner){
@@ -32,46 +39,124 @@ public class ConnectGameController extends GameController{
      * Execute a round of action for current player. Including ask player
      * for an input, and process the input.
      *
+     * The player can input "u" to undo the latest move, or "r" to redo the move
+     * which was undone. A player with an {@link IAsyncMoveChooser} is waited for.
+     *
      * @return if is undo, return false; return true otherwise
      */
     @Override
     protected boolean currentPlayerPerform() {
         //print something like: Player 1 [RED] - choose column (1-7): 6
-        int column = -1;
-        boolean undo = false;
         GamePlayer currentPlayer = getCurrentPlayer();
+        if(currentPlayer.getMoveChooser() != null){
+            return computerPlayerPerform(currentPlayer);
+        }
         while (true){
-            out.print(String.format("%s - choose column (1-%d): ", currentPlayer, gridPanel.getMaxX()));
-            undo = false;
-            String input = null;
-            try{
-                input = scanner.nextLine().trim().toLowerCase();
-                if("u".equals(input)){
-                    undo = true;
-                }else{
-                    column = Integer.parseInt(input);
+            PlayerAction action;
+            if(currentPlayer.getAsyncMoveChooser() != null){
+                action = waitForAction(currentPlayer);
+            }else{
+                out.print(String.format("%s - choose column (1-%d): ", currentPlayer, gridPanel.getMaxX()));
+                String input = null;
+                long start = INPUT_WAIT_PROBE.start();
+                try{
+                    input = scanner.nextLine();
+                    INPUT_WAIT_PROBE.stop(start);
+                    action = PlayerAction.parse(input);
+                }catch (GameUserException ex){
+                    out.println(String.format("%s, please select a valid column.", ex.getMessage()));
+                    continue;
+                }catch (Exception ex){
+                    out.println(String.format("Invalid column: [%s], please select a valid column.", input) );
+                    continue;
                 }
-            }catch (Exception ex){
-                out.println(String.format("Invalid column: [%s], please select a valid column.", input) );
+            }
+            if(action == null){
                 continue;
             }
 
             try {
-                if(undo){
-                    gridPanel.stepBack();
-                }
-                else{
-                    ((FallDownGridPanel)gridPanel).put(column, currentPlayer.getDisc());
-                }
+                applyAction(currentPlayer, action);
             } catch (GameUserException e) {
                 out.println(String.format("%s, please select a valid column.", e.getMessage()));
                 continue;
             }
-            break;
+            return !action.isUndo();
         }
-        if(undo){
-            return false;
+    }
+
+    /**
+     * Block until the chooser of the player sends its action.
+     *
+     * @return the action, {@code null} if the input was invalid
+     */
+    private PlayerAction waitForAction(GamePlayer currentPlayer){
+        long start = INPUT_WAIT_PROBE.start();
+        try {
+            PlayerAction action = currentPlayer.getAsyncMoveChooser().chooseAction(gridPanel, currentPlayer).join();
+            INPUT_WAIT_PROBE.stop(start);
+            out.println(String.format("%s - choose column (1-%d): %s", currentPlayer, gridPanel.getMaxX(), action));
+            return action;
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof GameUserException){
+                out.println(String.format("%s, please select a valid column.", e.getCause().getMessage()));
+                return null;
+            }
+            throw e;
         }
+    }
+
+    /**
+     * Play an action of a player on the panel: undo the latest move, redo the move
+     * which was undone, or drop a disc.
+     *
+     * @throws GameUserException
+     *          if the action cannot be played now
+     */
+    protected void applyAction(GamePlayer player, PlayerAction action) throws GameUserException {
+        if(action.isUndo()){
+            gridPanel.stepBack();
+            UNDOS.increment();
+            journalStep(SessionJournal.TYPE_UNDO, 0);
+        }else if(action.isRedo()){
+            gridPanel.stepForward();
+            REDOS.increment();
+            journalStep(SessionJournal.TYPE_REDO, 0);
+        }else{
+            ((FallDownGridPanel)gridPanel).put(action.getColumn(), player.getDisc());
+            journalStep(SessionJournal.TYPE_MOVE, action.getColumn());
+        }
+    }
+
+    /**
+     * Let the move chooser of the current player pick the column. A computer
+     * player never asks for an undo.
+     *
+     * @return always true
+     */
+    private boolean computerPlayerPerform(GamePlayer currentPlayer) {
+        int column = chooseColumn(currentPlayer);
+        playComputerMove(currentPlayer, column);
         return true;
     }
-}
\ No newline at end of file
+
+    /**
+     * Print and play the column chosen by a computer player. For a player which can
+     * be stopped at any time, how far it looked ahead and how long it took are
+     * printed too.
+     */
+    protected void playComputerMove(GamePlayer currentPlayer, int column){
+        if(currentPlayer.getMoveChooser() instanceof IAnytimeMoveChooser){
+            IAnytimeMoveChooser chooser = (IAnytimeMoveChooser) currentPlayer.getMoveChooser();
+            out.println(String.format("%s - choose column (1-%d): %d (depth %d in %d ms)", currentPlayer, gridPanel.getMaxX(),
+                    column, chooser.getLastDepth(), chooser.getLastElapsedNanos() / 1000000));
+        }else{
+            out.println(String.format("%s - choose column (1-%d): %d", currentPlayer, gridPanel.getMaxX(), column));
+        }
+        try {
+            applyAction(currentPlayer, PlayerAction.move(column));
+        } catch (GameUserException e) {
+            throw new GameSystemException(String.format("Internal error: computer player chose an invalid column [%d].", column));
+        }
+    }
+}
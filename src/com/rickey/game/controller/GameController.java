@@ -1,12 +1,26 @@
 package com.rickey.game.controller;
 
 import com.rickey.game.common.GameSystemException;
+import com.rickey.game.datamodel.FallDownGridPanel;
 import com.rickey.game.datamodel.GamePlayer;
 import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IAnytimeMoveChooser;
+import com.rickey.game.datamodel.IMoveChooser;
+import com.rickey.game.datamodel.IDisc;
 import com.rickey.game.datamodel.Step;
+import com.rickey.game.journal.JournalSession;
+import com.rickey.game.journal.SessionJournal;
+import com.rickey.game.metrics.Counter;
+import com.rickey.game.metrics.Metrics;
+import com.rickey.game.metrics.Probe;
+import com.rickey.game.record.GameRecord;
+import com.rickey.game.record.GameRecordWriter;
+import com.rickey.game.strategy.ConnectWinStrategy;
 import com.rickey.game.strategy.IWinStrategy;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The class {@code GameController} implements a logic for the process of the game.
@@ -16,17 +30,37 @@ import java.io.PrintStream;
  *
  * There is an index to record the current player.
  *
+ * The time of a computer player to choose its move can be limited, and a game can
+ * be cancelled from another thread, e.g. when its session ends.
+ *
+ * The moves can be written to a {@link SessionJournal}, so an unfinished game
+ * resumes where it stopped when the host is restarted. A cancelled game is not
+ * finished, it can be resumed too.
+ *
  * @author Rickey Shao
  * @since 1.0
  */
 public abstract class GameController {
+    private static final Probe TURN_PROBE = Metrics.probe("controller.turn");
+    private static final Counter FINISHED_GAMES = Metrics.counter("controller.finishedGames");
+    //the time until the current player has chosen an action
+    protected static final Probe INPUT_WAIT_PROBE = Metrics.probe("controller.inputWait");
+
     protected GridPanel gridPanel = null;
 
     //where there information is printed out
     protected PrintStream out = null;
     protected GamePlayer[] gamePlayers;
     protected IWinStrategy winStrategy;
+    //where the finished games are recorded, null for no record
+    protected GameRecordWriter recordWriter;
+    //where the moves are journaled, null for no journal
+    protected SessionJournal journal;
+    protected long sessionId;
     private int currentPlayerIndex = 0;
+    //the time for a computer player to choose a move, 0 for no limit
+    private long moveTimeNanos;
+    private volatile boolean cancelled;
 
     /**
      * Constructs a GameController instance which coordinate a grid panel and players
@@ -68,14 +102,134 @@ public abstract class GameController {
         winStrategy = strategy;
     }
 
+    /**
+     * Record every finished game of two players on a {@link FallDownGridPanel} with a
+     * {@link ConnectWinStrategy}.
+     *
+     * @param writer
+     *         the writer of the records, {@code null} for no record
+     */
+    public void setRecordWriter(GameRecordWriter writer){
+        recordWriter = writer;
+    }
+
+    /**
+     * Journal every move, undo and redo of a {@link FallDownGridPanel} game with a
+     * {@link ConnectWinStrategy}. If the journal holds an unfinished game of the
+     * session, the panel and the current player are restored from it, so the game
+     * resumes. Otherwise the session starts on the current panel, which must be empty.
+     *
+     * @param journal
+     *         the journal, {@code null} for no journal
+     * @param sessionId
+     *         the id of the session in the journal
+     */
+    public void setJournal(SessionJournal journal, long sessionId){
+        this.journal = journal;
+        this.sessionId = sessionId;
+        if(journal == null){
+            return;
+        }
+        if(!(gridPanel instanceof FallDownGridPanel) || !(winStrategy instanceof ConnectWinStrategy)){
+            throw new GameSystemException("Internal error: only a fall down game with a connect win strategy can be journaled.");
+        }
+        JournalSession session = journal.getSession(sessionId);
+        if(session != null){
+            IDisc[] discs = new IDisc[gamePlayers.length];
+            for(int idx = 0; idx < discs.length; idx++){
+                discs[idx] = gamePlayers[idx].getDisc();
+            }
+            session.restore((FallDownGridPanel<IDisc>) gridPanel, discs);
+            currentPlayerIndex = session.getMoveCount() % gamePlayers.length;
+        }else{
+            journal.await(journal.open(sessionId, gridPanel.getMaxX(), gridPanel.getMaxY(),
+                    ((ConnectWinStrategy) winStrategy).getWinCount()));
+        }
+    }
+
+    /**
+     * Write a move, undo or redo of the current player to the journal, and wait until
+     * it is on disk.
+     *
+     * @param type
+     *         one of the {@code SessionJournal.TYPE_MOVE}, {@code TYPE_UNDO} and {@code TYPE_REDO} constants
+     * @param column
+     *         the column of a move, starting from 1
+     */
+    protected void journalStep(int type, int column){
+        if(journal != null){
+            journal.await(journal.append(sessionId, type, column));
+        }
+    }
+
+    /**
+     * Limit the time of the computer players which implement {@link IAnytimeMoveChooser}
+     * to choose a move.
+     *
+     * @param time
+     *         the time for a move, 0 for no limit
+     * @param unit
+     *         the unit of the time
+     */
+    public void setMoveTimeLimit(long time, TimeUnit unit){
+        moveTimeNanos = unit.toNanos(time);
+    }
+
+    /**
+     * Stop the game after the current turn. The computer players which are thinking
+     * are cancelled, so they move at once. It can be called from any thread.
+     */
+    public void cancel(){
+        cancelled = true;
+        for(GamePlayer player : gamePlayers){
+            if(player.getMoveChooser() instanceof IAnytimeMoveChooser){
+                ((IAnytimeMoveChooser) player.getMoveChooser()).cancel();
+            }
+        }
+    }
+
+    public boolean isCancelled(){
+        return cancelled;
+    }
+
+    /**
+     * Let the move chooser of a computer player choose its column, before the deadline
+     * of the move time limit if there is one.
+     *
+     * @return the column, starting from 1
+     */
+    protected int chooseColumn(GamePlayer player){
+        IMoveChooser chooser = player.getMoveChooser();
+        long start = INPUT_WAIT_PROBE.start();
+        int column;
+        if(moveTimeNanos > 0 && chooser instanceof IAnytimeMoveChooser){
+            column = ((IAnytimeMoveChooser) chooser).chooseColumn(gridPanel, player, System.nanoTime() + moveTimeNanos);
+        }else{
+            column = chooser.chooseColumn(gridPanel, player);
+        }
+        INPUT_WAIT_PROBE.stop(start);
+        return column;
+    }
+
     private void doNextTurn() {
-        //Find the next player
-        if(currentPlayerPerform()){
+        long start = TURN_PROBE.start();
+        passTurn(currentPlayerPerform());
+        TURN_PROBE.stop(start);
+    }
+
+    /**
+     * Find the next player after an action of the current player.
+     *
+     * @param forward
+     *         {@code false} after an undo, the player who made the move which was
+     *         taken back moves again; {@code true} otherwise
+     */
+    protected void passTurn(boolean forward){
+        if(forward){
             currentPlayerIndex = (currentPlayerIndex + 1) % gamePlayers.length;
         }else{
             currentPlayerIndex = (currentPlayerIndex + gamePlayers.length - 1) % gamePlayers.length;
         }
-
     }
 
     protected abstract boolean currentPlayerPerform();
@@ -85,12 +239,17 @@ public abstract class GameController {
      *
      */
     public void start() {
-        while (!displayPanelAndCheckWin()){
+        while (!displayPanelAndCheckWin() && !cancelled){
             doNextTurn();
         }
     }
 
-    private boolean displayPanelAndCheckWin(){
+    /**
+     * Print the panel, then check for a winner and a draw.
+     *
+     * @return {@code true} if the game is over
+     */
+    protected boolean displayPanelAndCheckWin(){
         //print the grid panel state
         gridPanel.displayGridPanel(out);
         out.println();
@@ -104,14 +263,34 @@ public abstract class GameController {
 
         if(winStrategy.isWin(gridPanel, latestStep)){
             out.println(String.format("%s wins!", getLastPlayer()));
+            recordGame(GameRecord.RESULT_FIRST_PLAYER_WIN + (currentPlayerIndex + gamePlayers.length - 1) % gamePlayers.length);
             return true;
         }
 
         //then check whether is a draw
         if(winStrategy.isGameADraw(gridPanel)){
             out.println("It is draw game!");
+            recordGame(GameRecord.RESULT_DRAW);
             return true;
         }
         return false;
     }
+
+    private void recordGame(int result){
+        FINISHED_GAMES.increment();
+        if(journal != null){
+            journal.await(journal.finish(sessionId));
+        }
+        //a record knows the results of two players only
+        if(recordWriter == null || !(gridPanel instanceof FallDownGridPanel) || !(winStrategy instanceof ConnectWinStrategy)
+                || gamePlayers.length != 2){
+            return;
+        }
+        try {
+            recordWriter.write((FallDownGridPanel<?>) gridPanel, ((ConnectWinStrategy) winStrategy).getWinCount(), result);
+            recordWriter.flush();
+        } catch (IOException e) {
+            throw new GameSystemException(String.format("Internal error: the game cannot be recorded, %s", e.getMessage()));
+        }
+    }
 }
\ No newline at end of file
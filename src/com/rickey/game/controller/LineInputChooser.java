@@ -0,0 +1,68 @@
+package com.rickey.game.controller;
+
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.GamePlayer;
+import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IAsyncMoveChooser;
+import com.rickey.game.datamodel.PlayerAction;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The class {@code LineInputChooser} is a player who types its actions as lines, as
+ * on the console: a column, "u" to undo or "r" to redo. The lines are handed over
+ * by {@link #offer(String)} from any thread, e.g. the reader of a console or of a
+ * connection, and nobody blocks until the next line comes.
+ *
+ * A line which comes before the game asks for it is kept until then.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class LineInputChooser implements IAsyncMoveChooser {
+    //guarded by this
+    private final Queue<String> lines = new ArrayDeque<>();
+    private CompletableFuture<PlayerAction> pending;
+
+    @Override
+    public CompletableFuture<PlayerAction> chooseAction(GridPanel panel, GamePlayer player) {
+        CompletableFuture<PlayerAction> future = new CompletableFuture<>();
+        String line;
+        synchronized (this){
+            line = lines.poll();
+            if(line == null){
+                pending = future;
+                return future;
+            }
+        }
+        complete(future, line);
+        return future;
+    }
+
+    /**
+     * Hand over a line typed by the player.
+     */
+    public void offer(String line){
+        CompletableFuture<PlayerAction> future;
+        synchronized (this){
+            if(pending == null || pending.isDone()){
+                lines.add(line);
+                return;
+            }
+            future = pending;
+            pending = null;
+        }
+        //the game goes on in the callbacks of the future, so it is completed outside the lock
+        complete(future, line);
+    }
+
+    private static void complete(CompletableFuture<PlayerAction> future, String line){
+        try {
+            future.complete(PlayerAction.parse(line));
+        } catch (GameUserException e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.rickey.game.controller;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.GamePlayer;
+import com.rickey.game.datamodel.IAnytimeMoveChooser;
+import com.rickey.game.datamodel.IDisc;
+import com.rickey.game.datamodel.IMoveChooser;
+import com.rickey.game.strategy.IWinStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The class {@code TournamentRunner} plays many games between two computer players
+ * at the same time, without printing anything. Players take alternate turns and the
+ * winner or the draw is identified the same way as {@link GameController} does.
+ *
+ * Every game runs in its own thread. On a JVM with virtual threads, every game gets
+ * a virtual thread, otherwise the games share a pool of one thread per core. Every
+ * game has its own panel and its own move choosers, so the games share nothing but
+ * the win strategy and the counters of the {@link Standings}. The number of games
+ * played at the same time can be limited, e.g. for players which take much memory.
+ *
+ * The two players move first in turn, game by game.
+ *
+ * With a move time limit, the players which implement {@link IAnytimeMoveChooser}
+ * choose every move before its deadline, and the standings tell how deep they looked
+ * ahead and how long they took, so the strength can be weighed against the latency.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class TournamentRunner {
+    private final Supplier<FallDownGridPanel<IDisc>> panelFactory;
+    private final IWinStrategy winStrategy;
+    private final String[] names;
+    private final IDisc[] discs;
+    private final List<Supplier<IMoveChooser>> chooserFactories;
+    private final Semaphore gameSlots;
+    //the time for a move, 0 for no limit
+    private long moveTimeNanos;
+
+    /**
+     * Constructs a runner for two players.
+     *
+     * @param panelFactory
+     *         creates the empty panel of every game
+     * @param winStrategy
+     *         the win strategy, shared by all games
+     * @param names
+     *         the names of both players
+     * @param discs
+     *         the discs of both players
+     * @param chooserFactories
+     *         create the move chooser of every player for every game
+     * @param maxConcurrentGames
+     *         the maximum number of games played at the same time
+     */
+    public TournamentRunner(Supplier<FallDownGridPanel<IDisc>> panelFactory, IWinStrategy winStrategy,
+                            String[] names, IDisc[] discs, List<Supplier<IMoveChooser>> chooserFactories,
+                            int maxConcurrentGames){
+        if(names.length != 2 || discs.length != 2 || chooserFactories.size() != 2){
+            throw new GameSystemException("Internal error: a tournament is played by two players.");
+        }
+        this.panelFactory = panelFactory;
+        this.winStrategy = winStrategy;
+        this.names = names;
+        this.discs = discs;
+        this.chooserFactories = chooserFactories;
+        gameSlots = new Semaphore(maxConcurrentGames);
+    }
+
+    /**
+     * Limit the time of the players which implement {@link IAnytimeMoveChooser} to
+     * choose a move.
+     *
+     * @param time
+     *         the time for a move, 0 for no limit
+     * @param unit
+     *         the unit of the time
+     */
+    public void setMoveTimeLimit(long time, TimeUnit unit){
+        moveTimeNanos = unit.toNanos(time);
+    }
+
+    /**
+     * Play the games and wait until all of them are over.
+     *
+     * @param games
+     *         the number of games
+     * @return the results of the games
+     */
+    public Standings run(int games) throws InterruptedException {
+        Standings standings = new Standings(names, panelFactory.get());
+        ExecutorService executor = createExecutor();
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>(games);
+            for(int game = 0; game < games; game++){
+                final int firstPlayer = game % 2;
+                futures.add(executor.submit(() -> {
+                    gameSlots.acquireUninterruptibly();
+                    try {
+                        playGame(firstPlayer, standings);
+                    } finally {
+                        gameSlots.release();
+                    }
+                }));
+            }
+            for(Future<?> future : futures){
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new GameSystemException(String.format("Internal error: a game failed, %s", e.getCause()));
+        } finally {
+            executor.shutdownNow();
+        }
+        standings.elapsedNanos = System.nanoTime() - start;
+        return standings;
+    }
+
+    private void playGame(int firstPlayer, Standings standings){
+        FallDownGridPanel<IDisc> panel = panelFactory.get();
+        GamePlayer[] players = new GamePlayer[2];
+        for(int idx = 0; idx < 2; idx++){
+            players[idx] = new GamePlayer(names[idx], discs[idx], chooserFactories.get(idx).get());
+        }
+        int moves = 0;
+        for(int turn = firstPlayer; ; turn = 1 - turn){
+            GamePlayer player = players[turn];
+            int column = chooseColumn(panel, player, standings.thinking[turn]);
+            try {
+                panel.put(column, player.getDisc());
+            } catch (GameUserException e) {
+                throw new GameSystemException(String.format("Internal error: computer player chose an invalid column [%d].", column));
+            }
+            moves++;
+            //the disc of the move is on top of its column, no step is built
+            if(winStrategy.isWin(panel, column - 1, panel.getColumnHeight(column) - 1)){
+                standings.wins[turn].increment();
+                break;
+            }
+            if(winStrategy.isGameADraw(panel)){
+                standings.draws.increment();
+                break;
+            }
+        }
+        standings.lengths.incrementAndGet(moves);
+    }
+
+    private int chooseColumn(FallDownGridPanel<IDisc> panel, GamePlayer player, Thinking thinking){
+        if(moveTimeNanos > 0 && player.getMoveChooser() instanceof IAnytimeMoveChooser){
+            IAnytimeMoveChooser chooser = (IAnytimeMoveChooser) player.getMoveChooser();
+            long start = GameController.INPUT_WAIT_PROBE.start();
+            int column = chooser.chooseColumn(panel, player, System.nanoTime() + moveTimeNanos);
+            GameController.INPUT_WAIT_PROBE.stop(start);
+            thinking.record(chooser.getLastDepth(), chooser.getLastElapsedNanos());
+            return column;
+        }
+        return player.getMoveChooser().chooseColumn(panel, player);
+    }
+
+    /**
+     * Create an executor with one virtual thread per task if the JVM has virtual
+     * threads. The project is compiled for Java 8, so they are looked up by reflection.
+     */
+    private static ExecutorService createExecutor(){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * @return {@code true} if the games run in virtual threads
+     */
+    public static boolean isVirtualThreadAvailable(){
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The results of a tournament.
+     */
+    public static final class Standings {
+        private final String[] names;
+        private final LongAdder[] wins = {new LongAdder(), new LongAdder()};
+        private final LongAdder draws = new LongAdder();
+        //only the moves chosen with a time limit
+        private final Thinking[] thinking = {new Thinking(), new Thinking()};
+        //the number of games by the number of moves
+        private final AtomicLongArray lengths;
+        private long elapsedNanos;
+
+        private Standings(String[] names, FallDownGridPanel<IDisc> panel){
+            this.names = names;
+            lengths = new AtomicLongArray(panel.getMaxX() * panel.getMaxY() + 1);
+        }
+
+        public long getWins(int player){
+            return wins[player].sum();
+        }
+
+        public long getLosses(int player){
+            return wins[1 - player].sum();
+        }
+
+        public long getDraws(){
+            return draws.sum();
+        }
+
+        public long getGames(){
+            return wins[0].sum() + wins[1].sum() + draws.sum();
+        }
+
+        /**
+         * @return the number of games which lasted {@code moves} moves
+         */
+        public long getGamesOfLength(int moves){
+            return lengths.get(moves);
+        }
+
+        public int getMaxLength(){
+            return lengths.length() - 1;
+        }
+
+        /**
+         * @return the number of moves which {@code percent} percent of the games did not exceed
+         */
+        public int getLengthPercentile(double percent){
+            long rank = (long) Math.ceil(getGames() * percent / 100.0);
+            long count = 0;
+            for(int moves = 0; moves < lengths.length(); moves++){
+                count += lengths.get(moves);
+                if(count >= Math.max(rank, 1)){
+                    return moves;
+                }
+            }
+            return getMaxLength();
+        }
+
+        public double getAverageLength(){
+            long total = 0;
+            for(int moves = 0; moves < lengths.length(); moves++){
+                total += moves * lengths.get(moves);
+            }
+            return getGames() == 0 ? 0 : (double) total / getGames();
+        }
+
+        public long getElapsedNanos(){
+            return elapsedNanos;
+        }
+
+        /**
+         * @return the number of moves of a player which were chosen with a time limit
+         */
+        public long getTimedMoves(int player){
+            return thinking[player].moves.sum();
+        }
+
+        /**
+         * @return the average depth which a player looked ahead with a time limit
+         */
+        public double getAverageDepth(int player){
+            long moves = getTimedMoves(player);
+            return moves == 0 ? 0 : (double) thinking[player].depths.sum() / moves;
+        }
+
+        /**
+         * @return the average time of a player to choose a move with a time limit
+         */
+        public long getAverageThinkNanos(int player){
+            long moves = getTimedMoves(player);
+            return moves == 0 ? 0 : thinking[player].nanos.sum() / moves;
+        }
+
+        public long getMaxThinkNanos(int player){
+            return thinking[player].maxNanos.get();
+        }
+
+        public double getGamesPerSecond(){
+            return elapsedNanos == 0 ? 0 : getGames() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString(){
+            StringBuilder builder = new StringBuilder(String.format(
+                    "%d games: %s %d wins, %s %d wins, %d draws; length avg %.1f, median %d, p90 %d, max %d; %.0f games/s",
+                    getGames(), names[0], getWins(0), names[1], getWins(1), getDraws(), getAverageLength(),
+                    getLengthPercentile(50), getLengthPercentile(90), getLengthPercentile(100), getGamesPerSecond()));
+            for(int player = 0; player < 2; player++){
+                if(getTimedMoves(player) > 0){
+                    builder.append(String.format("%n%s: %d timed moves, depth avg %.1f, think avg %.1f ms, max %.1f ms",
+                            names[player], getTimedMoves(player), getAverageDepth(player),
+                            getAverageThinkNanos(player) / 1e6, getMaxThinkNanos(player) / 1e6));
+                }
+            }
+            return builder.toString();
+        }
+    }
+
+    /**
+     * How deep and how long a player thought about the moves chosen with a time limit.
+     */
+    private static final class Thinking {
+        private final LongAdder moves = new LongAdder();
+        private final LongAdder depths = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private void record(int depth, long elapsedNanos){
+            moves.increment();
+            depths.add(depth);
+            nanos.add(elapsedNanos);
+            long current = maxNanos.get();
+            while(elapsedNanos > current && !maxNanos.compareAndSet(current, elapsedNanos)){
+                current = maxNanos.get();
+            }
+        }
+    }
+}
@@ -0,0 +1,562 @@
+package com.rickey.game.datamodel;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.common.GameUserException;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The class {@code BitboardGridPanel} is a {@link FallDownGridPanel} which keeps the
+ * board as two 64-bit masks, one per player, plus the height of every column.
+ * Moves and undos only flip bits, so they do not allocate any object.
+ *
+ * Each column uses {@code maxY + 1} bits, the extra bit on top of the column is always
+ * empty and separates the columns, so the connections can be found with shift-and-mask
+ * operations. The bit of a cell is {@code x * (maxY + 1) + y}, a 7 * 6 panel looks like:
+ * 6  |6 |13|20|27|34|41|48|   (empty separator bits)
+ * 5  |5 |12|19|26|33|40|47|
+ * ...
+ * 0  |0 |7 |14|21|28|35|42|
+ *      0  1  2  3  4  5  6
+ *
+ * The panel supports two kinds of discs. The first disc put on the panel is player 0,
+ * the other one is player 1.
+ *
+ * The panel also keeps a Zobrist key of the position, which is updated with every
+ * move and undo. Positions reached by different move orders have the same key. The
+ * Zobrist key of the mirror image is kept the same way, so a table keyed by the
+ * smaller of both can share an entry between a position and its mirror image.
+ *
+ * For caches and tables which are stored, the panel keeps a compact position key
+ * too: the discs of player 0, plus the occupied cells, plus the bottom bit of every
+ * column. It is unique, and it is maintained together with the key of the mirror
+ * image of the panel. A position and its mirror image have the same canonical key,
+ * the smaller of both, so a table keyed by it needs about half the entries.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class BitboardGridPanel<T extends IDisc> extends FallDownGridPanel<T> {
+    public static final int PLAYER_COUNT = 2;
+
+    //one random key per player and bit, the seed is fixed so the keys are the same in every run
+    private static final long[][] ZOBRIST_KEYS = new long[PLAYER_COUNT][Long.SIZE];
+    static {
+        Random random = new Random(0x5EEDC0FFEEL);
+        for(int player = 0; player < PLAYER_COUNT; player++){
+            for(int bit = 0; bit < Long.SIZE; bit++){
+                ZOBRIST_KEYS[player][bit] = random.nextLong();
+            }
+        }
+    }
+
+    private final int columnBits;
+    private final long bottomMask;
+    private final long boardMask;
+    //shifts between neighbour cells: vertical, horizontal, diagonal and back diagonal
+    private final int[] directionShifts;
+    private final long[] playerMasks;
+    private final IDisc[] playerDiscs;
+    //every move is packed as (column << 1) | player
+    private final int[] moves;
+    private int moveCount;
+    //the moves from moveCount to redoLimit - 1 were taken back and can be redone
+    private int redoLimit;
+    private long zobristKey;
+    private long mirrorZobristKey;
+    //the compact keys of the position and its mirror image
+    private long positionKey;
+    private long mirrorKey;
+    //the shift of the mirror column of every column
+    private final int[] mirrorShifts;
+
+    /**
+     * Constructs an instance of BitboardGridPanel.
+     *
+     * @param mX
+     *         X dimension
+     * @param mY
+     *         Y dimension
+     */
+    public BitboardGridPanel(int mX, int mY){
+        super(mX, mY, false, false);
+        if(mX <= 0 || mY <= 0 || mX * (mY + 1) > Long.SIZE){
+            throw new GameSystemException(String.format("A %d * %d panel does not fit in a bitboard.", mX, mY));
+        }
+        columnBits = mY + 1;
+        long bottom = 0L;
+        for(int x = 0; x < mX; x++){
+            bottom |= 1L << (x * columnBits);
+        }
+        bottomMask = bottom;
+        boardMask = bottom * ((1L << mY) - 1);
+        directionShifts = new int[]{1, columnBits, columnBits + 1, columnBits - 1};
+        playerMasks = new long[PLAYER_COUNT];
+        playerDiscs = new IDisc[PLAYER_COUNT];
+        moves = new int[mX * mY];
+        mirrorShifts = new int[mX];
+        for(int x = 0; x < mX; x++){
+            mirrorShifts[x] = (mX - 1 - x) * columnBits;
+        }
+        positionKey = bottomMask;
+        mirrorKey = bottomMask;
+    }
+
+    /**
+     * Constructs a copy of another bitboard panel, including its move history.
+     *
+     * @param panel
+     *         the panel to copy
+     */
+    public BitboardGridPanel(BitboardGridPanel<T> panel){
+        this(panel.maxX, panel.maxY);
+        System.arraycopy(panel.columnStates, 0, columnStates, 0, columnStates.length);
+        System.arraycopy(panel.playerMasks, 0, playerMasks, 0, PLAYER_COUNT);
+        System.arraycopy(panel.playerDiscs, 0, playerDiscs, 0, PLAYER_COUNT);
+        System.arraycopy(panel.moves, 0, moves, 0, panel.redoLimit);
+        moveCount = panel.moveCount;
+        redoLimit = panel.redoLimit;
+        zobristKey = panel.zobristKey;
+        mirrorZobristKey = panel.mirrorZobristKey;
+        positionKey = panel.positionKey;
+        mirrorKey = panel.mirrorKey;
+    }
+
+    /**
+     * Introduce a disc to the column.
+     *
+     * @param column
+     *         the target column to drop the disc, starting from 1
+     * @param data
+     *         the data to fill in the target cell
+     * @throws GameUserException
+     *          if game player inputs an invalid column
+     */
+    @Override
+    public void put(int column, T data) throws GameUserException {
+        long start = PUT_PROBE.start();
+        column -= 1;
+        if(data == null) {
+            throw new GameSystemException("Putting a null data to grid column.");
+        }
+        if(column < 0 || column >= maxX){
+            throw new GameUserException(String.format("Column [%d] is out of scope.", column + 1));
+        }
+        if(!canPlay(column)){
+            throw new GameUserException(String.format("The column [%d] has been full.", column + 1));
+        }
+        play(column, registerDisc(data));
+        PUT_PROBE.stop(start);
+    }
+
+    /**
+     * Drop a disc of a player to a column without any validation.
+     *
+     * @param x
+     *         the target column, starting from 0
+     * @param player
+     *         the player index, 0 or 1
+     */
+    public void play(int x, int player){
+        int y = ++columnStates[x];
+        int bit = x * columnBits + y;
+        playerMasks[player] |= 1L << bit;
+        zobristKey ^= ZOBRIST_KEYS[player][bit];
+        mirrorZobristKey ^= ZOBRIST_KEYS[player][mirrorShifts[x] + y];
+        //a disc of player 0 is counted twice, once as its own and once as occupied
+        positionKey += (1L << bit) << (1 - player);
+        mirrorKey += (1L << (mirrorShifts[x] + y)) << (1 - player);
+        moves[moveCount++] = (x << 1) | player;
+        redoLimit = moveCount;
+    }
+
+    /**
+     * Take back the latest move without any validation.
+     */
+    public void undo(){
+        int move = moves[--moveCount];
+        int x = move >>> 1;
+        int y = columnStates[x]--;
+        int bit = x * columnBits + y;
+        playerMasks[move & 1] &= ~(1L << bit);
+        zobristKey ^= ZOBRIST_KEYS[move & 1][bit];
+        mirrorZobristKey ^= ZOBRIST_KEYS[move & 1][mirrorShifts[x] + y];
+        positionKey -= (1L << bit) << (1 - (move & 1));
+        mirrorKey -= (1L << (mirrorShifts[x] + y)) << (1 - (move & 1));
+    }
+
+    @Override
+    public void stepBack() throws GameUserException {
+        if(moveCount == 0){
+            throw new GameUserException("Cannot undo now");
+        }
+        long start = STEP_BACK_PROBE.start();
+        undo();
+        STEP_BACK_PROBE.stop(start);
+    }
+
+    @Override
+    public void stepForward() throws GameUserException {
+        if(moveCount == redoLimit){
+            throw new GameUserException("Cannot redo now");
+        }
+        int limit = redoLimit;
+        int move = moves[moveCount];
+        play(move >>> 1, move & 1);
+        redoLimit = limit;
+    }
+
+    /**
+     * A bitboard panel does not keep {@code Step} objects, the step is replayed
+     * on the panel instead.
+     *
+     * @param step
+     *         a step which has exactly one cell change
+     */
+    @Override
+    public void stepIn(Step<T> step) {
+        CellChange<T> cellChange = step.getCellChangeList().get(0);
+        int x = cellChange.getCell().getPositionX();
+        if(x < 0 || x >= maxX || !canPlay(x)){
+            throw new GameSystemException(String.format("Internal error: cannot step in column [%d]", x));
+        }
+        play(x, registerDisc(cellChange.getCurrentValue()));
+    }
+
+    /**
+     * Build the latest step from the move history. The step is created on demand,
+     * so this method should not be used on hot paths.
+     *
+     * @return The latest step, {@code null} if there is no move yet
+     */
+    @Override
+    public Step<T> getLatestStep(){
+        if(moveCount == 0){
+            return null;
+        }
+        int move = moves[moveCount - 1];
+        int x = move >>> 1;
+        T data = getPlayerDisc(move & 1);
+        List<CellChange<T>> cellChangeList = new ArrayList<>(1);
+        cellChangeList.add(new CellChange<T>(new Cell<T>(x, columnStates[x], data), null, data));
+        return new Step<>(cellChangeList);
+    }
+
+    @Override
+    public void cleanUpPanel(){
+        for(int x = 0; x < maxX; x++){
+            columnStates[x] = -1;
+        }
+        playerMasks[0] = 0L;
+        playerMasks[1] = 0L;
+        moveCount = 0;
+        redoLimit = 0;
+        zobristKey = 0L;
+        mirrorZobristKey = 0L;
+        positionKey = bottomMask;
+        mirrorKey = bottomMask;
+    }
+
+    @Override
+    public boolean isPanelFull(){
+        return getOccupiedMask() == boardMask;
+    }
+
+    @Override
+    public void displayGridPanel(PrintStream out){
+        StringBuilder stringBuilder = new StringBuilder(maxX * 2 + 1);
+        for(int y = maxY - 1; y >= 0; y--){
+            stringBuilder.setLength(0);
+            for(int x = 0; x < maxX; x++){
+                int player = getPlayerAt(x, y);
+                stringBuilder.append('|').append(player < 0 ? " " : getPlayerDisc(player).getShortDisplay());
+            }
+            stringBuilder.append('|');
+            out.println(stringBuilder);
+        }
+    }
+
+    @Override
+    public T getData(int x, int y){
+        int player = getPlayerAt(x, y);
+        return player < 0 ? null : getPlayerDisc(player);
+    }
+
+    @Override
+    public Cell<T> getSameCell(Cell<T> cell, int xDiff, int yDiff){
+        int x = cell.getPositionX() + xDiff;
+        int y = cell.getPositionY() + yDiff;
+        if(x >= maxX || x < 0 || y >= maxY || y < 0){
+            return null;
+        }
+        int player = getPlayerAt(x, y);
+        if(player >= 0 && getPlayerDisc(player).equals(cell.getData())){
+            return new Cell<T>(x, y, getPlayerDisc(player));
+        }
+        return null;
+    }
+
+    @Override
+    protected void afterStepBack(List<CellChange<T>> changeList){
+        //moves are taken back by undo(), there is no step list to process
+    }
+
+    public boolean canPlay(int x){
+        return columnStates[x] < maxY - 1;
+    }
+
+    @Override
+    public int getMoveCount(){
+        return moveCount;
+    }
+
+    @Override
+    public int getMoveColumn(int index){
+        return (moves[index] >>> 1) + 1;
+    }
+
+    /**
+     * @return the column of the latest move starting from 0, -1 if there is no move yet
+     */
+    public int getLatestColumn(){
+        return moveCount == 0 ? -1 : moves[moveCount - 1] >>> 1;
+    }
+
+    /**
+     * @return the player of the latest move, -1 if there is no move yet
+     */
+    public int getLatestPlayer(){
+        return moveCount == 0 ? -1 : moves[moveCount - 1] & 1;
+    }
+
+    /**
+     * @return the Zobrist key of the current position
+     */
+    public long getZobristKey(){
+        return zobristKey;
+    }
+
+    /**
+     * @return the Zobrist key of the mirror image of the position
+     */
+    public long getMirrorZobristKey(){
+        return mirrorZobristKey;
+    }
+
+    /**
+     * @return the compact key of the position, the discs of player 0 plus the occupied cells plus the bottom mask
+     */
+    public long getPositionKey(){
+        return positionKey;
+    }
+
+    /**
+     * @return the compact key of the mirror image of the position
+     */
+    public long getMirrorKey(){
+        return mirrorKey;
+    }
+
+    /**
+     * @return the smaller one of the position key and the mirror key, which is the same for a
+     * position and its mirror image
+     */
+    public long getCanonicalKey(){
+        return Math.min(positionKey, mirrorKey);
+    }
+
+    /**
+     * Find out whether the canonical key is the key of the mirror image. Then a column
+     * stored with the canonical key is mirrored by {@code maxX + 1 - column}.
+     *
+     * @return {@code true} if the canonical key is the mirror key
+     */
+    public boolean isCanonicalMirrored(){
+        return mirrorKey < positionKey;
+    }
+
+    /**
+     * Mirror a compact position key, the columns are reversed.
+     *
+     * @param key
+     *         a key of {@link #getPositionKey()}
+     * @param width
+     *         X dimension of the panel
+     * @param height
+     *         Y dimension of the panel
+     * @return the key of the mirror image
+     */
+    public static long mirrorKey(long key, int width, int height){
+        int bits = height + 1;
+        long columnCode = (1L << bits) - 1;
+        long mirror = 0L;
+        for(int x = 0; x < width; x++){
+            mirror |= ((key >>> x * bits) & columnCode) << (width - 1 - x) * bits;
+        }
+        return mirror;
+    }
+
+    public long getPlayerMask(int player){
+        return playerMasks[player];
+    }
+
+    public long getOccupiedMask(){
+        return playerMasks[0] | playerMasks[1];
+    }
+
+    public long getBottomMask(){
+        return bottomMask;
+    }
+
+    public long getBoardMask(){
+        return boardMask;
+    }
+
+    public int getColumnBits(){
+        return columnBits;
+    }
+
+    /**
+     * Find out which player has a disc on a cell.
+     *
+     * @return the player index, -1 if the cell is empty
+     */
+    public int getPlayerAt(int x, int y){
+        long bit = 1L << (x * columnBits + y);
+        if((playerMasks[0] & bit) != 0){
+            return 0;
+        }
+        return (playerMasks[1] & bit) != 0 ? 1 : -1;
+    }
+
+    public T getPlayerDisc(int player){
+        return (T) playerDiscs[player];
+    }
+
+    /**
+     * Find out the player index of a disc. The panel is not changed.
+     *
+     * @param data
+     *         the disc of a player
+     * @return the player index, 0 or 1, -1 if no disc like it was put on the panel
+     */
+    public int getPlayerIndex(T data){
+        for(int player = 0; player < PLAYER_COUNT; player++){
+            if(playerDiscs[player] == data){
+                return player;
+            }
+        }
+        for(int player = 0; player < PLAYER_COUNT; player++){
+            if(playerDiscs[player] != null && playerDiscs[player].equals(data)){
+                return player;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find out the player index of a disc which is put on the panel. A new disc is
+     * registered to the first free player slot. The discs are only stored by
+     * {@link #put(int, IDisc)} and {@link #stepIn(Step)}, so they are the only callers.
+     */
+    private int registerDisc(T data){
+        int player = getPlayerIndex(data);
+        if(player >= 0){
+            return player;
+        }
+        for(player = 0; player < PLAYER_COUNT; player++){
+            if(playerDiscs[player] == null){
+                playerDiscs[player] = data;
+                return player;
+            }
+        }
+        throw new GameSystemException(String.format("A bitboard panel only supports %d kinds of discs.", PLAYER_COUNT));
+    }
+
+    /**
+     * Check whether a player has {@code count} discs connected in any direction.
+     *
+     * @param player
+     *         the player index
+     * @param count
+     *         how many discs need to be connected
+     * @return {@code true} if the player has such a connection, {@code false} otherwise
+     */
+    public boolean isWin(int player, int count){
+        return hasConnection(playerMasks[player], count);
+    }
+
+    /**
+     * Check whether the disc on a cell is part of {@code count} connected discs. Only
+     * the four lines through the cell are read.
+     *
+     * @param x
+     *         column index
+     * @param y
+     *         row index
+     * @param count
+     *         how many discs need to be connected
+     * @return {@code true} if the owner of the cell has such a connection through it, {@code false} otherwise
+     */
+    public boolean isWinAt(int x, int y, int count){
+        int player = getPlayerAt(x, y);
+        if(player < 0){
+            return false;
+        }
+        long mask = playerMasks[player];
+        int bit = x * columnBits + y;
+        for(int shift : directionShifts){
+            int connected = 1 + countConnected(mask, bit, shift, count - 1) + countConnected(mask, bit, -shift, count - 1);
+            if(connected >= count){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Count the set bits next to a bit in one direction. The separator bits are empty,
+     * so a line stops at the edge of the panel.
+     */
+    private static int countConnected(long mask, int bit, int shift, int limit){
+        int count = 0;
+        for(int next = bit + shift; count < limit && next >= 0 && next < Long.SIZE && ((mask >>> next) & 1L) != 0; next += shift){
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Check whether dropping a disc of a player to a column makes a connection.
+     * The column must be playable.
+     */
+    public boolean isWinningMove(int x, int player, int count){
+        long bit = (getOccupiedMask() + (1L << (x * columnBits))) & columnMask(x);
+        return hasConnection(playerMasks[player] | bit, count);
+    }
+
+    public long columnMask(int x){
+        return ((1L << maxY) - 1) << (x * columnBits);
+    }
+
+    /**
+     * Check a connection with shift-and-mask. After {@code count - 1} rounds, a bit
+     * remains set only when it starts a line of {@code count} discs in the direction.
+     */
+    private boolean hasConnection(long mask, int count){
+        for(int shift : directionShifts){
+            long m = mask;
+            for(int n = 1; n < count && m != 0; n++){
+                int distance = shift * n;
+                m = distance < Long.SIZE ? m & (mask >>> distance) : 0L;
+            }
+            if(m != 0){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,36 +1,89 @@
 package com.rickey.game.datamodel;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An implement class of the interface {@link IDisc}. {@code ColorDisc}
- * cannot be instantiated out of the class. Currently, there is only two
- * kind of ColorDisc.
+ * cannot be instantiated out of the class. There are eight kinds of ColorDisc,
+ * one per player of a game with up to eight players, and the first letters of
+ * their colors are all different.
+ *
+ * Every color has an ordinal, starting from 0 in the order the colors are created,
+ * so two discs are compared by an int instead of a string.
  * @see #RED_DISC
  * @see #GREEN_DISC
+ * @see #valueOf(int)
  *
  * @author Rickey Shao
  * @since 1.0
  */
 public class ColorDisc implements IDisc {
+    //the colors in the order of their ordinals, created before any disc
+    private static final List<String> COLORS = new ArrayList<>();
+
     public static final ColorDisc RED_DISC = new ColorDisc("RED");
     public static final ColorDisc GREEN_DISC = new ColorDisc("GREEN");
+    public static final ColorDisc YELLOW_DISC = new ColorDisc("YELLOW");
+    public static final ColorDisc BLUE_DISC = new ColorDisc("BLUE");
+    public static final ColorDisc WHITE_DISC = new ColorDisc("WHITE");
+    public static final ColorDisc PURPLE_DISC = new ColorDisc("PURPLE");
+    public static final ColorDisc ORANGE_DISC = new ColorDisc("ORANGE");
+    public static final ColorDisc CYAN_DISC = new ColorDisc("CYAN");
+    private static final ColorDisc[] PLAYER_DISCS = {RED_DISC, GREEN_DISC, YELLOW_DISC, BLUE_DISC,
+            WHITE_DISC, PURPLE_DISC, ORANGE_DISC, CYAN_DISC};
+    public static final int PLAYER_DISC_COUNT = PLAYER_DISCS.length;
 
     protected String color = "";
+    protected int ordinal;
+
+    /**
+     * A color which was created before gets the same ordinal, a new color gets the next one.
+     */
     protected ColorDisc(String color){
         this.color = color;
+        synchronized(COLORS){
+            ordinal = COLORS.indexOf(color);
+            if(ordinal < 0){
+                ordinal = COLORS.size();
+                COLORS.add(color);
+            }
+        }
+    }
+
+    /**
+     * @param ordinal
+     *         the index of a player, starting from 0, less than {@link #PLAYER_DISC_COUNT}
+     * @return the disc of the player, {@link #RED_DISC} for the first player
+     */
+    public static ColorDisc valueOf(int ordinal){
+        return PLAYER_DISCS[ordinal];
     }
 
     public String getColor(){
         return color;
     }
 
+    public int getOrdinal(){
+        return ordinal;
+    }
+
     @Override
     public boolean equals(Object obj){
-        if(obj != null && obj instanceof ColorDisc && color != null){
-            return this.color.equals(((ColorDisc) obj).color);
+        if(this == obj){
+            return true;
+        }
+        if(obj instanceof ColorDisc){
+            return ordinal == ((ColorDisc) obj).ordinal;
         }
         return false;
     }
 
+    @Override
+    public int hashCode(){
+        return ordinal;
+    }
+
     @Override
     public String getShortDisplay() {
         return color.substring(0, 1);
@@ -51,4 +104,4 @@ public class ColorDisc implements IDisc {
         }
         return colorDisc;
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,11 @@
 package com.rickey.game.datamodel;
 
 import com.rickey.game.common.*;
+import com.rickey.game.metrics.Metrics;
+import com.rickey.game.metrics.Probe;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -15,7 +19,18 @@ import java.util.List;
 public class FallDownGridPanel<T extends IDisc> extends GridPanel<T> {
     public static final FallDownGridPanel SEVEN_SIX_FALLDOWN_GRID_PANEL = new FallDownGridPanel(7, 6);
 
-    private int[] columnStates;
+    //the move stack grows on demand, so a large panel does not reserve a slot for every cell
+    private static final int MOVE_STACK_CAPACITY = 1024;
+    static final Probe PUT_PROBE = Metrics.probe("panel.put");
+
+    protected int[] columnStates;
+    //the moves are logged as packed ints instead of Step objects
+    private final MoveStack moveStack;
+    //the discs of the moves, in the order they were first put
+    private T[] discs;
+    private int discCount;
+    //the step built by getLatestStep(), until the panel changes
+    private Step<T> latestStep;
 
     /**
      * Constructs an instance of FallDownGridPanel.
@@ -25,11 +40,34 @@ public class FallDownGridPanel<T extends IDisc> extends GridPanel<T> {
      * @param mY
      */
     public FallDownGridPanel(int mX, int mY){
-        super(mX, mY);
+        this(mX, mY, true);
+    }
+
+    protected FallDownGridPanel(int mX, int mY, boolean allocateGrid){
+        this(mX, mY, allocateGrid, true);
+    }
+
+    /**
+     * Constructs a fall down grid panel. Subclasses which log the moves in their own
+     * storage skip the move log, they override every method which reads it.
+     *
+     * @param mX
+     *         X dimension
+     * @param mY
+     *         Y dimension
+     * @param allocateGrid
+     *         {@code true} to allocate a {@code Cell} for every coordinate
+     * @param logMoves
+     *         {@code true} to allocate the move log
+     */
+    protected FallDownGridPanel(int mX, int mY, boolean allocateGrid, boolean logMoves){
+        super(mX, mY, allocateGrid);
         columnStates = new int[mX];
         for (int idx = 0; idx < columnStates.length; idx++){
             columnStates[idx] = -1;
         }
+        moveStack = logMoves ? new MoveStack(Math.min(mX * mY, MOVE_STACK_CAPACITY)) : null;
+        discs = (T[]) new IDisc[2];
     }
 
     /**
@@ -43,6 +81,7 @@ public class FallDownGridPanel<T extends IDisc> extends GridPanel<T> {
      *          if game player inputs an invalid column
      */
     public void put(int column, T data) throws GameUserException {
+        long start = PUT_PROBE.start();
         column -= 1;
         if(data == null) {
             throw new GameSystemException("Putting a null data to grid column.");
@@ -54,14 +93,238 @@ public class FallDownGridPanel<T extends IDisc> extends GridPanel<T> {
             throw  new GameUserException(String.format("The column [%d] has been full.", column + 1));
         }
 
-        columnStates[column]++;
-        T previousData = grid[column][columnStates[column]].getData();
-        Cell<T> cell = new Cell<T>(column, columnStates[column], data);
-        grid[column][columnStates[column]].setData(data);
-        ArrayList<CellChange<T>> cellChangeList = new ArrayList<>();
-        cellChangeList.add(new CellChange<T>(cell, previousData, data));
-        Step<T> step = new Step<>(cellChangeList);
-        stepIn(step);
+        drop(column, getDiscIndex(data));
+        PUT_PROBE.stop(start);
+    }
+
+    /**
+     * Drop a disc to a column and log the move.
+     *
+     * @param x
+     *         the target column, starting from 0
+     * @param disc
+     *         the index of the disc
+     */
+    private void drop(int x, int disc){
+        T data = discs[disc];
+        int y = ++columnStates[x];
+        setDisc(x, y, disc);
+        moveStack.push(MoveStack.pack(x, disc));
+        latestStep = null;
+        discPut(x, y, data);
+    }
+
+    /**
+     * Replay a step on the panel. A step of a fall down grid panel has exactly one
+     * cell change, the disc must fall to the changed cell.
+     *
+     * @param step
+     *         a step which has exactly one cell change
+     */
+    @Override
+    public void stepIn(Step<T> step){
+        CellChange<T> cellChange = step.getCellChangeList().get(0);
+        Cell<T> cell = cellChange.getCell();
+        int x = cell.getPositionX();
+        if(x < 0 || x >= maxX || columnStates[x] + 1 != cell.getPositionY() || cellChange.getCurrentValue() == null){
+            throw new GameSystemException(String.format("Internal error: cannot step in cell [%d, %d]", x, cell.getPositionY()));
+        }
+        drop(x, getDiscIndex(cellChange.getCurrentValue()));
+    }
+
+    /**
+     * Take back the latest move. The move can be put again by {@link #stepForward()}.
+     *
+     * @throws GameUserException
+     *          if there is no move
+     */
+    @Override
+    public void stepBack() throws GameUserException {
+        if(moveStack.isEmpty()){
+            throw new GameUserException("Cannot undo now");
+        }
+        long start = STEP_BACK_PROBE.start();
+        int move = moveStack.pop();
+        int x = MoveStack.getX(move);
+        int y = columnStates[x]--;
+        setData(x, y, null);
+        latestStep = null;
+        discRemoved(x, y, discs[MoveStack.getDisc(move)]);
+        STEP_BACK_PROBE.stop(start);
+    }
+
+    /**
+     * Put the latest move which was taken back by {@link #stepBack()} again.
+     *
+     * @throws GameUserException
+     *          if there is no move to redo
+     */
+    @Override
+    public void stepForward() throws GameUserException {
+        if(!moveStack.canRedo()){
+            throw new GameUserException("Cannot redo now");
+        }
+        int move = moveStack.redo();
+        int x = MoveStack.getX(move);
+        int y = ++columnStates[x];
+        T data = discs[MoveStack.getDisc(move)];
+        setDisc(x, y, MoveStack.getDisc(move));
+        latestStep = null;
+        discPut(x, y, data);
+    }
+
+    /**
+     * Build the latest step from the move log. The step is created on demand and
+     * kept until the next move, undo or redo.
+     *
+     * @return The latest step, {@code null} if there is no move yet
+     */
+    @Override
+    public Step<T> getLatestStep(){
+        if(moveStack.isEmpty()){
+            return null;
+        }
+        if(latestStep == null){
+            int move = moveStack.peek();
+            int x = MoveStack.getX(move);
+            T data = discs[MoveStack.getDisc(move)];
+            List<CellChange<T>> cellChangeList = new ArrayList<>(1);
+            cellChangeList.add(new CellChange<T>(new Cell<T>(x, columnStates[x], data), null, data));
+            latestStep = new Step<>(cellChangeList);
+        }
+        return latestStep;
+    }
+
+    /**
+     * Empty the panel and its move log.
+     */
+    @Override
+    public void cleanUpPanel(){
+        //only the cells under the top of the columns can have discs
+        for(int x = 0; x < maxX; x++){
+            for(int y = columnStates[x]; y >= 0; y--){
+                setData(x, y, null);
+            }
+        }
+        Arrays.fill(columnStates, -1);
+        moveStack.clear();
+        latestStep = null;
+    }
+
+    /**
+     * Store the data of a cell. Subclasses which keep the cells in their own
+     * storage override this method together with {@link #getData(int, int)}.
+     *
+     * @param x
+     *         column index
+     * @param y
+     *         row index
+     * @param data
+     *         the disc, {@code null} to empty the cell
+     */
+    protected void setData(int x, int y, T data){
+        grid[x][y].setData(data);
+    }
+
+    /**
+     * Store the disc of a move or a redo. Subclasses which keep the index of the disc
+     * instead of the disc override this method, so the disc is not looked up again.
+     *
+     * @param x
+     *         column index
+     * @param y
+     *         row index
+     * @param disc
+     *         the index of the disc
+     */
+    protected void setDisc(int x, int y, int disc){
+        setData(x, y, discs[disc]);
+    }
+
+    /**
+     * Called after a disc is put to a cell, by a move or a redo.
+     *
+     * @param x
+     *         column index
+     * @param y
+     *         row index
+     * @param data
+     *         the disc
+     */
+    protected void discPut(int x, int y, T data){
+    }
+
+    /**
+     * Called after a disc is taken away from a cell by an undo.
+     *
+     * @param x
+     *         column index
+     * @param y
+     *         row index
+     * @param data
+     *         the disc
+     */
+    protected void discRemoved(int x, int y, T data){
+    }
+
+    /**
+     * Find out the index of a disc in the move log. A new disc gets the next index.
+     */
+    protected int getDiscIndex(T data){
+        for(int idx = 0; idx < discCount; idx++){
+            if(discs[idx] == data){
+                return idx;
+            }
+        }
+        for(int idx = 0; idx < discCount; idx++){
+            if(discs[idx].equals(data)){
+                return idx;
+            }
+        }
+        if(discCount == MoveStack.MAX_DISCS){
+            throw new GameSystemException("Internal error: too many kinds of discs.");
+        }
+        if(discCount == discs.length){
+            discs = Arrays.copyOf(discs, discCount * 2);
+        }
+        discs[discCount] = data;
+        return discCount++;
+    }
+
+    /**
+     * @param index
+     *         the index of a disc, returned by {@link #getDiscIndex(IDisc)}
+     * @return the disc
+     */
+    protected T getDisc(int index){
+        return discs[index];
+    }
+
+    /**
+     * @return the number of discs dropped so far
+     */
+    public int getMoveCount(){
+        return moveStack.size();
+    }
+
+    /**
+     * Read the move history without creating any object.
+     *
+     * @param index
+     *         the index of the move, starting from 0 for the first move
+     * @return the column where the disc of the move was dropped, starting from 1
+     */
+    public int getMoveColumn(int index){
+        return MoveStack.getX(moveStack.get(index)) + 1;
+    }
+
+    /**
+     * @param column
+     *         the column, starting from 1
+     * @return the number of discs in the column
+     */
+    public int getColumnHeight(int column){
+        return columnStates[column - 1] + 1;
     }
 
     /**
@@ -79,11 +342,11 @@ public class FallDownGridPanel<T extends IDisc> extends GridPanel<T> {
         return true;
     }
 
+    /**
+     * The moves are taken back by {@link #stepBack()} of this class, which does not
+     * use the change list.
+     */
     @Override
     protected void afterStepBack(List<CellChange<T>> changeList){
-        //for fall down grid panel, there is only one CellChange in the change list
-        CellChange<T> cellChange = changeList.get(0);
-        int column = cellChange.getCell().getPositionX();
-        columnStates[column]--;
     }
 }
\ No newline at end of file
@@ -1,7 +1,9 @@
 package com.rickey.game.datamodel;
 
 /**
- * {@code GamePlayer} has its own name and disc.
+ * {@code GamePlayer} has its own name and disc. A player with a {@link IMoveChooser}
+ * is played by the computer. A player with a {@link IAsyncMoveChooser} sends its
+ * actions when they are ready, e.g. from a remote client.
  *
  * @author Rickey Shao
  * @since 1.0
@@ -9,10 +11,23 @@ package com.rickey.game.datamodel;
 public class GamePlayer {
     private String name;
     private IDisc disc;
+    private IMoveChooser moveChooser;
+    private IAsyncMoveChooser asyncMoveChooser;
 
     public GamePlayer(String name, IDisc disc){
+        this(name, disc, (IMoveChooser) null);
+    }
+
+    public GamePlayer(String name, IDisc disc, IMoveChooser moveChooser){
         this.name = name;
         this.disc = disc;
+        this.moveChooser = moveChooser;
+    }
+
+    public GamePlayer(String name, IDisc disc, IAsyncMoveChooser asyncMoveChooser){
+        this.name = name;
+        this.disc = disc;
+        this.asyncMoveChooser = asyncMoveChooser;
     }
 
     public String getName(){
@@ -23,6 +38,20 @@ public class GamePlayer {
         return disc;
     }
 
+    /**
+     * @return the chooser which plays for this player, {@code null} if the player inputs the columns
+     */
+    public IMoveChooser getMoveChooser(){
+        return moveChooser;
+    }
+
+    /**
+     * @return the chooser which sends the actions of this player, {@code null} if there is none
+     */
+    public IAsyncMoveChooser getAsyncMoveChooser(){
+        return asyncMoveChooser;
+    }
+
     /**
      * Return a description of a game player.
      *
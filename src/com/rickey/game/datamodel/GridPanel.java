@@ -2,6 +2,8 @@ package com.rickey.game.datamodel;
 
 import com.rickey.game.common.GameSystemException;
 import com.rickey.game.common.GameUserException;
+import com.rickey.game.metrics.Metrics;
+import com.rickey.game.metrics.Probe;
 
 import java.io.PrintStream;
 import java.util.List;
@@ -14,6 +16,7 @@ import java.util.Stack;
  * @since 1.0
  */
 public abstract class GridPanel<T extends IDisc> implements IUndoer<T> {
+    static final Probe STEP_BACK_PROBE = Metrics.probe("panel.stepBack");
 
     protected Cell<T>[][] grid;
     protected int maxX;
@@ -33,10 +36,28 @@ public abstract class GridPanel<T extends IDisc> implements IUndoer<T> {
      *         Y dimension
      */
     public GridPanel(int mX, int mY){
+        this(mX, mY, true);
+    }
+
+    /**
+     * Constructs a grid panel with dimension mX * mY. Subclasses which keep the
+     * state of the cells in their own storage can skip the allocation of the
+     * {@code Cell} grid and the step stack.
+     *
+     * @param mX
+     *         X dimension
+     * @param mY
+     *         Y dimension
+     * @param allocateGrid
+     *         {@code true} to allocate a {@code Cell} for every coordinate
+     */
+    protected GridPanel(int mX, int mY, boolean allocateGrid){
         maxX = mX;
         maxY = mY;
-        grid = new Cell[maxX][maxY];
-        initializePanel();
+        if(allocateGrid){
+            grid = new Cell[maxX][maxY];
+            initializePanel();
+        }
     }
 
     /**
@@ -71,7 +92,7 @@ public abstract class GridPanel<T extends IDisc> implements IUndoer<T> {
             StringBuilder stringBuilder = new StringBuilder();
             T data;
             for(int x = 0; x < maxX; x++){
-                data = grid[x][y].getData();
+                data = getData(x, y);
                 stringBuilder.append("|" + (null == data ? " " : data.getShortDisplay()));
             }
             stringBuilder.append("|");
@@ -86,7 +107,7 @@ public abstract class GridPanel<T extends IDisc> implements IUndoer<T> {
     public boolean isPanelFull(){
         for(int x = 0; x < maxX; x++){
             for(int y = 0; y < maxY; y++){
-                if(grid[x][y].getData() == null){
+                if(getData(x, y) == null){
                     return false;
                 }
             }
@@ -129,6 +150,20 @@ public abstract class GridPanel<T extends IDisc> implements IUndoer<T> {
         }
     }
 
+    /**
+     * Read the data of a cell by its coordinates, without creating any object.
+     * The coordinates are not validated, the caller must keep them in the panel.
+     *
+     * @param x
+     *         column index
+     * @param y
+     *         row index
+     * @return the data of the cell, {@code null} if the cell is empty
+     */
+    public T getData(int x, int y){
+        return grid[x][y].getData();
+    }
+
     public Cell<T> getSameCell(Cell<T> cell, int xDiff, int yDiff){
         checkCell(cell);
         int x = cell.getPositionX() + xDiff;
@@ -136,9 +171,9 @@ public abstract class GridPanel<T extends IDisc> implements IUndoer<T> {
         if(x >= maxX || x < 0 || y >= maxY || y < 0){
             return null;
         }
-        Cell targetCell = grid[x][y];
-        if(cell.getData().equals(targetCell.getData())){
-            return (Cell<T>)targetCell.clone();
+        T targetData = getData(x, y);
+        if(cell.getData().equals(targetData)){
+            return new Cell<>(x, y, targetData);
         }
         return null;
     }
@@ -153,12 +188,14 @@ public abstract class GridPanel<T extends IDisc> implements IUndoer<T> {
         if(stepStack.isEmpty()){
             throw new GameUserException("Cannot undo now");
         }
+        long start = STEP_BACK_PROBE.start();
         Step<T> step = stepStack.pop();
         List<CellChange<T>> changeList = step.getCellChangeList();
         for(CellChange<T> cellChange : changeList) {
             grid[cellChange.getCell().getPositionX()][cellChange.getCell().getPositionY()].setData(cellChange.getPreviousValue());
         }
         afterStepBack(changeList);
+        STEP_BACK_PROBE.stop(start);
     }
 
     protected abstract void afterStepBack(List<CellChange<T>> changeList);
@@ -0,0 +1,41 @@
+package com.rickey.game.datamodel;
+
+/**
+ * {@code IAnytimeMoveChooser} is an {@link IMoveChooser} which can be stopped at any
+ * time, e.g. a computer player which deepens its search until a deadline. It always
+ * has a move ready, the longer it thinks, the better the move.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public interface IAnytimeMoveChooser extends IMoveChooser {
+    /**
+     * Choose the column where the player drops the next disc before the deadline.
+     *
+     * @param panel
+     *         the current state of the game
+     * @param player
+     *         the player who is going to move
+     * @param deadline
+     *         the {@link System#nanoTime()} when the column has to be chosen
+     * @return the column to drop the disc, starting from 1
+     */
+    public int chooseColumn(GridPanel panel, GamePlayer player, long deadline);
+
+    /**
+     * Stop the current choice and every later one as soon as possible, e.g. when the
+     * game session ends. A stopped choice still returns a valid column. It can be
+     * called from any thread.
+     */
+    public void cancel();
+
+    /**
+     * @return how many plies the latest choice looked ahead
+     */
+    public int getLastDepth();
+
+    /**
+     * @return how long the latest choice took in nanoseconds
+     */
+    public long getLastElapsedNanos();
+}
@@ -0,0 +1,28 @@
+package com.rickey.game.datamodel;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@code IAsyncMoveChooser} decides the action of a game player without blocking
+ * the thread of the game, e.g. a player who types on a console, a remote client,
+ * or a computer player which thinks on another thread. The action arrives when its
+ * future completes, the game goes on then.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public interface IAsyncMoveChooser {
+    /**
+     * Ask for the next action of the player. The panel does not change until the
+     * future completes, and it must not be changed by the chooser.
+     *
+     * @param panel
+     *         the current state of the game
+     * @param player
+     *         the player who is going to act
+     * @return the action, the future may complete on any thread; it completes
+     *         exceptionally with a {@code GameUserException} for an invalid input,
+     *         then the player is asked again
+     */
+    public CompletableFuture<PlayerAction> chooseAction(GridPanel panel, GamePlayer player);
+}
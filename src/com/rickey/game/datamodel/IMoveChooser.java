@@ -0,0 +1,21 @@
+package com.rickey.game.datamodel;
+
+/**
+ * {@code IMoveChooser} decides the column for a game player without asking
+ * anyone for an input, e.g. a computer player.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public interface IMoveChooser {
+    /**
+     * Choose the column where the player drops the next disc.
+     *
+     * @param panel
+     *         the current state of the game
+     * @param player
+     *         the player who is going to move
+     * @return the column to drop the disc, starting from 1
+     */
+    public int chooseColumn(GridPanel panel, GamePlayer player);
+}
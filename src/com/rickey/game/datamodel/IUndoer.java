@@ -4,6 +4,8 @@ import com.rickey.game.common.GameUserException;
 
 /**
  * {@code IUndoer} is an interface which support undo in the game.
+ * A step which was taken back can be redone by {@code stepForward()},
+ * until a new step is taken.
  *
  * @author Rickey Shao
  * @since 1.1
@@ -11,4 +13,5 @@ import com.rickey.game.common.GameUserException;
 public interface IUndoer<T extends IDisc> {
     public void stepIn(Step<T> step);
     public void stepBack() throws GameUserException;
+    public void stepForward() throws GameUserException;
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+package com.rickey.game.datamodel;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The class {@code LineTrackingGridPanel} is a {@link FallDownGridPanel} which keeps
+ * a counter of discs per player for every segment of {@code winCount} cells in a
+ * line, i.e. for every place where a player can win. There are 69 segments on a
+ * 7 * 6 panel with win count 4.
+ *
+ * The counters are updated when a disc is put or redone, and reverted when it is taken back,
+ * so a win is found by looking at the counters of the segments through one cell.
+ * A segment which holds discs of two players cannot be completed any more. When no
+ * segment can be completed, nobody can win and the game is a draw, even if the
+ * panel is not full.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class LineTrackingGridPanel<T extends IDisc> extends FallDownGridPanel<T> {
+    //According to the game definition, there are four directions to win
+    private static final int[][] DIRECTIONS = new int[][]{{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+    private static final Map<List<Integer>, int[][]> LAYOUTS = new ConcurrentHashMap<>();
+
+    private final int winCount;
+    private final int segmentCount;
+    //the segments through cell (x, y) are cellSegments[cellOffsets[c]] to cellSegments[cellOffsets[c + 1] - 1], c = x * maxY + y
+    private final int[] cellOffsets;
+    private final int[] cellSegments;
+    //the discs of every player per segment
+    private int[][] counts = new int[0][];
+    //the number of players who have discs per segment
+    private final int[] owners;
+    //the number of complete segments per player
+    private int[] completed = new int[0];
+    private int deadSegments;
+    private IDisc[] playerDiscs = new IDisc[0];
+
+    /**
+     * Constructs a panel with dimension mX * mY which tracks the segments of
+     * {@code winCount} cells.
+     *
+     * @param mX
+     *         X dimension
+     * @param mY
+     *         Y dimension
+     * @param winCount
+     *         the number of connected discs to win
+     */
+    public LineTrackingGridPanel(int mX, int mY, int winCount){
+        super(mX, mY);
+        this.winCount = winCount;
+        //the segments only depend on the dimension, so panels of the same dimension share them
+        int[][] layout = LAYOUTS.computeIfAbsent(Arrays.asList(mX, mY, winCount), key -> createLayout(mX, mY, winCount));
+        cellOffsets = layout[0];
+        cellSegments = layout[1];
+        segmentCount = layout[2][0];
+        owners = new int[segmentCount];
+    }
+
+    /**
+     * Find all segments of {@code winCount} cells, and list the segments through every cell.
+     *
+     * @return the cell offsets, the cell segments and the number of segments
+     */
+    private static int[][] createLayout(int mX, int mY, int winCount){
+        int[] perCell = new int[mX * mY];
+        int segments = 0;
+        for(int[] direction : DIRECTIONS){
+            for(int x = 0; x < mX; x++){
+                for(int y = 0; y < mY; y++){
+                    if(fits(mX, mY, winCount, x, y, direction)){
+                        segments++;
+                        for(int idx = 0; idx < winCount; idx++){
+                            perCell[(x + idx * direction[0]) * mY + y + idx * direction[1]]++;
+                        }
+                    }
+                }
+            }
+        }
+        int[] offsets = new int[mX * mY + 1];
+        for(int cell = 0; cell < mX * mY; cell++){
+            offsets[cell + 1] = offsets[cell] + perCell[cell];
+        }
+        int[] cells = new int[offsets[mX * mY]];
+        int[] filled = Arrays.copyOf(offsets, mX * mY);
+        int segment = 0;
+        for(int[] direction : DIRECTIONS){
+            for(int x = 0; x < mX; x++){
+                for(int y = 0; y < mY; y++){
+                    if(fits(mX, mY, winCount, x, y, direction)){
+                        for(int idx = 0; idx < winCount; idx++){
+                            cells[filled[(x + idx * direction[0]) * mY + y + idx * direction[1]]++] = segment;
+                        }
+                        segment++;
+                    }
+                }
+            }
+        }
+        return new int[][]{offsets, cells, {segments}};
+    }
+
+    private static boolean fits(int mX, int mY, int winCount, int x, int y, int[] direction){
+        int endX = x + (winCount - 1) * direction[0];
+        int endY = y + (winCount - 1) * direction[1];
+        return endX >= 0 && endX < mX && endY >= 0 && endY < mY;
+    }
+
+    @Override
+    protected void discPut(int x, int y, T data){
+        update(x, y, getPlayerIndex(data), 1);
+    }
+
+    @Override
+    protected void discRemoved(int x, int y, T data){
+        update(x, y, getPlayerIndex(data), -1);
+    }
+
+    /**
+     * Empty the panel, and start the counters from the beginning.
+     */
+    @Override
+    public void cleanUpPanel(){
+        super.cleanUpPanel();
+        for(int[] playerCounts : counts){
+            Arrays.fill(playerCounts, 0);
+        }
+        Arrays.fill(owners, 0);
+        Arrays.fill(completed, 0);
+        deadSegments = 0;
+    }
+
+    /**
+     * Add or remove a disc of a player in all segments through a cell.
+     */
+    private void update(int x, int y, int player, int delta){
+        int[] playerCounts = counts[player];
+        int cell = x * maxY + y;
+        for(int idx = cellOffsets[cell]; idx < cellOffsets[cell + 1]; idx++){
+            int segment = cellSegments[idx];
+            int before = playerCounts[segment];
+            int after = before + delta;
+            playerCounts[segment] = after;
+            if(before == 0 || after == 0){
+                //the player enters or leaves the segment
+                int previousOwners = owners[segment];
+                owners[segment] += delta;
+                if(previousOwners == 1 && delta > 0){
+                    deadSegments++;
+                }else if(previousOwners == 2 && delta < 0){
+                    deadSegments--;
+                }
+            }
+            if(after == winCount){
+                completed[player]++;
+            }else if(before == winCount){
+                completed[player]--;
+            }
+        }
+    }
+
+    /**
+     * Check whether a player has {@code winCount} discs in a segment.
+     *
+     * @param data
+     *         the disc of the player
+     * @return {@code true} if the player has won
+     */
+    public boolean isWin(T data){
+        return completed[getPlayerIndex(data)] > 0;
+    }
+
+    /**
+     * Check whether the owner of a cell has {@code winCount} discs in a segment
+     * through the cell.
+     *
+     * @param x
+     *         column index
+     * @param y
+     *         row index
+     * @return {@code true} if the owner of the cell has won
+     */
+    public boolean isWinAt(int x, int y){
+        T data = getData(x, y);
+        if(data == null){
+            return false;
+        }
+        int[] playerCounts = counts[getPlayerIndex(data)];
+        int cell = x * maxY + y;
+        for(int idx = cellOffsets[cell]; idx < cellOffsets[cell + 1]; idx++){
+            if(playerCounts[cellSegments[idx]] == winCount){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if no segment can be completed by any player any more
+     */
+    public boolean isDrawn(){
+        return deadSegments == segmentCount;
+    }
+
+    public int getWinCount(){
+        return winCount;
+    }
+
+    /**
+     * @return the number of segments where a player can win, 69 on a 7 * 6 panel with win count 4
+     */
+    public int getSegmentCount(){
+        return segmentCount;
+    }
+
+    /**
+     * @return the number of segments which no player has any discs in, or only one player has
+     */
+    public int getLiveSegmentCount(){
+        return segmentCount - deadSegments;
+    }
+
+    /**
+     * Find out the player index of a disc. A new disc gets the next index.
+     */
+    private int getPlayerIndex(T data){
+        for(int player = 0; player < playerDiscs.length; player++){
+            if(playerDiscs[player] == data){
+                return player;
+            }
+        }
+        for(int player = 0; player < playerDiscs.length; player++){
+            if(playerDiscs[player].equals(data)){
+                return player;
+            }
+        }
+        int player = playerDiscs.length;
+        playerDiscs = Arrays.copyOf(playerDiscs, player + 1);
+        playerDiscs[player] = data;
+        counts = Arrays.copyOf(counts, player + 1);
+        counts[player] = new int[segmentCount];
+        completed = Arrays.copyOf(completed, player + 1);
+        return player;
+    }
+}
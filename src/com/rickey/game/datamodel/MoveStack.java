@@ -0,0 +1,146 @@
+package com.rickey.game.datamodel;
+
+import com.rickey.game.common.GameSystemException;
+
+import java.util.Arrays;
+
+/**
+ * The class {@code MoveStack} is an undo log which keeps the moves as packed ints
+ * in a growable array. A popped move stays in the array after the top, so it can
+ * be pushed again by {@link #redo()}, until a new move is pushed.
+ *
+ * Pushing, popping and redoing do not create any object, the array only grows
+ * when the log is longer than ever before.
+ *
+ * A move of a {@link FallDownGridPanel} is packed by {@link #pack(int, int)} as
+ * the column and the index of its disc.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class MoveStack {
+    //the disc index is stored in the low bits, the column in the others
+    private static final int DISC_BITS = 8;
+    public static final int MAX_DISCS = 1 << DISC_BITS;
+
+    private int[] moves;
+    private int size;
+    //the moves from size to redoLimit - 1 can be redone
+    private int redoLimit;
+
+    public MoveStack(){
+        this(64);
+    }
+
+    /**
+     * @param capacity
+     *         the number of moves to keep before the array grows
+     */
+    public MoveStack(int capacity){
+        moves = new int[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Pack a move.
+     *
+     * @param x
+     *         the column, starting from 0
+     * @param disc
+     *         the index of the disc, less than {@link #MAX_DISCS}
+     * @return the packed move
+     */
+    public static int pack(int x, int disc){
+        return x << DISC_BITS | disc;
+    }
+
+    /**
+     * @return the column of a packed move, starting from 0
+     */
+    public static int getX(int move){
+        return move >>> DISC_BITS;
+    }
+
+    /**
+     * @return the disc index of a packed move
+     */
+    public static int getDisc(int move){
+        return move & (MAX_DISCS - 1);
+    }
+
+    /**
+     * Add a move on the top, the moves which were popped before cannot be redone any more.
+     */
+    public void push(int move){
+        if(size == moves.length){
+            moves = Arrays.copyOf(moves, size * 2);
+        }
+        moves[size++] = move;
+        redoLimit = size;
+    }
+
+    /**
+     * Take the move on the top away, it can be redone later.
+     *
+     * @return the move on the top
+     */
+    public int pop(){
+        if(size == 0){
+            throw new GameSystemException("Internal error: no move to pop.");
+        }
+        return moves[--size];
+    }
+
+    /**
+     * @return {@code true} if there is a popped move to redo
+     */
+    public boolean canRedo(){
+        return size < redoLimit;
+    }
+
+    /**
+     * Put the latest popped move back on the top.
+     *
+     * @return the move which is on the top again
+     */
+    public int redo(){
+        if(size == redoLimit){
+            throw new GameSystemException("Internal error: no move to redo.");
+        }
+        return moves[size++];
+    }
+
+    /**
+     * @return the move on the top, the stack must not be empty
+     */
+    public int peek(){
+        return moves[size - 1];
+    }
+
+    /**
+     * @param index
+     *         the index of the move, starting from 0 for the first move
+     * @return the move
+     */
+    public int get(int index){
+        if(index < 0 || index >= size){
+            throw new GameSystemException(String.format("Internal error: invalid move index [%d]", index));
+        }
+        return moves[index];
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    /**
+     * Remove all moves, including the ones to redo.
+     */
+    public void clear(){
+        size = 0;
+        redoLimit = 0;
+    }
+}
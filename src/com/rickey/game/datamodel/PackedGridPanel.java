@@ -0,0 +1,94 @@
+package com.rickey.game.datamodel;
+
+import com.rickey.game.common.GameSystemException;
+
+import java.util.Arrays;
+
+/**
+ * The class {@code PackedGridPanel} is a {@link FallDownGridPanel} which keeps its
+ * cells in one byte array instead of a {@code Cell} per coordinate, column after
+ * column. It is meant for games of many players on larger panels, e.g. 6 players
+ * on 20 * 16: a panel takes one byte per cell, however many players there are.
+ *
+ * A byte is the index of the disc plus one, 0 for an empty cell, like a chunk of
+ * {@link SparseGridPanel}. Every player has a different disc, so the win check of
+ * {@code ConnectWinStrategy} compares the codes of {@link #getCode(int, int)} as
+ * ints and does not read any disc.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class PackedGridPanel<T extends IDisc> extends FallDownGridPanel<T> {
+    private static final int MAX_DISCS = 255;
+
+    private final byte[] cells;
+
+    /**
+     * Constructs an empty packed panel with dimension mX * mY.
+     *
+     * @param mX
+     *         X dimension
+     * @param mY
+     *         Y dimension
+     */
+    public PackedGridPanel(int mX, int mY){
+        super(mX, mY, false);
+        if(mX <= 0 || mY <= 0 || (long) mX * mY > Integer.MAX_VALUE){
+            throw new GameSystemException(String.format("Internal error: invalid panel dimension %d * %d", mX, mY));
+        }
+        cells = new byte[mX * mY];
+    }
+
+    @Override
+    public T getData(int x, int y){
+        int code = cells[x * maxY + y] & 0xff;
+        return code == 0 ? null : getDisc(code - 1);
+    }
+
+    /**
+     * Read a cell without looking up its disc. The coordinates are not validated.
+     *
+     * @param x
+     *         column index
+     * @param y
+     *         row index
+     * @return the index of the disc of the cell plus one, 0 if the cell is empty
+     */
+    public int getCode(int x, int y){
+        return cells[x * maxY + y] & 0xff;
+    }
+
+    @Override
+    protected void setData(int x, int y, T data){
+        int code = 0;
+        if(data != null){
+            code = getDiscIndex(data) + 1;
+            if(code > MAX_DISCS){
+                throw new GameSystemException("Internal error: too many kinds of discs for a packed panel.");
+            }
+        }
+        cells[x * maxY + y] = (byte) code;
+    }
+
+    @Override
+    protected void setDisc(int x, int y, int disc){
+        if(disc + 1 > MAX_DISCS){
+            throw new GameSystemException("Internal error: too many kinds of discs for a packed panel.");
+        }
+        cells[x * maxY + y] = (byte) (disc + 1);
+    }
+
+    /**
+     * The panel is full when every cell has a disc, no cell is read.
+     */
+    @Override
+    public boolean isPanelFull(){
+        return getMoveCount() == maxX * maxY;
+    }
+
+    @Override
+    public void cleanUpPanel(){
+        Arrays.fill(cells, (byte) 0);
+        super.cleanUpPanel();
+    }
+}
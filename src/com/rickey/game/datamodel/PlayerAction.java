@@ -0,0 +1,83 @@
+package com.rickey.game.datamodel;
+
+import com.rickey.game.common.GameUserException;
+
+/**
+ * The class {@code PlayerAction} is what a player does in a turn: drop a disc into
+ * a column, undo the latest move, or redo the move which was undone. A player types
+ * the column, "u" or "r".
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public final class PlayerAction {
+    private static final int TYPE_MOVE = 0;
+    private static final int TYPE_UNDO = 1;
+    private static final int TYPE_REDO = 2;
+
+    public static final PlayerAction UNDO = new PlayerAction(TYPE_UNDO, 0);
+    public static final PlayerAction REDO = new PlayerAction(TYPE_REDO, 0);
+
+    private final int type;
+    //the column of a move, starting from 1
+    private final int column;
+
+    private PlayerAction(int type, int column){
+        this.type = type;
+        this.column = column;
+    }
+
+    /**
+     * @param column
+     *         the column to drop the disc, starting from 1; a column out of the panel
+     *         is refused when the move is played
+     */
+    public static PlayerAction move(int column){
+        return new PlayerAction(TYPE_MOVE, column);
+    }
+
+    /**
+     * Read the input of a player: a column, "u" to undo or "r" to redo.
+     *
+     * @throws GameUserException
+     *          if the input is none of them
+     */
+    public static PlayerAction parse(String input) throws GameUserException {
+        String action = input == null ? null : input.trim().toLowerCase();
+        if("u".equals(action)){
+            return UNDO;
+        }
+        if("r".equals(action)){
+            return REDO;
+        }
+        try {
+            return move(Integer.parseInt(action));
+        } catch (NumberFormatException e) {
+            throw new GameUserException(String.format("Invalid column: [%s]", action));
+        }
+    }
+
+    public boolean isUndo(){
+        return type == TYPE_UNDO;
+    }
+
+    public boolean isRedo(){
+        return type == TYPE_REDO;
+    }
+
+    public boolean isMove(){
+        return type == TYPE_MOVE;
+    }
+
+    /**
+     * @return the column of a move, starting from 1
+     */
+    public int getColumn(){
+        return column;
+    }
+
+    @Override
+    public String toString(){
+        return isUndo() ? "u" : isRedo() ? "r" : String.valueOf(column);
+    }
+}
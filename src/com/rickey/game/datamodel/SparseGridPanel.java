@@ -0,0 +1,167 @@
+package com.rickey.game.datamodel;
+
+import com.rickey.game.common.GameSystemException;
+
+import java.util.Arrays;
+
+/**
+ * The class {@code SparseGridPanel} is a {@link FallDownGridPanel} for very large
+ * panels, e.g. 2000 * 2000 for Connect Six. It does not allocate a {@code Cell}
+ * for every coordinate. The panel is split into chunks of 8 * 8 cells, and a chunk
+ * is a byte array which is only allocated when the first disc is put in it, so the
+ * memory grows with the number of discs instead of the size of the panel.
+ *
+ * A byte of a chunk is the index of the disc plus one, 0 for an empty cell. The
+ * chunks are found by their coordinates in an open addressing hash table.
+ *
+ * The win check of {@code ConnectWinStrategy} reads the cells by
+ * {@link #getData(int, int)} and visits at most {@code winCount - 1} cells on each
+ * side of the new disc, so it touches no more than {@code 2 * winCount} cells per
+ * direction, whatever the size of the panel.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class SparseGridPanel<T extends IDisc> extends FallDownGridPanel<T> {
+    //a chunk has 2^CHUNK_BITS * 2^CHUNK_BITS cells
+    public static final int CHUNK_BITS = 3;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int MAX_DISCS = 255;
+
+    //the hash table of chunks, a slot is empty if its chunk is null
+    private long[] chunkKeys;
+    private byte[][] chunks;
+    private int chunkCount;
+    //the latest chunk found, most reads are near the latest move
+    private long lastKey = -1L;
+    private byte[] lastChunk;
+
+    /**
+     * Constructs an empty sparse panel with dimension mX * mY.
+     *
+     * @param mX
+     *         X dimension
+     * @param mY
+     *         Y dimension
+     */
+    public SparseGridPanel(int mX, int mY){
+        super(mX, mY, false);
+        if(mX <= 0 || mY <= 0 || (long) mX * mY > Integer.MAX_VALUE){
+            throw new GameSystemException(String.format("Internal error: invalid panel dimension %d * %d", mX, mY));
+        }
+        chunkKeys = new long[16];
+        chunks = new byte[16][];
+    }
+
+    @Override
+    public T getData(int x, int y){
+        byte[] chunk = findChunk(x, y);
+        if(chunk == null){
+            return null;
+        }
+        int value = chunk[(x & CHUNK_MASK) << CHUNK_BITS | (y & CHUNK_MASK)] & 0xff;
+        return value == 0 ? null : getDisc(value - 1);
+    }
+
+    @Override
+    protected void setData(int x, int y, T data){
+        byte[] chunk = findChunk(x, y);
+        if(chunk == null){
+            if(data == null){
+                return;
+            }
+            chunk = addChunk(x, y);
+        }
+        int value = 0;
+        if(data != null){
+            value = getDiscIndex(data) + 1;
+            if(value > MAX_DISCS){
+                throw new GameSystemException("Internal error: too many kinds of discs for a sparse panel.");
+            }
+        }
+        chunk[(x & CHUNK_MASK) << CHUNK_BITS | (y & CHUNK_MASK)] = (byte) value;
+    }
+
+    /**
+     * The panel is full when every cell has a disc, no cell is read.
+     */
+    @Override
+    public boolean isPanelFull(){
+        return getMoveCount() == maxX * maxY;
+    }
+
+    /**
+     * Empty the panel and release all chunks.
+     */
+    @Override
+    public void cleanUpPanel(){
+        Arrays.fill(chunkKeys, 0L);
+        Arrays.fill(chunks, null);
+        chunkCount = 0;
+        lastKey = -1L;
+        lastChunk = null;
+        super.cleanUpPanel();
+    }
+
+    /**
+     * @return the number of chunks allocated so far
+     */
+    public int getChunkCount(){
+        return chunkCount;
+    }
+
+    private static long chunkKey(int x, int y){
+        return (long) (x >>> CHUNK_BITS) << 32 | (y >>> CHUNK_BITS);
+    }
+
+    private int slot(long key){
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & (chunks.length - 1);
+    }
+
+    private byte[] findChunk(int x, int y){
+        long key = chunkKey(x, y);
+        if(key == lastKey){
+            return lastChunk;
+        }
+        for(int slot = slot(key); chunks[slot] != null; slot = (slot + 1) & (chunks.length - 1)){
+            if(chunkKeys[slot] == key){
+                lastKey = key;
+                lastChunk = chunks[slot];
+                return lastChunk;
+            }
+        }
+        return null;
+    }
+
+    private byte[] addChunk(int x, int y){
+        //keep the table at most half full
+        if(chunkCount * 2 >= chunks.length){
+            long[] oldKeys = chunkKeys;
+            byte[][] oldChunks = chunks;
+            chunkKeys = new long[oldChunks.length * 2];
+            chunks = new byte[oldChunks.length * 2][];
+            for(int idx = 0; idx < oldChunks.length; idx++){
+                if(oldChunks[idx] != null){
+                    insert(oldKeys[idx], oldChunks[idx]);
+                }
+            }
+        }
+        long key = chunkKey(x, y);
+        byte[] chunk = new byte[1 << (2 * CHUNK_BITS)];
+        insert(key, chunk);
+        chunkCount++;
+        lastKey = key;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    private void insert(long key, byte[] chunk){
+        int slot = slot(key);
+        while(chunks[slot] != null){
+            slot = (slot + 1) & (chunks.length - 1);
+        }
+        chunkKeys[slot] = key;
+        chunks[slot] = chunk;
+    }
+}
@@ -0,0 +1,185 @@
+package com.rickey.game.journal;
+
+import com.rickey.game.common.GameSystemException;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The class {@code JournalLoadGenerator} measures a {@link SessionJournal}. Many
+ * sessions play random moves and undos at the same time, every one waits until its
+ * record is on disk, as a game controller does. It reports the records written per
+ * second, how many records a force commits, and the latency of a commit.
+ *
+ * Then the journal is stopped as a crash after the last commit would stop it, and
+ * opened again. It reports how long the recovery took, and checks that every
+ * session was recovered with the same moves.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class JournalLoadGenerator {
+    private static final int WIDTH = 7;
+    private static final int HEIGHT = 6;
+
+    private final SessionJournal journal;
+    private final int moves;
+
+    private JournalLoadGenerator(SessionJournal journal, int moves){
+        this.journal = journal;
+        this.moves = moves;
+    }
+
+    /**
+     * Let a number of sessions play, one after another in rounds.
+     *
+     * @return the latencies of the commits in nanoseconds
+     */
+    private long[] play(long firstId, int sessionCount){
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[][] heights = new int[sessionCount][WIDTH];
+        int[] moveCounts = new int[sessionCount];
+        long[] latencies = new long[sessionCount * (moves + 1)];
+        int count = 0;
+        for(int idx = 0; idx < sessionCount; idx++){
+            long start = System.nanoTime();
+            journal.await(journal.open(firstId + idx, WIDTH, HEIGHT, 4));
+            latencies[count++] = System.nanoTime() - start;
+        }
+        for(int round = 0; round < moves; round++){
+            for(int idx = 0; idx < sessionCount; idx++){
+                long start = System.nanoTime();
+                if(moveCounts[idx] > 0 && random.nextInt(10) == 0){
+                    //the heights are rebuilt from the journal at the next move
+                    journal.await(journal.append(firstId + idx, SessionJournal.TYPE_UNDO, 0));
+                    moveCounts[idx]--;
+                    heights[idx] = null;
+                }else{
+                    int column = freeColumn(firstId + idx, heights, idx, random);
+                    if(column == 0){
+                        continue;
+                    }
+                    journal.await(journal.append(firstId + idx, SessionJournal.TYPE_MOVE, column));
+                    heights[idx][column - 1]++;
+                    moveCounts[idx]++;
+                }
+                latencies[count++] = System.nanoTime() - start;
+            }
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    /**
+     * @return a random column which is not full, 0 if the panel is full
+     */
+    private int freeColumn(long sessionId, int[][] heights, int idx, ThreadLocalRandom random){
+        if(heights[idx] == null){
+            //rebuilt after an undo
+            JournalSession session = journal.getSession(sessionId);
+            heights[idx] = new int[WIDTH];
+            for(int move = 0; move < session.getMoveCount(); move++){
+                heights[idx][session.getColumn(move) - 1]++;
+            }
+        }
+        int column = random.nextInt(WIDTH);
+        for(int tries = 0; tries < WIDTH; tries++){
+            if(heights[idx][column] < HEIGHT){
+                return column + 1;
+            }
+            column = (column + 1) % WIDTH;
+        }
+        return 0;
+    }
+
+    private static void printRecovery(SessionJournal journal){
+        System.out.println(String.format("Recovered %d sessions in %.1f ms, %d records replayed after the snapshot",
+                journal.getSessionCount(), journal.getRecoveryNanos() / 1e6, journal.getReplayedRecords()));
+    }
+
+    /**
+     * Run the sessions in threads, then stop the journal and recover it.
+     *
+     * Usage: JournalLoadGenerator [directory [sessions [threads [moves]]]], e.g. JournalLoadGenerator journal 2000 32 20
+     */
+    public static void main(String[] args) throws Exception {
+        File directory = new File(args.length > 0 ? args[0] : "journal");
+        int sessionCount = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int threadCount = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        int moves = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        SessionJournal journal = SessionJournal.open(directory);
+        printRecovery(journal);
+        long firstId = 0;
+        for(JournalSession session : journal.getSessions()){
+            firstId = Math.max(firstId, session.getId() + 1);
+        }
+
+        JournalLoadGenerator generator = new JournalLoadGenerator(journal, moves);
+        Thread[] threads = new Thread[threadCount];
+        long[][] latencies = new long[threadCount][];
+        long start = System.nanoTime();
+        for(int idx = 0; idx < threadCount; idx++){
+            final int thread = idx;
+            final long threadFirstId = firstId + (long) sessionCount * idx / threadCount;
+            final int threadSessions = (int) ((long) sessionCount * (idx + 1) / threadCount - (long) sessionCount * idx / threadCount);
+            threads[idx] = new Thread(() -> latencies[thread] = generator.play(threadFirstId, threadSessions));
+            threads[idx].start();
+        }
+        for(Thread thread : threads){
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        int total = 0;
+        for(long[] list : latencies){
+            total += list.length;
+        }
+        long[] all = new long[total];
+        int position = 0;
+        for(long[] list : latencies){
+            System.arraycopy(list, 0, all, position, list.length);
+            position += list.length;
+        }
+        Arrays.sort(all);
+        long records = journal.getRecordCount();
+        long batches = Math.max(1, journal.getBatchCount());
+        System.out.println(String.format("%d records of %d sessions in %d threads: %.0f records/s, %.1f records per force, %d KB written",
+                records, sessionCount, threadCount, records * 1e9 / elapsed, (double) records / batches, journal.getBytesWritten() / 1024));
+        if(total > 0){
+            System.out.println(String.format("Commit latency: p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                    all[total / 2] / 1e6, all[(int) (total * 0.99)] / 1e6, all[total - 1] / 1e6));
+        }
+
+        List<JournalSession> expected = journal.getSessions();
+        journal.halt();
+        journal = SessionJournal.open(directory);
+        printRecovery(journal);
+        Map<Long, JournalSession> recovered = new HashMap<>();
+        for(JournalSession session : journal.getSessions()){
+            recovered.put(session.getId(), session);
+        }
+        for(JournalSession session : expected){
+            if(!same(session, recovered.get(session.getId()))){
+                throw new GameSystemException(String.format("Internal error: session [%d] was not recovered.", session.getId()));
+            }
+        }
+        System.out.println(String.format("All %d sessions match", expected.size()));
+        journal.close();
+    }
+
+    private static boolean same(JournalSession session, JournalSession other){
+        if(other == null || session.getMoveCount() != other.getMoveCount() || session.getRedoCount() != other.getRedoCount()){
+            return false;
+        }
+        for(int idx = 0; idx < session.getMoveCount() + session.getRedoCount(); idx++){
+            if(session.getColumn(idx) != other.getColumn(idx)){
+                return false;
+            }
+        }
+        return true;
+    }
+}
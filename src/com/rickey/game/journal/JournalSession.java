@@ -0,0 +1,149 @@
+package com.rickey.game.journal;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.IDisc;
+
+import java.util.Arrays;
+
+/**
+ * The class {@code JournalSession} is the state of a game as the {@link SessionJournal}
+ * knows it: the dimension of the panel and the columns of the moves. The moves which
+ * were taken back are kept after the played ones until a new move, so they can be
+ * redone, like the move log of {@link FallDownGridPanel}.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public final class JournalSession {
+    private final long id;
+    private final int width;
+    private final int height;
+    private final int winCount;
+    private byte[] columns;
+    private int moveCount;
+    //the moves from moveCount to moveLimit - 1 can be redone
+    private int moveLimit;
+
+    JournalSession(long id, int width, int height, int winCount){
+        this.id = id;
+        this.width = width;
+        this.height = height;
+        this.winCount = winCount;
+        columns = new byte[Math.min(width * height, 64)];
+    }
+
+    JournalSession copy(){
+        JournalSession copy = new JournalSession(id, width, height, winCount);
+        copy.columns = Arrays.copyOf(columns, Math.max(moveLimit, 1));
+        copy.moveCount = moveCount;
+        copy.moveLimit = moveLimit;
+        return copy;
+    }
+
+    void move(int column){
+        if(column < 1 || column > width || moveCount == width * height){
+            throw new GameSystemException(String.format("Internal error: invalid move [%d] of session [%d].", column, id));
+        }
+        if(moveCount == columns.length){
+            columns = Arrays.copyOf(columns, Math.min(columns.length * 2, width * height));
+        }
+        columns[moveCount++] = (byte) column;
+        moveLimit = moveCount;
+    }
+
+    void undo(){
+        if(moveCount == 0){
+            throw new GameSystemException(String.format("Internal error: no move to undo in session [%d].", id));
+        }
+        moveCount--;
+    }
+
+    void redo(){
+        if(moveCount == moveLimit){
+            throw new GameSystemException(String.format("Internal error: no move to redo in session [%d].", id));
+        }
+        moveCount++;
+    }
+
+    /**
+     * Set the moves read from a snapshot.
+     */
+    void load(byte[] columns, int moveCount){
+        if(moveCount < 0 || moveCount > columns.length){
+            throw new GameSystemException(String.format("Internal error: invalid snapshot of session [%d].", id));
+        }
+        this.moveCount = moveCount;
+        moveLimit = columns.length;
+        this.columns = columns.length == 0 ? new byte[1] : columns;
+    }
+
+    public long getId(){
+        return id;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int getWinCount(){
+        return winCount;
+    }
+
+    /**
+     * @return the number of moves on the panel
+     */
+    public int getMoveCount(){
+        return moveCount;
+    }
+
+    /**
+     * @return the number of moves which were taken back and can be redone
+     */
+    public int getRedoCount(){
+        return moveLimit - moveCount;
+    }
+
+    /**
+     * @param index
+     *         the index of the move, starting from 0, the moves which can be redone follow the played ones
+     * @return the column of the move, starting from 1
+     */
+    public int getColumn(int index){
+        if(index < 0 || index >= moveLimit){
+            throw new GameSystemException(String.format("Internal error: no move [%d] in session [%d].", index, id));
+        }
+        return columns[index];
+    }
+
+    /**
+     * Rebuild the game on an empty panel. The players drop their discs in turn, and
+     * the moves which can be redone are put and taken back again.
+     *
+     * @param panel
+     *         a panel with the dimension of the session
+     * @param discs
+     *         the discs of the players, in the order of their turns
+     */
+    public <T extends IDisc> void restore(FallDownGridPanel<T> panel, T[] discs){
+        if(panel.getMaxX() != width || panel.getMaxY() != height){
+            throw new GameSystemException(String.format("Internal error: the panel does not match session [%d].", id));
+        }
+        panel.cleanUpPanel();
+        try {
+            for(int idx = 0; idx < moveLimit; idx++){
+                panel.put(columns[idx], discs[idx % discs.length]);
+            }
+            for(int idx = moveCount; idx < moveLimit; idx++){
+                panel.stepBack();
+            }
+        } catch (GameUserException e) {
+            throw new GameSystemException(String.format("Internal error: session [%d] cannot be restored, %s", id, e.getMessage()));
+        }
+    }
+}
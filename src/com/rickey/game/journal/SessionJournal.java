@@ -0,0 +1,641 @@
+package com.rickey.game.journal;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.metrics.Counter;
+import com.rickey.game.metrics.Metrics;
+import com.rickey.game.metrics.Probe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * The class {@code SessionJournal} keeps the games of many sessions on disk, so they
+ * can be resumed after the host is restarted or crashes. Every move, undo and redo
+ * is appended to a write-ahead log before the player is told about it.
+ *
+ * The records of all sessions go into one buffer, and one writer thread writes the
+ * buffer as a frame and forces it to disk, then wakes the sessions which wait for
+ * their records. While it forces a frame, the next records are collected, so one
+ * force commits the records of many sessions. When the buffer is full, the sessions
+ * wait for the writer, so the memory of the journal is bounded.
+ *
+ * After a number of records, the writer takes a snapshot of all unfinished sessions
+ * and starts a new log. On startup, {@link #open(File)} loads the newest snapshot and
+ * replays only the logs after it, so the time to recover is bounded by the snapshot
+ * interval and not by the age of the games. A frame which was not fully written
+ * before a crash is detected by its checksum and dropped.
+ *
+ * The files of a journal directory:
+ * <pre>
+ * journal-&lt;generation&gt;.log:  magic (int), version (int), frames
+ * frame:                      length (int), CRC-32 of the records (int), records
+ * record:                     session (long), type (byte), 3 argument bytes
+ * snapshot-&lt;generation&gt;.bin: magic (int), version (int), session count (int), sessions, CRC-32 (int)
+ * session:                    id (long), width, height, win count (bytes),
+ *                             move count, move limit (shorts), columns (bytes)
+ * </pre>
+ * The snapshot of a generation holds the sessions of all logs before it. It is
+ * written to a temporary file and renamed, so a snapshot is either complete or not
+ * there.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ * @see JournalSession
+ */
+public class SessionJournal implements Closeable {
+    public static final int MAGIC = 0x43344a4c;
+    public static final int VERSION = 1;
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1 << 16;
+    public static final int DEFAULT_BATCH_RECORDS = 4096;
+
+    public static final int TYPE_OPEN = 1;
+    public static final int TYPE_MOVE = 2;
+    public static final int TYPE_UNDO = 3;
+    public static final int TYPE_REDO = 4;
+    public static final int TYPE_FINISH = 5;
+
+    static final int RECORD_BYTES = 12;
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int FRAME_HEADER_BYTES = 8;
+    private static final Pattern FILE_NAME = Pattern.compile("(journal|snapshot)-([0-9a-f]{16})\\.(log|bin)");
+
+    private static final Probe SYNC_PROBE = Metrics.probe("journal.sync");
+    private static final Probe FORCE_PROBE = Metrics.probe("journal.force");
+    private static final Counter RECORDS = Metrics.counter("journal.records");
+
+    private final File directory;
+    private final int snapshotInterval;
+    private final Map<Long, JournalSession> sessions = new HashMap<>();
+    private final Thread writer;
+    private final CRC32 crc = new CRC32();
+
+    //guarded by this
+    private ByteBuffer pending;
+    private ByteBuffer spare;
+    private long appended;
+    private long durable;
+    private int sinceSnapshot;
+    private boolean snapshotDue;
+    private boolean closing;
+    private boolean finalSnapshot;
+    private IOException failure;
+
+    //only touched by the writer thread after the journal is opened
+    private long generation;
+    private FileChannel log;
+
+    private long batchCount;
+    private long bytesWritten;
+    private long snapshotCount;
+    private long recoveryNanos;
+    private long replayedRecords;
+
+    private SessionJournal(File directory, int snapshotInterval, int batchRecords){
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        pending = ByteBuffer.allocate(FRAME_HEADER_BYTES + batchRecords * RECORD_BYTES);
+        spare = ByteBuffer.allocate(pending.capacity());
+        pending.position(FRAME_HEADER_BYTES);
+        writer = new Thread(this::writeLoop, "session-journal-writer");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Open the journal of a directory with the default snapshot interval and batch size.
+     *
+     * @see #open(File, int, int)
+     */
+    public static SessionJournal open(File directory) throws IOException {
+        return open(directory, DEFAULT_SNAPSHOT_INTERVAL, DEFAULT_BATCH_RECORDS);
+    }
+
+    /**
+     * Open the journal of a directory, and recover the unfinished sessions from the
+     * newest snapshot and the logs after it. The recovered state is written as a new
+     * snapshot at once, so the next recovery does not replay the same logs again.
+     *
+     * @param directory
+     *         the directory of the journal, it is created if it does not exist
+     * @param snapshotInterval
+     *         the number of records after which a snapshot is taken
+     * @param batchRecords
+     *         the number of records which can wait for the writer
+     * @return the journal
+     * @throws IOException
+     *          if the journal cannot be read or written
+     */
+    public static SessionJournal open(File directory, int snapshotInterval, int batchRecords) throws IOException {
+        if(snapshotInterval < 1 || batchRecords < 1){
+            throw new GameSystemException("Internal error: the snapshot interval and the batch size must be positive.");
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException(String.format("Cannot create the journal directory [%s]", directory));
+        }
+        long start = System.nanoTime();
+        SessionJournal journal = new SessionJournal(directory, snapshotInterval, batchRecords);
+        journal.recover();
+        journal.recoveryNanos = System.nanoTime() - start;
+        journal.writer.start();
+        return journal;
+    }
+
+    /**
+     * Start a new session, or start a session again from an empty panel.
+     *
+     * @return the sequence of the record, to pass to {@link #await(long)}
+     */
+    public long open(long sessionId, int width, int height, int winCount){
+        if(width < 1 || width > 0xFF || height < 1 || height > 0xFF || width * height > Short.MAX_VALUE || winCount < 1 || winCount > 0xFF){
+            throw new GameSystemException(String.format("Internal error: the panel %d * %d cannot be journaled.", width, height));
+        }
+        return append(sessionId, TYPE_OPEN, width, height, winCount);
+    }
+
+    /**
+     * Append a move, undo or redo of a session.
+     *
+     * @param type
+     *         {@link #TYPE_MOVE}, {@link #TYPE_UNDO} or {@link #TYPE_REDO}
+     * @param column
+     *         the column of a move, starting from 1
+     * @return the sequence of the record, to pass to {@link #await(long)}
+     */
+    public long append(long sessionId, int type, int column){
+        if(type != TYPE_MOVE && type != TYPE_UNDO && type != TYPE_REDO){
+            throw new GameSystemException(String.format("Internal error: invalid journal record type [%d].", type));
+        }
+        return append(sessionId, type, type == TYPE_MOVE ? column : 0, 0, 0);
+    }
+
+    /**
+     * The game of a session is over, it is not recovered any more.
+     *
+     * @return the sequence of the record, to pass to {@link #await(long)}
+     */
+    public long finish(long sessionId){
+        return append(sessionId, TYPE_FINISH, 0, 0, 0);
+    }
+
+    private synchronized long append(long sessionId, int type, int a, int b, int c){
+        while(pending.remaining() < RECORD_BYTES && !closing && failure == null){
+            waitForWriter();
+        }
+        checkOpen();
+        //the record is checked against the state first, so an invalid one is never written
+        apply(sessionId, type, a, b, c);
+        pending.putLong(sessionId).put((byte) type).put((byte) a).put((byte) b).put((byte) c);
+        RECORDS.increment();
+        if(++sinceSnapshot >= snapshotInterval){
+            snapshotDue = true;
+        }
+        //the writer only waits when there was nothing to write
+        if(pending.position() == FRAME_HEADER_BYTES + RECORD_BYTES || snapshotDue){
+            notifyAll();
+        }
+        return ++appended;
+    }
+
+    /**
+     * Wait until a record and all records before it are on disk.
+     *
+     * @param sequence
+     *         the sequence returned when the record was appended
+     */
+    public void await(long sequence){
+        long start = SYNC_PROBE.start();
+        synchronized (this){
+            while(durable < sequence){
+                if(failure != null || (closing && !writer.isAlive())){
+                    checkOpen();
+                }
+                waitForWriter();
+            }
+        }
+        SYNC_PROBE.stop(start);
+    }
+
+    private void waitForWriter(){
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GameSystemException("Internal error: interrupted while waiting for the journal.");
+        }
+    }
+
+    private void checkOpen(){
+        if(failure != null){
+            throw new GameSystemException(String.format("Internal error: the journal cannot be written, %s", failure.getMessage()));
+        }
+        if(closing){
+            throw new GameSystemException("Internal error: the journal is closed.");
+        }
+    }
+
+    private void apply(long sessionId, int type, int a, int b, int c){
+        if(type == TYPE_OPEN){
+            sessions.put(sessionId, new JournalSession(sessionId, a, b, c));
+            return;
+        }
+        JournalSession session = sessions.get(sessionId);
+        if(session == null){
+            throw new GameSystemException(String.format("Internal error: unknown session [%d].", sessionId));
+        }
+        switch (type){
+            case TYPE_MOVE:
+                session.move(a);
+                break;
+            case TYPE_UNDO:
+                session.undo();
+                break;
+            case TYPE_REDO:
+                session.redo();
+                break;
+            case TYPE_FINISH:
+                sessions.remove(sessionId);
+                break;
+            default:
+                throw new GameSystemException(String.format("Internal error: invalid journal record type [%d].", type));
+        }
+    }
+
+    /**
+     * @return a copy of the state of a session, {@code null} if the session is unknown or finished
+     */
+    public synchronized JournalSession getSession(long sessionId){
+        JournalSession session = sessions.get(sessionId);
+        return session == null ? null : session.copy();
+    }
+
+    /**
+     * @return copies of the states of all unfinished sessions
+     */
+    public synchronized List<JournalSession> getSessions(){
+        List<JournalSession> list = new ArrayList<>(sessions.size());
+        for(JournalSession session : sessions.values()){
+            list.add(session.copy());
+        }
+        return list;
+    }
+
+    public synchronized int getSessionCount(){
+        return sessions.size();
+    }
+
+    /**
+     * @return the number of records appended since the journal was opened
+     */
+    public synchronized long getRecordCount(){
+        return appended;
+    }
+
+    /**
+     * @return the number of frames forced to disk, each one commits a batch of records
+     */
+    public synchronized long getBatchCount(){
+        return batchCount;
+    }
+
+    public synchronized long getBytesWritten(){
+        return bytesWritten;
+    }
+
+    public synchronized long getSnapshotCount(){
+        return snapshotCount;
+    }
+
+    /**
+     * @return how long {@link #open(File)} took to recover the sessions
+     */
+    public long getRecoveryNanos(){
+        return recoveryNanos;
+    }
+
+    /**
+     * @return the number of log records replayed after the snapshot at the recovery
+     */
+    public long getReplayedRecords(){
+        return replayedRecords;
+    }
+
+    /**
+     * Write the records which were appended, take a snapshot and stop the writer.
+     * The next {@link #open(File)} replays nothing.
+     */
+    @Override
+    public void close() throws IOException {
+        stop(true);
+    }
+
+    /**
+     * Write the records which were appended and stop the writer without a snapshot,
+     * the files are left as a crash after the last commit would leave them.
+     */
+    void halt() throws IOException {
+        stop(false);
+    }
+
+    private void stop(boolean snapshot) throws IOException {
+        synchronized (this){
+            if(!closing){
+                closing = true;
+                finalSnapshot = snapshot;
+                notifyAll();
+            }
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GameSystemException("Internal error: interrupted while closing the journal.");
+        }
+        synchronized (this){
+            if(failure != null){
+                throw failure;
+            }
+        }
+    }
+
+    private void writeLoop(){
+        try {
+            boolean last;
+            do {
+                ByteBuffer batch;
+                long batchEnd;
+                ByteBuffer snapshot = null;
+                synchronized (this){
+                    while(pending.position() == FRAME_HEADER_BYTES && !snapshotDue && !closing){
+                        wait();
+                    }
+                    batch = pending;
+                    pending = spare;
+                    spare = batch;
+                    pending.clear().position(FRAME_HEADER_BYTES);
+                    batchEnd = appended;
+                    last = closing;
+                    if(snapshotDue || (last && finalSnapshot)){
+                        //the state holds exactly the records up to this batch
+                        snapshot = writeSnapshot();
+                        snapshotDue = false;
+                        sinceSnapshot = 0;
+                    }
+                    //there is room in the buffer again
+                    notifyAll();
+                }
+                int size = writeFrame(batch);
+                synchronized (this){
+                    if(size > 0){
+                        batchCount++;
+                        bytesWritten += size;
+                    }
+                    durable = batchEnd;
+                    notifyAll();
+                }
+                if(snapshot != null){
+                    rollOver(snapshot);
+                }
+            } while(!last);
+        } catch (IOException e) {
+            synchronized (this){
+                failure = e;
+                notifyAll();
+            }
+        } catch (InterruptedException e) {
+            synchronized (this){
+                failure = new IOException("the writer was interrupted");
+                notifyAll();
+            }
+        } finally {
+            try {
+                log.close();
+            } catch (IOException e) {
+                //the frames are forced already
+            }
+        }
+    }
+
+    /**
+     * Write the records of a batch as one frame and force it to disk.
+     *
+     * @return the size of the frame, 0 if the batch is empty
+     */
+    private int writeFrame(ByteBuffer batch) throws IOException {
+        int length = batch.position() - FRAME_HEADER_BYTES;
+        if(length == 0){
+            return 0;
+        }
+        crc.reset();
+        crc.update(batch.array(), FRAME_HEADER_BYTES, length);
+        batch.putInt(0, length).putInt(4, (int) crc.getValue());
+        batch.flip();
+        while(batch.hasRemaining()){
+            log.write(batch);
+        }
+        long start = FORCE_PROBE.start();
+        log.force(false);
+        FORCE_PROBE.stop(start);
+        return FRAME_HEADER_BYTES + length;
+    }
+
+    /**
+     * @return the snapshot of all unfinished sessions, including the trailing checksum
+     */
+    private ByteBuffer writeSnapshot(){
+        int size = 12 + 4;
+        for(JournalSession session : sessions.values()){
+            size += 15 + session.getMoveCount() + session.getRedoCount();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(sessions.size());
+        for(JournalSession session : sessions.values()){
+            int limit = session.getMoveCount() + session.getRedoCount();
+            buffer.putLong(session.getId()).put((byte) session.getWidth()).put((byte) session.getHeight())
+                    .put((byte) session.getWinCount()).putShort((short) session.getMoveCount()).putShort((short) limit);
+            for(int idx = 0; idx < limit; idx++){
+                buffer.put((byte) session.getColumn(idx));
+            }
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, size - 4);
+        buffer.putInt((int) checksum.getValue());
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Start the next generation: a new log, then the snapshot of all logs before it.
+     * The files of the older generations are deleted once the snapshot is in place.
+     */
+    private void rollOver(ByteBuffer snapshot) throws IOException {
+        generation++;
+        if(log != null){
+            log.close();
+        }
+        log = FileChannel.open(file("journal", generation).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        log.write(header);
+        log.force(true);
+
+        File target = file("snapshot", generation);
+        File temporary = new File(directory, target.getName() + ".tmp");
+        try(FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            while(snapshot.hasRemaining()){
+                channel.write(snapshot);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        synchronized (this){
+            snapshotCount++;
+        }
+
+        for(Map.Entry<Long, File> entry : listFiles("journal").headMap(generation).entrySet()){
+            Files.deleteIfExists(entry.getValue().toPath());
+        }
+        for(Map.Entry<Long, File> entry : listFiles("snapshot").headMap(generation).entrySet()){
+            Files.deleteIfExists(entry.getValue().toPath());
+        }
+    }
+
+    /**
+     * Make the rename durable, where the file system allows a directory to be forced.
+     */
+    private void forceDirectory(){
+        try(FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)){
+            channel.force(true);
+        } catch (IOException e) {
+            //not supported on every platform
+        }
+    }
+
+    private File file(String kind, long generation){
+        return new File(directory, String.format("%s-%016x.%s", kind, generation, "journal".equals(kind) ? "log" : "bin"));
+    }
+
+    /**
+     * @return the files of a kind by their generations
+     */
+    private TreeMap<Long, File> listFiles(String kind){
+        TreeMap<Long, File> files = new TreeMap<>();
+        File[] list = directory.listFiles();
+        if(list != null){
+            for(File file : list){
+                Matcher matcher = FILE_NAME.matcher(file.getName());
+                if(matcher.matches() && kind.equals(matcher.group(1))){
+                    files.put(Long.parseUnsignedLong(matcher.group(2), 16), file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Load the newest complete snapshot, replay the logs after it and start a new generation.
+     */
+    private synchronized void recover() throws IOException {
+        long snapshotGeneration = 0;
+        for(Map.Entry<Long, File> entry : listFiles("snapshot").descendingMap().entrySet()){
+            if(readSnapshot(entry.getValue())){
+                snapshotGeneration = entry.getKey();
+                break;
+            }
+            sessions.clear();
+        }
+        generation = snapshotGeneration;
+        TreeMap<Long, File> logs = listFiles("journal");
+        for(Map.Entry<Long, File> entry : logs.tailMap(snapshotGeneration).entrySet()){
+            boolean complete = replay(entry.getValue());
+            if(!complete && !entry.getKey().equals(logs.lastKey())){
+                throw new GameSystemException(String.format("Internal error: the journal log [%s] is corrupt.", entry.getValue()));
+            }
+            generation = Math.max(generation, entry.getKey());
+        }
+        //the replayed logs are replaced by a snapshot, a torn frame at the end is dropped with them
+        rollOver(writeSnapshot());
+    }
+
+    /**
+     * @return {@code false} if the snapshot is incomplete or of another version
+     */
+    private boolean readSnapshot(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if(buffer.limit() < 16 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+            return false;
+        }
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, buffer.limit() - 4);
+        if(buffer.getInt(buffer.limit() - 4) != (int) checksum.getValue()){
+            return false;
+        }
+        buffer.position(8);
+        int count = buffer.getInt();
+        for(int idx = 0; idx < count; idx++){
+            long id = buffer.getLong();
+            JournalSession session = new JournalSession(id, buffer.get() & 0xFF, buffer.get() & 0xFF, buffer.get() & 0xFF);
+            int moveCount = buffer.getShort();
+            byte[] columns = new byte[buffer.getShort()];
+            buffer.get(columns);
+            session.load(columns, moveCount);
+            sessions.put(id, session);
+        }
+        return true;
+    }
+
+    /**
+     * Apply the frames of a log to the sessions.
+     *
+     * @return {@code false} if the log ends with a frame which was not fully written
+     */
+    private boolean replay(File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        if(buffer.limit() < FILE_HEADER_BYTES){
+            //the log was created, but its header is not on disk
+            return false;
+        }
+        if(buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+            throw new GameSystemException(String.format("Internal error: [%s] is not a journal log of this version.", file));
+        }
+        int position = FILE_HEADER_BYTES;
+        while(position < buffer.limit()){
+            if(buffer.limit() - position < FRAME_HEADER_BYTES){
+                return false;
+            }
+            int length = buffer.getInt(position);
+            if(length <= 0 || length % RECORD_BYTES != 0 || length > buffer.limit() - position - FRAME_HEADER_BYTES){
+                return false;
+            }
+            crc.reset();
+            crc.update(buffer.array(), position + FRAME_HEADER_BYTES, length);
+            if(buffer.getInt(position + 4) != (int) crc.getValue()){
+                return false;
+            }
+            buffer.position(position + FRAME_HEADER_BYTES);
+            for(int idx = 0; idx < length; idx += RECORD_BYTES){
+                long sessionId = buffer.getLong();
+                int type = buffer.get();
+                apply(sessionId, type, buffer.get() & 0xFF, buffer.get() & 0xFF, buffer.get() & 0xFF);
+                replayedRecords++;
+            }
+            position += FRAME_HEADER_BYTES + length;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,46 @@
+package com.rickey.game.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code Counter} counts events, e.g. undos or finished games. It can be increased
+ * by many threads at the same time.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class Counter {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name){
+        this.name = name;
+    }
+
+    /**
+     * Count one event, nothing is done if the metrics are disabled.
+     */
+    public void increment(){
+        if(Metrics.ENABLED){
+            count.increment();
+        }
+    }
+
+    public void add(long value){
+        if(Metrics.ENABLED){
+            count.add(value);
+        }
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public long getCount(){
+        return count.sum();
+    }
+
+    void reset(){
+        count.reset();
+    }
+}
@@ -0,0 +1,26 @@
+package com.rickey.game.metrics;
+
+/**
+ * {@code EventSink} receives every operation measured by a {@link Probe}, e.g. to
+ * write it to a Java Flight Recorder recording.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public interface EventSink {
+    /**
+     * An operation begins in the current thread.
+     *
+     * @param operation
+     *         the name of the probe, e.g. "panel.put"
+     */
+    public void begin(String operation);
+
+    /**
+     * The operation which began last in the current thread with the same name ends.
+     *
+     * @param operation
+     *         the name of the probe, e.g. "panel.put"
+     */
+    public void end(String operation);
+}
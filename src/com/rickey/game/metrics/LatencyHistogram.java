@@ -0,0 +1,135 @@
+package com.rickey.game.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@code LatencyHistogram} counts durations in nanoseconds in log-linear buckets,
+ * in the way of HdrHistogram: every power of two is split into 32 buckets of the
+ * same width, so a percentile is off by at most 1/32 (about 3%) of its value, from
+ * one nanosecond up to hundreds of years, with less than 2000 buckets.
+ *
+ * Recording a value is lock free and does not allocate.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = bucket(Long.MAX_VALUE) + 1;
+
+    private final String name;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name){
+        this.name = name;
+    }
+
+    /**
+     * The values below 2 * 32 have a bucket each, then every power of two has 32 buckets.
+     */
+    private static int bucket(long value){
+        if(value < 2 * SUB_BUCKETS){
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the lowest value of a bucket
+     */
+    private static long lowestValue(int bucket){
+        if(bucket < 2 * SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        return (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * @return the highest value of a bucket
+     */
+    private static long highestValue(int bucket){
+        return bucket + 1 == BUCKETS ? Long.MAX_VALUE : lowestValue(bucket + 1) - 1;
+    }
+
+    /**
+     * Record a duration.
+     *
+     * @param nanos
+     *         the duration in nanoseconds, a negative one is counted as 0
+     */
+    public void record(long nanos){
+        if(nanos < 0){
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(nanos));
+        total.increment();
+        sum.add(nanos);
+        long current = max.get();
+        while(nanos > current && !max.compareAndSet(current, nanos)){
+            current = max.get();
+        }
+    }
+
+    public String getName(){
+        return name;
+    }
+
+    public long getCount(){
+        return total.sum();
+    }
+
+    /**
+     * @return the average duration in nanoseconds, 0 if nothing is recorded
+     */
+    public double getMean(){
+        long count = total.sum();
+        return count == 0 ? 0 : (double) sum.sum() / count;
+    }
+
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * Find out the duration which the given share of the recorded durations do not exceed.
+     *
+     * @param percentile
+     *         from 0 to 100, e.g. 99.9
+     * @return the highest value of the bucket of the percentile in nanoseconds, 0 if nothing is recorded
+     */
+    public long getPercentile(double percentile){
+        long count = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            count += counts.get(bucket);
+        }
+        if(count == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            seen += counts.get(bucket);
+            if(seen >= rank){
+                return Math.min(highestValue(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    void reset(){
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            counts.set(bucket, 0);
+        }
+        total.reset();
+        sum.reset();
+        max.set(0);
+    }
+}
@@ -0,0 +1,161 @@
+package com.rickey.game.metrics;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The class {@code Metrics} is the registry of all {@link Counter}s,
+ * {@link LatencyHistogram}s and {@link Probe}s of the game engine, by name.
+ *
+ * The metrics are only recorded when the JVM is started with
+ * {@code -Dconnectfour.metrics=true}. Then every probe also sends its operations to
+ * Java Flight Recorder as {@code com.rickey.game.Operation} events, if the JVM has
+ * JFR and the JFR classes are in the jar.
+ *
+ * The registry can be printed at any time as text or as JSON:
+ * <pre>
+ * panel.put              count 1200  mean 180 ns  p50 150 ns  p99 900 ns  p99.9 2100 ns  max 35000 ns
+ * </pre>
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class Metrics {
+    public static final String ENABLED_PROPERTY = "connectfour.metrics";
+    public static final boolean ENABLED = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    //the JFR sink is compiled for Java 11 in its own source root, and looked up by reflection
+    private static final String JFR_SINK_CLASS = "com.rickey.game.metrics.jfr.JfrEventSink";
+    private static final EventSink SINK = ENABLED ? createJfrSink() : null;
+
+    private static final Map<String, Counter> COUNTERS = new TreeMap<>();
+    private static final Map<String, LatencyHistogram> HISTOGRAMS = new TreeMap<>();
+    private static final Map<String, Probe> PROBES = new TreeMap<>();
+
+    private Metrics(){
+    }
+
+    /**
+     * @return the counter of the name, it is created by the first call
+     */
+    public static synchronized Counter counter(String name){
+        Counter counter = COUNTERS.get(name);
+        if(counter == null){
+            counter = new Counter(name);
+            COUNTERS.put(name, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * @return the histogram of the name, it is created by the first call
+     */
+    public static synchronized LatencyHistogram histogram(String name){
+        LatencyHistogram histogram = HISTOGRAMS.get(name);
+        if(histogram == null){
+            histogram = new LatencyHistogram(name);
+            HISTOGRAMS.put(name, histogram);
+        }
+        return histogram;
+    }
+
+    /**
+     * @return the probe of the name, which records into the histogram of the same name
+     */
+    public static synchronized Probe probe(String name){
+        Probe probe = PROBES.get(name);
+        if(probe == null){
+            probe = new Probe(name, histogram(name), SINK);
+            PROBES.put(name, probe);
+        }
+        return probe;
+    }
+
+    /**
+     * @return {@code true} if the probes send their operations to Java Flight Recorder
+     */
+    public static boolean isFlightRecorderAvailable(){
+        return SINK != null;
+    }
+
+    /**
+     * Set all counters and histograms to zero.
+     */
+    public static synchronized void reset(){
+        for(Counter counter : COUNTERS.values()){
+            counter.reset();
+        }
+        for(LatencyHistogram histogram : HISTOGRAMS.values()){
+            histogram.reset();
+        }
+    }
+
+    /**
+     * Print every counter and histogram in a line.
+     *
+     * @param out
+     *         where to print the metrics
+     */
+    public static synchronized void dumpText(PrintStream out){
+        for(Counter counter : COUNTERS.values()){
+            out.println(String.format(Locale.ROOT, "%-24s count %d", counter.getName(), counter.getCount()));
+        }
+        for(LatencyHistogram histogram : HISTOGRAMS.values()){
+            out.println(String.format(Locale.ROOT, "%-24s count %d  mean %.0f ns  p50 %d ns  p99 %d ns  p99.9 %d ns  max %d ns",
+                    histogram.getName(), histogram.getCount(), histogram.getMean(), histogram.getPercentile(50),
+                    histogram.getPercentile(99), histogram.getPercentile(99.9), histogram.getMax()));
+        }
+    }
+
+    /**
+     * @return all counters and histograms as a JSON object, e.g.
+     * {"counters":{"game.finished":12},"histograms":{"panel.put":{"count":1200,"meanNanos":180.0,...}}}
+     */
+    public static synchronized String toJson(){
+        StringBuilder json = new StringBuilder("{\"enabled\":").append(ENABLED).append(",\"counters\":{");
+        String separator = "";
+        for(Counter counter : COUNTERS.values()){
+            appendName(json.append(separator), counter.getName()).append(':').append(counter.getCount());
+            separator = ",";
+        }
+        json.append("},\"histograms\":{");
+        separator = "";
+        for(LatencyHistogram histogram : HISTOGRAMS.values()){
+            appendName(json.append(separator), histogram.getName()).append(':')
+                    .append(String.format(Locale.ROOT, "{\"count\":%d,\"meanNanos\":%.1f,\"p50Nanos\":%d,\"p90Nanos\":%d,\"p99Nanos\":%d,\"p999Nanos\":%d,\"maxNanos\":%d}",
+                            histogram.getCount(), histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(90),
+                            histogram.getPercentile(99), histogram.getPercentile(99.9), histogram.getMax()));
+            separator = ",";
+        }
+        return json.append("}}").toString();
+    }
+
+    /**
+     * Append a name as a JSON string, the quotes, backslashes and control characters are escaped.
+     */
+    private static StringBuilder appendName(StringBuilder json, String name){
+        json.append('"');
+        for(int idx = 0; idx < name.length(); idx++){
+            char c = name.charAt(idx);
+            if(c == '"' || c == '\\'){
+                json.append('\\').append(c);
+            }else if(c < 0x20){
+                json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            }else{
+                json.append(c);
+            }
+        }
+        return json.append('"');
+    }
+
+    private static EventSink createJfrSink(){
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (EventSink) Class.forName(JFR_SINK_CLASS).getConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.rickey.game.metrics;
+
+/**
+ * {@code Probe} measures how long an operation takes. The time is recorded in a
+ * {@link LatencyHistogram} of the same name and sent to the {@link EventSink}:
+ * <pre>
+ * long start = PROBE.start();
+ * ...
+ * PROBE.stop(start);
+ * </pre>
+ * When the metrics are disabled, {@link Metrics#ENABLED} is a constant
+ * {@code false}, so the JIT compiler removes both calls.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class Probe {
+    private final String name;
+    private final LatencyHistogram histogram;
+    private final EventSink sink;
+
+    Probe(String name, LatencyHistogram histogram, EventSink sink){
+        this.name = name;
+        this.histogram = histogram;
+        this.sink = sink;
+    }
+
+    /**
+     * @return the start time to pass to {@link #stop(long)}
+     */
+    public long start(){
+        if(Metrics.ENABLED){
+            if(sink != null){
+                sink.begin(name);
+            }
+            return System.nanoTime();
+        }
+        return 0L;
+    }
+
+    /**
+     * Record the operation which began at {@code start}.
+     *
+     * @param start
+     *         the value returned by {@link #start()}
+     */
+    public void stop(long start){
+        if(Metrics.ENABLED){
+            histogram.record(System.nanoTime() - start);
+            if(sink != null){
+                sink.end(name);
+            }
+        }
+    }
+
+    public String getName(){
+        return name;
+    }
+}
@@ -0,0 +1,149 @@
+package com.rickey.game.record;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.IDisc;
+
+import java.util.Arrays;
+
+/**
+ * {@code GameRecord} is the record of one game: the size of the panel, the number
+ * of connected discs to win, the result, and the columns of all moves.
+ *
+ * A record can be reused for many games, e.g. by {@link GameRecordReader}, so
+ * reading an archive does not create an object per game.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class GameRecord {
+    public static final int RESULT_UNFINISHED = 0;
+    public static final int RESULT_FIRST_PLAYER_WIN = 1;
+    public static final int RESULT_SECOND_PLAYER_WIN = 2;
+    public static final int RESULT_DRAW = 3;
+    //the width, the height and the win count are stored in 4 bits each
+    public static final int MAX_DIMENSION = 16;
+
+    private int width;
+    private int height;
+    private int winCount;
+    private int result;
+    //the columns starting from 0
+    private byte[] columns = new byte[64];
+    private int moveCount;
+
+    /**
+     * Start a new record without any move.
+     *
+     * @param result
+     *         one of the {@code RESULT_*} constants
+     */
+    public void reset(int width, int height, int winCount, int result){
+        if(width < 1 || width > MAX_DIMENSION || height < 1 || height > MAX_DIMENSION || winCount < 1 || winCount > MAX_DIMENSION){
+            throw new GameSystemException(String.format("Internal error: a %d * %d panel with win count %d cannot be recorded.",
+                    width, height, winCount));
+        }
+        if(result < RESULT_UNFINISHED || result > RESULT_DRAW){
+            throw new GameSystemException(String.format("Internal error: invalid game result [%d]", result));
+        }
+        this.width = width;
+        this.height = height;
+        this.winCount = winCount;
+        this.result = result;
+        moveCount = 0;
+    }
+
+    /**
+     * Record the moves of a panel.
+     *
+     * @param panel
+     *         the panel of the game
+     * @param winCount
+     *         the number of connected discs to win
+     * @param result
+     *         one of the {@code RESULT_*} constants
+     */
+    public void load(FallDownGridPanel<?> panel, int winCount, int result){
+        reset(panel.getMaxX(), panel.getMaxY(), winCount, result);
+        int count = panel.getMoveCount();
+        for(int idx = 0; idx < count; idx++){
+            addMove(panel.getMoveColumn(idx));
+        }
+    }
+
+    /**
+     * @param column
+     *         the column of the move, starting from 1
+     */
+    public void addMove(int column){
+        if(column < 1 || column > width){
+            throw new GameSystemException(String.format("Internal error: column [%d] is out of the record.", column));
+        }
+        if(moveCount == columns.length){
+            columns = Arrays.copyOf(columns, columns.length * 2);
+        }
+        columns[moveCount++] = (byte) (column - 1);
+    }
+
+    /**
+     * Drop the discs of all moves into a panel, the players move alternately.
+     *
+     * @param panel
+     *         an empty panel of the same size as the record
+     * @param discs
+     *         the disc of every player, the first player moves first
+     * @throws GameUserException
+     *          if a move of the record is not valid on the panel
+     */
+    public <T extends IDisc> void replay(FallDownGridPanel<T> panel, T[] discs) throws GameUserException {
+        if(panel.getMaxX() != width || panel.getMaxY() != height){
+            throw new GameSystemException("Internal error: the panel does not match the record.");
+        }
+        for(int idx = 0; idx < moveCount; idx++){
+            panel.put(columns[idx] + 1, discs[idx % discs.length]);
+        }
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    public int getWinCount(){
+        return winCount;
+    }
+
+    /**
+     * @return one of the {@code RESULT_*} constants
+     */
+    public int getResult(){
+        return result;
+    }
+
+    public int getMoveCount(){
+        return moveCount;
+    }
+
+    /**
+     * @return the column of a move, starting from 1
+     */
+    public int getColumn(int index){
+        return columns[index] + 1;
+    }
+
+    /**
+     * @return the columns of all moves, e.g. "4453"
+     */
+    @Override
+    public String toString(){
+        StringBuilder builder = new StringBuilder(moveCount);
+        for(int idx = 0; idx < moveCount; idx++){
+            builder.append(Character.forDigit(columns[idx] + 1, MAX_DIMENSION + 1));
+        }
+        return builder.toString();
+    }
+}
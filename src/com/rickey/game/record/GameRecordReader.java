@@ -0,0 +1,208 @@
+package com.rickey.game.record;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.strategy.ConnectWinStrategy;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The class {@code GameRecordReader} reads the {@link GameRecord}s written by
+ * {@link GameRecordWriter} one by one, so an archive of any size is read with a
+ * fixed amount of memory.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class GameRecordReader implements Closeable {
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private int position;
+    private int limit;
+    //the offset of buffer[0] in the stream
+    private long bufferOffset;
+    private long recordCount;
+
+    /**
+     * Constructs a reader and checks the header of the stream.
+     *
+     * @param in
+     *         the stream to read from
+     * @throws IOException
+     *          if the stream is not an archive of records
+     */
+    public GameRecordReader(InputStream in) throws IOException {
+        this.in = in;
+        if(!fill(GameRecordWriter.HEADER_BYTES)){
+            throw new IOException("Not a game record archive: no header.");
+        }
+        int magic = (buffer[0] & 0xff) << 24 | (buffer[1] & 0xff) << 16 | (buffer[2] & 0xff) << 8 | (buffer[3] & 0xff);
+        if(magic != GameRecordWriter.MAGIC || buffer[4] != GameRecordWriter.VERSION){
+            throw new IOException("Not a game record archive of this version.");
+        }
+        position = GameRecordWriter.HEADER_BYTES;
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @param record
+     *         the record to fill, it can be reused for every record
+     * @return {@code false} at the end of the stream
+     * @throws IOException
+     *          if the stream ends in the middle of a record, or the record is corrupt,
+     *          the message tells the offset of the record in the stream
+     */
+    public boolean next(GameRecord record) throws IOException {
+        if(!fill(1)){
+            return false;
+        }
+        long recordOffset = bufferOffset + position;
+        try {
+            readRecord(record, recordOffset);
+        } catch (GameSystemException e) {
+            //the record has a column or a dimension which no game can have
+            throw new IOException(String.format("Corrupt game record at offset %d.", recordOffset), e);
+        }
+        recordCount++;
+        return true;
+    }
+
+    private void readRecord(GameRecord record, long recordOffset) throws IOException {
+        //the header of a record, with the longest move count
+        fill(2 + 5);
+        if(limit - position < 3){
+            throw new EOFException(String.format("Truncated game record at offset %d.", recordOffset));
+        }
+        int dimension = buffer[position++] & 0xff;
+        int rules = buffer[position++] & 0xff;
+        if((rules & 0xc0) != 0){
+            throw new IOException(String.format("Corrupt game record at offset %d.", recordOffset));
+        }
+        record.reset((dimension & 0x0f) + 1, (dimension >>> 4) + 1, (rules & 0x0f) + 1, rules >>> 4);
+        int moveCount = 0;
+        for(int shift = 0; ; shift += 7){
+            if(position == limit || shift > 28){
+                throw new IOException(String.format("Corrupt game record at offset %d.", recordOffset));
+            }
+            int b = buffer[position++];
+            moveCount |= (b & 0x7f) << shift;
+            if(b >= 0){
+                break;
+            }
+        }
+        int remaining = moveCount;
+        while(remaining > 0){
+            if(!fill(1)){
+                throw new EOFException(String.format("Truncated game record at offset %d.", recordOffset));
+            }
+            int end = Math.min(limit, position + (remaining + 1) / 2);
+            for(; position < end; position++){
+                int b = buffer[position];
+                record.addMove((b & 0x0f) + 1);
+                if(--remaining > 0){
+                    record.addMove(((b >>> 4) & 0x0f) + 1);
+                    remaining--;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of records read so far
+     */
+    public long getRecordCount(){
+        return recordCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Make sure the buffer holds at least {@code bytes} unread bytes, unless the
+     * stream ends before.
+     *
+     * @return {@code true} if there are so many bytes
+     */
+    private boolean fill(int bytes) throws IOException {
+        if(limit - position >= bytes){
+            return true;
+        }
+        System.arraycopy(buffer, position, buffer, 0, limit - position);
+        limit -= position;
+        bufferOffset += position;
+        position = 0;
+        while(limit < bytes){
+            int count = in.read(buffer, limit, buffer.length - limit);
+            if(count < 0){
+                return false;
+            }
+            limit += count;
+        }
+        return true;
+    }
+
+    /**
+     * Read an archive and print its statistics. With "replay", every game is replayed
+     * into a panel, and its result is checked against the win strategy.
+     *
+     * Usage: GameRecordReader file [replay]
+     */
+    public static void main(String[] args) throws IOException, GameUserException {
+        boolean replay = args.length > 1 && "replay".equals(args[1]);
+        long[] results = new long[GameRecord.RESULT_DRAW + 1];
+        long moves = 0;
+        long mismatches = 0;
+        GameRecord record = new GameRecord();
+        ColorDisc[] discs = {ColorDisc.RED_DISC, ColorDisc.GREEN_DISC};
+        FallDownGridPanel<ColorDisc> panel = null;
+        long start = System.nanoTime();
+        try(GameRecordReader reader = new GameRecordReader(new BufferedInputStream(new FileInputStream(new File(args[0]))))){
+            while(reader.next(record)){
+                results[record.getResult()]++;
+                moves += record.getMoveCount();
+                if(replay){
+                    if(panel == null || panel.getMaxX() != record.getWidth() || panel.getMaxY() != record.getHeight()){
+                        panel = new FallDownGridPanel<>(record.getWidth(), record.getHeight());
+                    }
+                    while(panel.getLatestStep() != null){
+                        panel.stepBack();
+                    }
+                    record.replay(panel, discs);
+                    if(replayedResult(panel, record) != record.getResult()){
+                        mismatches++;
+                    }
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        long games = results[0] + results[1] + results[2] + results[3];
+        System.out.println(String.format("%d games, %d first player wins, %d second player wins, %d draws, %d unfinished, %.1f moves per game",
+                games, results[GameRecord.RESULT_FIRST_PLAYER_WIN], results[GameRecord.RESULT_SECOND_PLAYER_WIN],
+                results[GameRecord.RESULT_DRAW], results[GameRecord.RESULT_UNFINISHED], games == 0 ? 0 : (double) moves / games));
+        System.out.println(String.format("%s in %d ms (%.0f games/min)%s", replay ? "Replayed" : "Read", elapsed / 1000000L,
+                games * 60e9 / Math.max(elapsed, 1), replay ? String.format(", %d results do not match", mismatches) : ""));
+    }
+
+    private static int replayedResult(FallDownGridPanel<ColorDisc> panel, GameRecord record){
+        if(record.getMoveCount() == 0){
+            return GameRecord.RESULT_UNFINISHED;
+        }
+        if(new ConnectWinStrategy(record.getWinCount()).isWin(panel, panel.getLatestStep())){
+            return record.getMoveCount() % 2 == 1 ? GameRecord.RESULT_FIRST_PLAYER_WIN : GameRecord.RESULT_SECOND_PLAYER_WIN;
+        }
+        return panel.isPanelFull() ? GameRecord.RESULT_DRAW : GameRecord.RESULT_UNFINISHED;
+    }
+}
@@ -0,0 +1,168 @@
+package com.rickey.game.record;
+
+import com.rickey.game.datamodel.FallDownGridPanel;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * The class {@code GameRecordWriter} writes {@link GameRecord}s to a stream, one
+ * after another, in a packed binary format. A stream starts with a header, followed
+ * by the records:
+ * <pre>
+ * header: magic (4 bytes), version (1 byte)
+ * record: width - 1 (4 bits), height - 1 (4 bits),
+ *         win count - 1 (4 bits), result (2 bits), 0 (2 bits),
+ *         move count (unsigned varint, 7 bits per byte, low bits first),
+ *         columns (4 bits per move starting from 0, the first move in the low bits of a byte)
+ * </pre>
+ * A 7 * 6 game of 21 moves takes 14 bytes.
+ *
+ * The records are collected in a buffer and written in large blocks.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ * @see GameRecordReader
+ */
+public class GameRecordWriter implements Closeable {
+    public static final int MAGIC = 0x43344752;
+    public static final int VERSION = 1;
+    static final int HEADER_BYTES = 5;
+
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    private final OutputStream out;
+    private byte[] buffer = new byte[BUFFER_BYTES];
+    private int position;
+    private long recordCount;
+    private final GameRecord panelRecord = new GameRecord();
+
+    /**
+     * Constructs a writer which starts a new stream.
+     *
+     * @param out
+     *         the stream to write to
+     */
+    public GameRecordWriter(OutputStream out){
+        this(out, true);
+    }
+
+    private GameRecordWriter(OutputStream out, boolean writeHeader){
+        this.out = out;
+        if(writeHeader){
+            buffer[position++] = (byte) (MAGIC >>> 24);
+            buffer[position++] = (byte) (MAGIC >>> 16);
+            buffer[position++] = (byte) (MAGIC >>> 8);
+            buffer[position++] = (byte) MAGIC;
+            buffer[position++] = (byte) VERSION;
+        }
+    }
+
+    /**
+     * Open a file to add records at its end. A new or empty file gets the header first.
+     *
+     * @param file
+     *         the archive file
+     * @return the writer
+     * @throws IOException
+     *          if the file cannot be written, or it is not an archive of records
+     */
+    public static GameRecordWriter append(File file) throws IOException {
+        boolean empty = !file.exists() || file.length() == 0;
+        if(!empty){
+            try(InputStream in = new FileInputStream(file)){
+                //checks the header
+                new GameRecordReader(in);
+            }
+        }
+        return new GameRecordWriter(new FileOutputStream(file, true), empty);
+    }
+
+    /**
+     * Write a record.
+     *
+     * @param record
+     *         the record of a game
+     */
+    public void write(GameRecord record) throws IOException {
+        int moveCount = record.getMoveCount();
+        int size = 2 + 5 + (moveCount + 1) / 2;
+        if(position + size > buffer.length){
+            flushBuffer();
+            if(size > buffer.length){
+                buffer = Arrays.copyOf(buffer, size);
+            }
+        }
+        byte[] bytes = buffer;
+        int pos = position;
+        bytes[pos++] = (byte) ((record.getWidth() - 1) | (record.getHeight() - 1) << 4);
+        bytes[pos++] = (byte) ((record.getWinCount() - 1) | record.getResult() << 4);
+        int count = moveCount;
+        while(count >= 0x80){
+            bytes[pos++] = (byte) (count | 0x80);
+            count >>>= 7;
+        }
+        bytes[pos++] = (byte) count;
+        int idx = 0;
+        for(; idx + 1 < moveCount; idx += 2){
+            bytes[pos++] = (byte) ((record.getColumn(idx) - 1) | (record.getColumn(idx + 1) - 1) << 4);
+        }
+        if(idx < moveCount){
+            bytes[pos++] = (byte) (record.getColumn(idx) - 1);
+        }
+        position = pos;
+        recordCount++;
+    }
+
+    /**
+     * Write the record of the game on a panel.
+     *
+     * @param panel
+     *         the panel of the game
+     * @param winCount
+     *         the number of connected discs to win
+     * @param result
+     *         one of the {@code GameRecord.RESULT_*} constants
+     */
+    public void write(FallDownGridPanel<?> panel, int winCount, int result) throws IOException {
+        panelRecord.load(panel, winCount, result);
+        write(panelRecord);
+    }
+
+    /**
+     * @return the number of records written by this writer
+     */
+    public long getRecordCount(){
+        return recordCount;
+    }
+
+    /**
+     * Write the buffered records to the stream.
+     */
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if(position > 0){
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
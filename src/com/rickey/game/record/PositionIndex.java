@@ -0,0 +1,385 @@
+package com.rickey.game.record;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.BitboardGridPanel;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.IDisc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The class {@code PositionIndex} finds the archived games which reached a position,
+ * and tells how they went on. It reads the index written by {@link PositionIndexBuilder}
+ * from an archive of {@link GameRecord}s, which is mapped read-only into memory, so a
+ * lookup costs a binary search and no heap beyond its answer.
+ *
+ * A position is keyed by {@link BitboardGridPanel#getPositionKey()}, which is unique
+ * for every position of a panel. The positions are spread over shard files by a hash
+ * of their key. Every shard file starts with a header, followed by three sections:
+ * <pre>
+ * header:   magic (int), version (int), width (int), height (int), shard (int), shard count (int),
+ *           game count (long), posting count (long), key count (long), stats count (long)
+ * postings: one posting (long) per game and ply, sorted by key and game
+ * keys:     key (long), index of its first posting (long), sorted by key
+ * stats:    key (long), count (long) per next column and result, sorted by key
+ * posting:  game number (47 bits), ply (9 bits), next column (6 bits), result (2 bits)
+ * </pre>
+ * The game number is the index of the game in the archive, starting from 0. The next
+ * column starts from 1, it is 0 when the game ended at the position.
+ *
+ * Only a key with at least {@link #STATS_THRESHOLD} postings has stats, e.g. the openings
+ * which millions of games went through. The stats of any other key are summed from its
+ * postings, which are a few adjacent longs.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ * @see PositionIndexBuilder
+ */
+public class PositionIndex {
+    public static final int MAGIC = 0x43345049;
+    public static final int VERSION = 2;
+    public static final int STATS_THRESHOLD = 64;
+
+    static final int HEADER_BYTES = 56;
+    static final int KEY_BYTES = 16;
+    static final int RESULT_BITS = 2;
+    static final int NEXT_SHIFT = 2;
+    static final int NEXT_BITS = 6;
+    static final int PLY_SHIFT = 8;
+    //a ply up to 16 * 16 = 256, the most of a game record
+    static final int GAME_SHIFT = 17;
+    static final String SHARD_FORMAT = "positions-%04d.idx";
+
+    private final int width;
+    private final int height;
+    private final long gameCount;
+    private final Shard[] shards;
+
+    private PositionIndex(File directory) throws IOException {
+        Shard first = new Shard(new File(directory, String.format(SHARD_FORMAT, 0)));
+        width = first.width;
+        height = first.height;
+        gameCount = first.gameCount;
+        shards = new Shard[first.shardCount];
+        shards[0] = first;
+        for(int shard = 1; shard < shards.length; shard++){
+            shards[shard] = new Shard(new File(directory, String.format(SHARD_FORMAT, shard)));
+            if(shards[shard].shard != shard || shards[shard].shardCount != shards.length || shards[shard].gameCount != gameCount
+                    || shards[shard].width != width || shards[shard].height != height){
+                throw new GameSystemException(String.format("Internal error: shard [%d] does not belong to the index.", shard));
+            }
+        }
+    }
+
+    /**
+     * Map all shard files of an index.
+     *
+     * @param directory
+     *         the directory of the index
+     */
+    public static PositionIndex open(File directory) throws IOException {
+        return new PositionIndex(directory);
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * @return the number of indexed games
+     */
+    public long getGameCount(){
+        return gameCount;
+    }
+
+    /**
+     * @return the number of different positions of all indexed games
+     */
+    public long getKeyCount(){
+        long total = 0;
+        for(Shard shard : shards){
+            total += shard.keyCount;
+        }
+        return total;
+    }
+
+    /**
+     * @return the number of postings, one per game and ply
+     */
+    public long getPostingCount(){
+        long total = 0;
+        for(Shard shard : shards){
+            total += shard.postingCount;
+        }
+        return total;
+    }
+
+    static int shardOf(long key, int shardCount){
+        return (int) (((key * 0x9E3779B97F4A7C15L) >>> 33) % shardCount);
+    }
+
+    static long posting(long game, int ply, int next, int result){
+        return game << GAME_SHIFT | (long) ply << PLY_SHIFT | next << NEXT_SHIFT | result;
+    }
+
+    static long getGame(long posting){
+        return posting >>> GAME_SHIFT;
+    }
+
+    static int getNext(long posting){
+        return (int) (posting >>> NEXT_SHIFT) & ((1 << NEXT_BITS) - 1);
+    }
+
+    static int getResult(long posting){
+        return (int) posting & ((1 << RESULT_BITS) - 1);
+    }
+
+    /**
+     * @param moves
+     *         the columns of the moves, starting from 1, e.g. "4453"
+     * @return the key of the position after the moves
+     * @throws GameUserException
+     *          if a move is not valid
+     */
+    public long positionKey(String moves) throws GameUserException {
+        BitboardGridPanel<IDisc> panel = new BitboardGridPanel<>(width, height);
+        for(int idx = 0; idx < moves.length(); idx++){
+            int x = Character.digit(moves.charAt(idx), GameRecord.MAX_DIMENSION + 1) - 1;
+            if(x < 0 || x >= width || !panel.canPlay(x)){
+                throw new GameUserException(String.format("Invalid move [%c] at [%d].", moves.charAt(idx), idx + 1));
+            }
+            panel.play(x, idx & 1);
+        }
+        return panel.getPositionKey();
+    }
+
+    /**
+     * @param panel
+     *         a panel with the dimension of the index
+     * @return the key of the position of the panel
+     */
+    public long positionKey(FallDownGridPanel<?> panel){
+        if(panel.getMaxX() != width || panel.getMaxY() != height){
+            throw new GameSystemException("Internal error: the panel does not match the index.");
+        }
+        if(panel instanceof BitboardGridPanel){
+            return ((BitboardGridPanel<?>) panel).getPositionKey();
+        }
+        BitboardGridPanel<IDisc> board = new BitboardGridPanel<>(width, height);
+        for(int idx = 0; idx < panel.getMoveCount(); idx++){
+            board.play(panel.getMoveColumn(idx) - 1, idx & 1);
+        }
+        return board.getPositionKey();
+    }
+
+    /**
+     * @return the statistics of the games which reached the position of the panel
+     */
+    public PositionStats lookup(FallDownGridPanel<?> panel){
+        return lookup(positionKey(panel));
+    }
+
+    /**
+     * @param key
+     *         the key of a position, see {@link #positionKey(FallDownGridPanel)}
+     * @return the statistics of the games which reached the position, without any game
+     *         if no game reached it
+     */
+    public PositionStats lookup(long key){
+        PositionStats stats = new PositionStats(width);
+        Shard shard = shards[shardOf(key, shards.length)];
+        int index = shard.find(key);
+        if(index < 0){
+            return stats;
+        }
+        long first = shard.getFirstPosting(index);
+        long count = shard.getPostingCount(index);
+        if(count >= STATS_THRESHOLD){
+            shard.readStats(key, stats);
+            return stats;
+        }
+        for(long idx = first; idx < first + count; idx++){
+            long posting = shard.getPosting(idx);
+            stats.add(getNext(posting), getResult(posting), 1);
+        }
+        return stats;
+    }
+
+    /**
+     * @param key
+     *         the key of a position
+     * @param limit
+     *         the largest number of games to return
+     * @return the numbers of the first games which reached the position, in the order of the archive
+     */
+    public long[] findGames(long key, int limit){
+        Shard shard = shards[shardOf(key, shards.length)];
+        int index = shard.find(key);
+        if(index < 0){
+            return new long[0];
+        }
+        long first = shard.getFirstPosting(index);
+        long[] games = new long[(int) Math.min(limit, shard.getPostingCount(index))];
+        for(int idx = 0; idx < games.length; idx++){
+            games[idx] = getGame(shard.getPosting(first + idx));
+        }
+        return games;
+    }
+
+    /**
+     * Print how many games reached a position, how they ended and how they went on,
+     * and the first games.
+     *
+     * Usage: PositionIndex directory [moves [games]], e.g. PositionIndex positions 4453 10
+     */
+    public static void main(String[] args) throws IOException, GameUserException {
+        PositionIndex index = open(new File(args[0]));
+        String moves = args.length > 1 ? args[1] : "";
+        int limit = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        System.out.println(String.format("%d games, %d positions, %d postings on %d * %d", index.getGameCount(),
+                index.getKeyCount(), index.getPostingCount(), index.getWidth(), index.getHeight()));
+
+        long key = index.positionKey(moves);
+        long start = System.nanoTime();
+        PositionStats stats = index.lookup(key);
+        long first = System.nanoTime() - start;
+        start = System.nanoTime();
+        for(int idx = 0; idx < 10000; idx++){
+            stats = index.lookup(key);
+        }
+        long repeated = (System.nanoTime() - start) / 10000;
+        System.out.println(String.format("Position [%s]: %s", moves, stats));
+        for(int column = 1; column <= index.getWidth(); column++){
+            if(stats.getContinuationCount(column) > 0){
+                System.out.println(String.format("Column %d: %s", column, stats.toString(column)));
+            }
+        }
+        if(stats.getContinuationCount(0) > 0){
+            System.out.println(String.format("Ended here: %s", stats.toString(0)));
+        }
+        StringBuilder games = new StringBuilder();
+        for(long game : index.findGames(key, limit)){
+            games.append(games.length() == 0 ? "" : ", ").append(game);
+        }
+        System.out.println(String.format("Games: %s", games));
+        System.out.println(String.format("Lookup: %.3f ms the first time, %.4f ms repeated", first / 1e6, repeated / 1e6));
+    }
+
+    /**
+     * A mapped shard file.
+     */
+    private static final class Shard {
+        private final MappedByteBuffer buffer;
+        private final int width;
+        private final int height;
+        private final int shard;
+        private final int shardCount;
+        private final long gameCount;
+        private final long postingCount;
+        private final int keyCount;
+        private final int statsCount;
+        private final int keysOffset;
+        private final int statsOffset;
+        private final int statsBytes;
+
+        Shard(File file) throws IOException {
+            try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+                FileChannel channel = randomAccessFile.getChannel()){
+                if(channel.size() > Integer.MAX_VALUE){
+                    throw new GameSystemException(String.format("Internal error: %s is too large, build the index with more shards.", file));
+                }
+                //the mapping stays valid after the channel is closed
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if(buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION){
+                throw new GameSystemException(String.format("Internal error: %s is not a position index of this version.", file));
+            }
+            width = buffer.getInt(8);
+            height = buffer.getInt(12);
+            shard = buffer.getInt(16);
+            shardCount = buffer.getInt(20);
+            gameCount = buffer.getLong(24);
+            postingCount = buffer.getLong(32);
+            keyCount = (int) buffer.getLong(40);
+            statsCount = (int) buffer.getLong(48);
+            statsBytes = getStatsBytes(width);
+            keysOffset = HEADER_BYTES + (int) postingCount * Long.BYTES;
+            statsOffset = keysOffset + keyCount * KEY_BYTES;
+            if(buffer.capacity() != statsOffset + (long) statsCount * statsBytes){
+                throw new GameSystemException(String.format("Internal error: %s is truncated.", file));
+            }
+        }
+
+        /**
+         * @return the index of the key in the keys section, -1 if it is not there
+         */
+        int find(long key){
+            int low = 0;
+            int high = keyCount - 1;
+            while(low <= high){
+                int mid = (low + high) >>> 1;
+                long value = buffer.getLong(keysOffset + mid * KEY_BYTES);
+                if(value < key){
+                    low = mid + 1;
+                }else if(value > key){
+                    high = mid - 1;
+                }else{
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        long getFirstPosting(int index){
+            return buffer.getLong(keysOffset + index * KEY_BYTES + Long.BYTES);
+        }
+
+        long getPostingCount(int index){
+            return (index + 1 < keyCount ? getFirstPosting(index + 1) : postingCount) - getFirstPosting(index);
+        }
+
+        long getPosting(long index){
+            return buffer.getLong(HEADER_BYTES + (int) index * Long.BYTES);
+        }
+
+        void readStats(long key, PositionStats stats){
+            int low = 0;
+            int high = statsCount - 1;
+            while(low <= high){
+                int mid = (low + high) >>> 1;
+                int offset = statsOffset + mid * statsBytes;
+                long value = buffer.getLong(offset);
+                if(value < key){
+                    low = mid + 1;
+                }else if(value > key){
+                    high = mid - 1;
+                }else{
+                    for(int column = 0; column <= width; column++){
+                        for(int result = 0; result <= GameRecord.RESULT_DRAW; result++){
+                            offset += Long.BYTES;
+                            stats.add(column, result, buffer.getLong(offset));
+                        }
+                    }
+                    return;
+                }
+            }
+            throw new GameSystemException(String.format("Internal error: no stats of key [%x] in shard [%d].", key, shard));
+        }
+    }
+
+    /**
+     * @return the size of the stats of a key: the key and a count per next column and result
+     */
+    static int getStatsBytes(int width){
+        return Long.BYTES + (width + 1) * (GameRecord.RESULT_DRAW + 1) * Long.BYTES;
+    }
+}
@@ -0,0 +1,439 @@
+package com.rickey.game.record;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.datamodel.BitboardGridPanel;
+import com.rickey.game.datamodel.IDisc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+/**
+ * The class {@code PositionIndexBuilder} writes a {@link PositionIndex} of the games of
+ * an archive. Every game is replayed on a {@link BitboardGridPanel}, and every position
+ * it reached, from the empty panel to the last move, becomes a posting under the key of
+ * the position.
+ *
+ * The archive is read once as a stream, and the heap holds one buffer of postings per
+ * shard, so an archive of any size is indexed with a fixed amount of memory:
+ * <ol>
+ * <li>The posting of a position goes to the buffer of the shard of its key. A full buffer
+ * is sorted by key and written to a run file of the shard.</li>
+ * <li>After the last game, the runs of every shard are merged into its shard file. The
+ * keys and the stats are counted while the postings stream by. The shards are merged on
+ * all cores.</li>
+ * </ol>
+ * Only the games with the dimension of the first game are indexed, the others are skipped.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ * @see PositionIndex
+ */
+public class PositionIndexBuilder {
+    private static final String RUN_FORMAT = "positions-%04d-%06d.run";
+    private static final int STREAM_BUFFER_BYTES = 1 << 16;
+    private static final int INSERTION_SORT_SIZE = 16;
+
+    private final File directory;
+    private final int shardCount;
+    private final int runSize;
+    private final long[][] keys;
+    private final long[][] postings;
+    private final int[] sizes;
+    private final int[] runCounts;
+    private BitboardGridPanel<IDisc> panel;
+    //the keys of the positions of the game being added, before and after every move
+    private long[] positionKeys;
+    private long gameCount;
+    private long postingCount;
+    private long skippedCount;
+    private long keyCount;
+
+    /**
+     * @param directory
+     *         the directory of the index, it is created if it does not exist
+     * @param shardCount
+     *         the number of shard files, every one has to stay below 2 GB
+     * @param megabytes
+     *         the size of the buffers of all shards
+     */
+    public PositionIndexBuilder(File directory, int shardCount, int megabytes){
+        if(shardCount < 1 || megabytes < 1){
+            throw new GameSystemException("Internal error: a position index needs at least one shard and one megabyte.");
+        }
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new GameSystemException(String.format("Internal error: cannot create the directory %s.", directory));
+        }
+        this.directory = directory;
+        this.shardCount = shardCount;
+        //a key and a posting per entry
+        runSize = (int) Math.max(1024, Math.min(Integer.MAX_VALUE - 8, ((long) megabytes << 20) / shardCount / (2 * Long.BYTES)));
+        keys = new long[shardCount][];
+        postings = new long[shardCount][];
+        sizes = new int[shardCount];
+        runCounts = new int[shardCount];
+    }
+
+    /**
+     * Add the positions of a game. The games are numbered in the order they are added.
+     * The moves are all checked first, a game with a move which is not valid adds
+     * nothing.
+     *
+     * @throws IOException
+     *          if a run cannot be written, or a move of the record is not valid
+     */
+    public void add(GameRecord record) throws IOException {
+        if(panel == null){
+            panel = new BitboardGridPanel<>(record.getWidth(), record.getHeight());
+            positionKeys = new long[record.getWidth() * record.getHeight() + 1];
+        }else if(panel.getMaxX() != record.getWidth() || panel.getMaxY() != record.getHeight()){
+            skippedCount++;
+            return;
+        }
+        int moveCount = record.getMoveCount();
+        if(moveCount >= positionKeys.length){
+            throw new IOException(String.format("Corrupt game record [%d]: %d moves on a %d * %d panel.",
+                    gameCount, moveCount, record.getWidth(), record.getHeight()));
+        }
+        panel.cleanUpPanel();
+        for(int ply = 0; ply < moveCount; ply++){
+            positionKeys[ply] = panel.getPositionKey();
+            int next = record.getColumn(ply);
+            if(next < 1 || next > record.getWidth()){
+                throw new IOException(String.format("Corrupt game record [%d]: no column [%d].", gameCount, next));
+            }
+            if(!panel.canPlay(next - 1)){
+                throw new IOException(String.format("Corrupt game record [%d]: column [%d] is full.", gameCount, next));
+            }
+            panel.play(next - 1, ply & 1);
+        }
+        positionKeys[moveCount] = panel.getPositionKey();
+        for(int ply = 0; ply <= moveCount; ply++){
+            int next = ply < moveCount ? record.getColumn(ply) : 0;
+            add(positionKeys[ply], PositionIndex.posting(gameCount, ply, next, record.getResult()));
+        }
+        gameCount++;
+    }
+
+    private void add(long key, long posting) throws IOException {
+        int shard = PositionIndex.shardOf(key, shardCount);
+        if(keys[shard] == null){
+            keys[shard] = new long[runSize];
+            postings[shard] = new long[runSize];
+        }
+        int size = sizes[shard];
+        keys[shard][size] = key;
+        postings[shard][size] = posting;
+        sizes[shard] = size + 1;
+        if(size + 1 == runSize){
+            writeRun(shard);
+        }
+        postingCount++;
+    }
+
+    /**
+     * Sort the buffer of a shard and write it to a new run file.
+     */
+    private void writeRun(int shard) throws IOException {
+        int size = sizes[shard];
+        long[] runKeys = keys[shard];
+        long[] runPostings = postings[shard];
+        sort(runKeys, runPostings, 0, size);
+        File file = new File(directory, String.format(RUN_FORMAT, shard, runCounts[shard]++));
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), STREAM_BUFFER_BYTES))){
+            for(int idx = 0; idx < size; idx++){
+                out.writeLong(runKeys[idx]);
+                out.writeLong(runPostings[idx]);
+            }
+        }
+        sizes[shard] = 0;
+    }
+
+    /**
+     * Write the last runs and merge the runs of every shard into its shard file.
+     */
+    public void finish() throws IOException {
+        if(panel == null){
+            throw new GameSystemException("Internal error: there is no game to index.");
+        }
+        for(int shard = 0; shard < shardCount; shard++){
+            if(sizes[shard] > 0){
+                writeRun(shard);
+            }
+            keys[shard] = null;
+            postings[shard] = null;
+        }
+        AtomicLong totalKeys = new AtomicLong();
+        try {
+            IntStream.range(0, shardCount).parallel().forEach(shard -> {
+                try {
+                    totalKeys.addAndGet(merge(shard));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        keyCount = totalKeys.get();
+    }
+
+    /**
+     * Merge the runs of a shard. The postings are written right after the header, the
+     * keys and the stats go to temporary files first, and are appended after the postings.
+     *
+     * @return the number of keys of the shard
+     */
+    private long merge(int shard) throws IOException {
+        int width = panel.getMaxX();
+        int results = GameRecord.RESULT_DRAW + 1;
+        File file = new File(directory, String.format(PositionIndex.SHARD_FORMAT, shard));
+        File keysFile = new File(directory, String.format(PositionIndex.SHARD_FORMAT, shard) + ".keys");
+        File statsFile = new File(directory, String.format(PositionIndex.SHARD_FORMAT, shard) + ".stats");
+        PriorityQueue<Run> queue = new PriorityQueue<>();
+        long shardPostings = 0;
+        long shardKeys = 0;
+        long shardStats = 0;
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), STREAM_BUFFER_BYTES));
+            DataOutputStream keysOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(keysFile), STREAM_BUFFER_BYTES));
+            DataOutputStream statsOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(statsFile), STREAM_BUFFER_BYTES))){
+            for(int run = 0; run < runCounts[shard]; run++){
+                Run reader = new Run(new File(directory, String.format(RUN_FORMAT, shard, run)));
+                if(reader.next()){
+                    queue.add(reader);
+                }else{
+                    reader.close();
+                }
+            }
+            //the header is written last, so an unfinished file is never taken for an index
+            out.write(new byte[PositionIndex.HEADER_BYTES]);
+            long[] counts = new long[(width + 1) * results];
+            long key = 0;
+            long first = 0;
+            while(!queue.isEmpty()){
+                Run run = queue.poll();
+                if(shardPostings == 0 || run.key != key){
+                    if(shardPostings > 0){
+                        shardStats += writeStats(statsOut, key, shardPostings - first, counts);
+                    }
+                    key = run.key;
+                    first = shardPostings;
+                    keysOut.writeLong(key);
+                    keysOut.writeLong(first);
+                    shardKeys++;
+                }
+                out.writeLong(run.posting);
+                counts[PositionIndex.getNext(run.posting) * results + PositionIndex.getResult(run.posting)]++;
+                shardPostings++;
+                if(run.next()){
+                    queue.add(run);
+                }else{
+                    run.close();
+                }
+            }
+            if(shardPostings > 0){
+                shardStats += writeStats(statsOut, key, shardPostings - first, counts);
+            }
+            //the streams are closed by the try, the copies only need what is buffered
+            keysOut.flush();
+            statsOut.flush();
+            Files.copy(keysFile.toPath(), out);
+            Files.copy(statsFile.toPath(), out);
+        } finally {
+            for(Run run : queue){
+                run.close();
+            }
+            for(int run = 0; run < runCounts[shard]; run++){
+                Files.deleteIfExists(new File(directory, String.format(RUN_FORMAT, shard, run)).toPath());
+            }
+            Files.deleteIfExists(keysFile.toPath());
+            Files.deleteIfExists(statsFile.toPath());
+        }
+
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+            FileChannel channel = randomAccessFile.getChannel()){
+            ByteBuffer header = ByteBuffer.allocate(PositionIndex.HEADER_BYTES);
+            header.putInt(PositionIndex.MAGIC).putInt(PositionIndex.VERSION).putInt(width).putInt(panel.getMaxY())
+                    .putInt(shard).putInt(shardCount).putLong(gameCount).putLong(shardPostings).putLong(shardKeys).putLong(shardStats);
+            header.flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        return shardKeys;
+    }
+
+    /**
+     * Write the stats of a key if it has enough postings, and clear the counts.
+     *
+     * @return 1 if the stats were written
+     */
+    private static int writeStats(DataOutputStream out, long key, long count, long[] counts) throws IOException {
+        boolean write = count >= PositionIndex.STATS_THRESHOLD;
+        if(write){
+            out.writeLong(key);
+        }
+        for(int idx = 0; idx < counts.length; idx++){
+            if(write){
+                out.writeLong(counts[idx]);
+            }
+            counts[idx] = 0;
+        }
+        return write ? 1 : 0;
+    }
+
+    /**
+     * Sort the entries by key, then by posting. Every posting is different, so every
+     * entry is.
+     *
+     * @param from
+     *         the first index, inclusive
+     * @param to
+     *         the last index, exclusive
+     */
+    static void sort(long[] keys, long[] postings, int from, int to){
+        while(to - from > INSERTION_SORT_SIZE){
+            int low = from - 1;
+            int high = to;
+            int mid = (from + to - 1) >>> 1;
+            long pivotKey = keys[mid];
+            long pivotPosting = postings[mid];
+            while(true){
+                do {
+                    low++;
+                } while(less(keys[low], postings[low], pivotKey, pivotPosting));
+                do {
+                    high--;
+                } while(less(pivotKey, pivotPosting, keys[high], postings[high]));
+                if(low >= high){
+                    break;
+                }
+                swap(keys, postings, low, high);
+            }
+            //the smaller part is sorted by recursion, so the stack stays shallow
+            if(high + 1 - from < to - high - 1){
+                sort(keys, postings, from, high + 1);
+                from = high + 1;
+            }else{
+                sort(keys, postings, high + 1, to);
+                to = high + 1;
+            }
+        }
+        for(int idx = from + 1; idx < to; idx++){
+            for(int other = idx; other > from && less(keys[other], postings[other], keys[other - 1], postings[other - 1]); other--){
+                swap(keys, postings, other, other - 1);
+            }
+        }
+    }
+
+    private static boolean less(long key, long posting, long otherKey, long otherPosting){
+        return key < otherKey || (key == otherKey && posting < otherPosting);
+    }
+
+    private static void swap(long[] keys, long[] postings, int idx, int other){
+        long key = keys[idx];
+        keys[idx] = keys[other];
+        keys[other] = key;
+        long posting = postings[idx];
+        postings[idx] = postings[other];
+        postings[other] = posting;
+    }
+
+    public long getGameCount(){
+        return gameCount;
+    }
+
+    public long getPostingCount(){
+        return postingCount;
+    }
+
+    /**
+     * @return the number of games which were not indexed, because their dimension is not the one of the first game
+     */
+    public long getSkippedCount(){
+        return skippedCount;
+    }
+
+    /**
+     * @return the number of different positions, known after {@link #finish()}
+     */
+    public long getKeyCount(){
+        return keyCount;
+    }
+
+    /**
+     * Index an archive.
+     *
+     * Usage: PositionIndexBuilder archive directory [shards [megabytes]], e.g. PositionIndexBuilder games.c4r positions 64 256
+     */
+    public static void main(String[] args) throws IOException {
+        File archive = new File(args[0]);
+        File directory = new File(args.length > 1 ? args[1] : "positions");
+        int shardCount = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int megabytes = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+
+        PositionIndexBuilder builder = new PositionIndexBuilder(directory, shardCount, megabytes);
+        GameRecord record = new GameRecord();
+        long start = System.nanoTime();
+        try(GameRecordReader reader = new GameRecordReader(new BufferedInputStream(new FileInputStream(archive)))){
+            while(reader.next(record)){
+                builder.add(record);
+            }
+        }
+        long read = System.nanoTime() - start;
+        builder.finish();
+        long elapsed = System.nanoTime() - start;
+        System.out.println(String.format("%d games, %d postings, %d positions, %d games skipped", builder.getGameCount(),
+                builder.getPostingCount(), builder.getKeyCount(), builder.getSkippedCount()));
+        System.out.println(String.format("Indexed in %.1f s: %.1f s to read and sort the runs, %.1f s to merge them",
+                elapsed / 1e9, read / 1e9, (elapsed - read) / 1e9));
+    }
+
+    /**
+     * A sorted run file which is read one entry after another.
+     */
+    private static final class Run implements Comparable<Run> {
+        private final DataInputStream in;
+        private long key;
+        private long posting;
+
+        Run(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER_BYTES));
+        }
+
+        /**
+         * @return {@code false} at the end of the run
+         */
+        boolean next() throws IOException {
+            try {
+                key = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            posting = in.readLong();
+            return true;
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+
+        @Override
+        public int compareTo(Run other){
+            return key != other.key ? Long.compare(key, other.key) : Long.compare(posting, other.posting);
+        }
+    }
+}
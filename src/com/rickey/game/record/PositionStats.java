@@ -0,0 +1,106 @@
+package com.rickey.game.record;
+
+/**
+ * The class {@code PositionStats} is the answer of a {@link PositionIndex} for one
+ * position: how many archived games reached it, how they ended, and which column was
+ * played next in each of them.
+ *
+ * The counts are kept per next column and result. Column 0 stands for the games which
+ * ended at the position, e.g. the position is a win or the archive holds the game
+ * only up to there.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class PositionStats {
+    private static final int RESULTS = GameRecord.RESULT_DRAW + 1;
+
+    private final int width;
+    //counts[column * RESULTS + result]
+    private final long[] counts;
+
+    PositionStats(int width){
+        this.width = width;
+        counts = new long[(width + 1) * RESULTS];
+    }
+
+    void add(int column, int result, long count){
+        counts[column * RESULTS + result] += count;
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    /**
+     * @return the number of games which reached the position
+     */
+    public long getGameCount(){
+        long total = 0;
+        for(long count : counts){
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @param result
+     *         one of the {@code RESULT_*} constants of {@link GameRecord}
+     * @return the number of games with the result which reached the position
+     */
+    public long getResultCount(int result){
+        long total = 0;
+        for(int column = 0; column <= width; column++){
+            total += counts[column * RESULTS + result];
+        }
+        return total;
+    }
+
+    /**
+     * @param column
+     *         the next column, starting from 1, 0 for the games which ended at the position
+     * @return the number of games which went on with the column
+     */
+    public long getContinuationCount(int column){
+        long total = 0;
+        for(int result = 0; result < RESULTS; result++){
+            total += counts[column * RESULTS + result];
+        }
+        return total;
+    }
+
+    /**
+     * @param column
+     *         the next column, starting from 1, 0 for the games which ended at the position
+     * @param result
+     *         one of the {@code RESULT_*} constants of {@link GameRecord}
+     * @return the number of games with the result which went on with the column
+     */
+    public long getContinuationCount(int column, int result){
+        return counts[column * RESULTS + result];
+    }
+
+    /**
+     * @return e.g. "120 games: 48% first player wins, 40% second player wins, 12% draws, 0% unfinished"
+     */
+    static String toString(long games, long firstWins, long secondWins, long draws, long unfinished){
+        double percent = games == 0 ? 0 : 100.0 / games;
+        return String.format("%d games: %.0f%% first player wins, %.0f%% second player wins, %.0f%% draws, %.0f%% unfinished",
+                games, firstWins * percent, secondWins * percent, draws * percent, unfinished * percent);
+    }
+
+    @Override
+    public String toString(){
+        return toString(getGameCount(), getResultCount(GameRecord.RESULT_FIRST_PLAYER_WIN), getResultCount(GameRecord.RESULT_SECOND_PLAYER_WIN),
+                getResultCount(GameRecord.RESULT_DRAW), getResultCount(GameRecord.RESULT_UNFINISHED));
+    }
+
+    /**
+     * @return the statistics of the games which went on with the column, in the format of {@link #toString()}
+     */
+    public String toString(int column){
+        return toString(getContinuationCount(column), getContinuationCount(column, GameRecord.RESULT_FIRST_PLAYER_WIN),
+                getContinuationCount(column, GameRecord.RESULT_SECOND_PLAYER_WIN), getContinuationCount(column, GameRecord.RESULT_DRAW),
+                getContinuationCount(column, GameRecord.RESULT_UNFINISHED));
+    }
+}
@@ -0,0 +1,556 @@
+package com.rickey.game.server;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.metrics.Metrics;
+import com.rickey.game.strategy.ConnectWinStrategy;
+import com.rickey.game.strategy.IWinStrategy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The class {@code GameServer} hosts many ConnectFour games on a TCP port. The
+ * connections are served by a small pool of selector loops, every loop is one
+ * thread with its own {@link Selector}.
+ *
+ * The clients talk with a line protocol:
+ * <pre>
+ * JOIN &lt;name&gt;       wait for an opponent, answered by WAIT, then START &lt;width&gt; &lt;height&gt; &lt;player&gt; &lt;opponent&gt; &lt;game&gt;
+ * SPECTATE &lt;game&gt;   watch a game until it ends, without playing in it
+ * MOVE &lt;column&gt;     drop a disc, the column starts from 1
+ * UNDO               take back the latest move
+ * BOARD              print the panel, followed by END
+ * PING               answered by PONG
+ * METRICS [JSON]     print the metrics of the game engine as text lines or one JSON line, followed by END
+ * QUIT               answered by BYE, then the connection is closed
+ * </pre>
+ * A wrong command is answered by ERROR &lt;reason&gt;. The messages of a game are
+ * described by {@link ServerGame}.
+ *
+ * When two players are matched, the one who joined later moves to the selector loop
+ * of the other one, so a game is only touched by one thread. A spectator moves to
+ * the selector loop of the game it watches the same way. A connection which sends
+ * nothing for the idle timeout is closed, unless it plays or watches a game: a
+ * spectator only reads, and a player may wait long for a slow opponent.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class GameServer {
+    public static final int DEFAULT_PORT = 4004;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000L;
+    public static final int MAX_LINE_LENGTH = 256;
+
+    private final ServerSocketChannel serverChannel;
+    private final SelectorLoop[] loops;
+    private final long idleTimeoutMillis;
+    private final IWinStrategy winStrategy;
+    private final int width;
+    private final int height;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final AtomicInteger nextGameId = new AtomicInteger();
+    //the games which are not finished, by id, to find the game of a spectator
+    private final ConcurrentHashMap<Integer, ServerGame> games = new ConcurrentHashMap<>();
+    private volatile boolean running;
+    //the session waiting for an opponent, guarded by this server
+    private ServerSession waiting;
+
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final LongAdder acceptedSessions = new LongAdder();
+    private final LongAdder idleTimeouts = new LongAdder();
+    private final LongAdder startedGames = new LongAdder();
+    private final LongAdder finishedGames = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+
+    /**
+     * Constructs a server for 7 * 6 ConnectFour games.
+     *
+     * @param address
+     *         the address to listen on, port 0 for any free port
+     * @param loopCount
+     *         the number of selector loops
+     * @param idleTimeoutMillis
+     *         a connection which sends nothing for so long is closed
+     * @throws IOException
+     *          if the server cannot listen on the address
+     */
+    public GameServer(InetSocketAddress address, int loopCount, long idleTimeoutMillis) throws IOException {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        width = 7;
+        height = 6;
+        winStrategy = new ConnectWinStrategy(4);
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address, 1024);
+        serverChannel.configureBlocking(false);
+        loops = new SelectorLoop[loopCount];
+        for(int idx = 0; idx < loopCount; idx++){
+            loops[idx] = new SelectorLoop(idx);
+        }
+        //the first loop accepts the connections too
+        serverChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Start the threads of the selector loops.
+     */
+    public void start(){
+        running = true;
+        for(SelectorLoop loop : loops){
+            loop.thread.start();
+        }
+    }
+
+    /**
+     * Close all connections and stop the threads.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        for(SelectorLoop loop : loops){
+            loop.selector.wakeup();
+        }
+        for(SelectorLoop loop : loops){
+            loop.thread.join();
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            //the server is stopped anyway
+        }
+    }
+
+    public int getPort(){
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    IWinStrategy getWinStrategy(){
+        return winStrategy;
+    }
+
+    public int getLoopCount(){
+        return loops.length;
+    }
+
+    public int getOpenSessions(){
+        return openSessions.get();
+    }
+
+    public long getAcceptedSessions(){
+        return acceptedSessions.sum();
+    }
+
+    public long getIdleTimeouts(){
+        return idleTimeouts.sum();
+    }
+
+    public long getStartedGames(){
+        return startedGames.sum();
+    }
+
+    public long getFinishedGames(){
+        return finishedGames.sum();
+    }
+
+    public long getMoves(){
+        return moves.sum();
+    }
+
+    /**
+     * @return the CPU time used by the selector loops so far
+     */
+    public long getCpuNanos(){
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for(SelectorLoop loop : loops){
+            total += Math.max(0, threadBean.getThreadCpuTime(loop.thread.getId()));
+        }
+        return total;
+    }
+
+    void moveHandled(){
+        moves.increment();
+    }
+
+    void gameFinished(ServerGame game){
+        games.remove(game.getId());
+        finishedGames.increment();
+    }
+
+    /**
+     * Handle a line from a client, in the thread of the loop of the session.
+     */
+    void handle(ServerSession session, String line){
+        int space = line.indexOf(' ');
+        String command = (space < 0 ? line : line.substring(0, space)).toUpperCase();
+        String argument = space < 0 ? "" : line.substring(space + 1).trim();
+        ServerGame game = session.getGame();
+        switch (command){
+            case "JOIN":
+                join(session, argument);
+                break;
+            case "SPECTATE":
+                spectate(session, argument);
+                break;
+            case "MOVE":
+                if(game == null){
+                    session.send("ERROR not in a game");
+                    break;
+                }
+                int column;
+                try {
+                    column = Integer.parseInt(argument);
+                } catch (NumberFormatException e) {
+                    session.send(String.format("ERROR invalid column [%s]", argument));
+                    break;
+                }
+                game.move(session, column);
+                break;
+            case "UNDO":
+                if(game == null){
+                    session.send("ERROR not in a game");
+                    break;
+                }
+                game.undo(session);
+                break;
+            case "BOARD":
+                if(game == null){
+                    session.send("ERROR not in a game");
+                    break;
+                }
+                game.display(session);
+                break;
+            case "PING":
+                session.send("PONG");
+                break;
+            case "METRICS":
+                sendMetrics(session, "JSON".equalsIgnoreCase(argument));
+                break;
+            case "QUIT":
+                session.close("BYE");
+                break;
+            case "":
+                break;
+            default:
+                session.send(String.format("ERROR unknown command [%s]", command));
+                break;
+        }
+    }
+
+    /**
+     * Send the metrics of {@link Metrics}, they are only recorded with -Dconnectfour.metrics=true.
+     */
+    private void sendMetrics(ServerSession session, boolean json){
+        if(json){
+            session.send(Metrics.toJson());
+        }else{
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Metrics.dumpText(new PrintStream(bytes));
+            for(String line : bytes.toString().split("\r?\n")){
+                if(!line.isEmpty()){
+                    session.send(line);
+                }
+            }
+        }
+        session.send("END");
+    }
+
+    /**
+     * Match the session with the waiting one, or let it wait.
+     */
+    private void join(final ServerSession session, String name){
+        if(name.isEmpty() || name.indexOf(' ') >= 0){
+            session.send("ERROR a name without spaces is needed");
+            return;
+        }
+        if(session.getWatchedGame() != null){
+            session.send("ERROR spectating a game");
+            return;
+        }
+        final ServerSession opponent;
+        synchronized (this){
+            if(session.getGame() != null || session.isWaiting()){
+                session.send("ERROR already joined");
+                return;
+            }
+            session.setName(name);
+            if(waiting == null){
+                waiting = session;
+                session.setWaiting(true);
+                session.send("WAIT");
+                return;
+            }
+            //the opponent stays marked as waiting until the game starts
+            opponent = waiting;
+            waiting = null;
+        }
+
+        final SelectorLoop target = opponent.getLoop();
+        if(target == session.getLoop()){
+            startGame(opponent, session);
+            return;
+        }
+        SelectorLoop source = session.getLoop();
+        source.removeSession(session);
+        session.unregister();
+        //the target loop takes the session over once this thread has left handleLines
+        session.handOff(() -> target.execute(() -> {
+            try {
+                target.addSession(session);
+            } catch (IOException e) {
+                session.close(null);
+                return;
+            }
+            if(opponent.isClosed()){
+                synchronized (GameServer.this){
+                    session.setWaiting(false);
+                }
+                join(session, session.getName());
+            }else{
+                startGame(opponent, session);
+            }
+            session.handleLines();
+        }));
+    }
+
+    /**
+     * Let the session watch a game. The session moves to the loop of the game, like
+     * a player who joins the opponent.
+     */
+    private void spectate(final ServerSession session, String argument){
+        boolean waiting;
+        synchronized (this){
+            waiting = session.isWaiting();
+        }
+        if(session.getGame() != null || waiting || session.getWatchedGame() != null){
+            session.send("ERROR already joined");
+            return;
+        }
+        final ServerGame game;
+        try {
+            game = games.get(Integer.parseInt(argument));
+        } catch (NumberFormatException e) {
+            session.send(String.format("ERROR invalid game [%s]", argument));
+            return;
+        }
+        if(game == null){
+            session.send(String.format("ERROR no game [%s]", argument));
+            return;
+        }
+        final SelectorLoop target = game.getLoop();
+        if(target == session.getLoop()){
+            game.watch(session);
+            return;
+        }
+        session.getLoop().removeSession(session);
+        session.unregister();
+        session.handOff(() -> target.execute(() -> {
+            try {
+                target.addSession(session);
+            } catch (IOException e) {
+                session.close(null);
+                return;
+            }
+            //the game may have finished in the meantime, watch tells the session then
+            game.watch(session);
+            session.handleLines();
+        }));
+    }
+
+    private void startGame(ServerSession first, ServerSession second){
+        synchronized (this){
+            first.setWaiting(false);
+            second.setWaiting(false);
+        }
+        startedGames.increment();
+        ServerGame game = new ServerGame(this, nextGameId.incrementAndGet(), first, second);
+        games.put(game.getId(), game);
+        game.start();
+    }
+
+    /**
+     * Called when a session is closed, in the thread of its loop.
+     */
+    void sessionClosed(ServerSession session){
+        synchronized (this){
+            if(waiting == session){
+                waiting = null;
+            }
+        }
+        if(session.getGame() != null){
+            session.getGame().abandon(session);
+        }
+        if(session.getWatchedGame() != null){
+            session.getWatchedGame().unwatch(session);
+        }
+        openSessions.decrementAndGet();
+    }
+
+    private void accept(){
+        try {
+            SocketChannel channel;
+            while((channel = serverChannel.accept()) != null){
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                final ServerSession session = new ServerSession(this, channel);
+                openSessions.incrementAndGet();
+                acceptedSessions.increment();
+                final SelectorLoop loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+                loop.execute(() -> {
+                    try {
+                        loop.addSession(session);
+                    } catch (IOException e) {
+                        session.close(null);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            //the client gave up before it was accepted
+        }
+    }
+
+    /**
+     * One thread with its own selector. Other threads hand work to the loop with
+     * {@link #execute(Runnable)}.
+     */
+    final class SelectorLoop implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final Set<ServerSession> sessions = new HashSet<>();
+
+        private SelectorLoop(int index) throws IOException {
+            selector = Selector.open();
+            thread = new Thread(this, "game-server-loop-" + index);
+            thread.setDaemon(true);
+        }
+
+        Selector getSelector(){
+            return selector;
+        }
+
+        /**
+         * Run a task in the thread of this loop.
+         */
+        void execute(Runnable task){
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        void addSession(ServerSession session) throws IOException {
+            session.register(this);
+            sessions.add(session);
+        }
+
+        void removeSession(ServerSession session){
+            sessions.remove(session);
+        }
+
+        @Override
+        public void run() {
+            long checkInterval = Math.max(10, Math.min(1000, idleTimeoutMillis / 4));
+            long nextIdleCheck = System.currentTimeMillis() + checkInterval;
+            while(running){
+                try {
+                    selector.select(checkInterval);
+                } catch (IOException e) {
+                    throw new GameSystemException(String.format("Internal error: selector failed, %s", e.getMessage()));
+                }
+                Runnable task;
+                while((task = tasks.poll()) != null){
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while(keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if(!key.isValid()){
+                        continue;
+                    }
+                    if(key.isAcceptable()){
+                        accept();
+                        continue;
+                    }
+                    ServerSession session = (ServerSession) key.attachment();
+                    if(key.isWritable()){
+                        session.flush();
+                    }
+                    if(key.isValid() && key.isReadable()){
+                        session.read();
+                    }
+                }
+                long now = System.currentTimeMillis();
+                if(now >= nextIdleCheck){
+                    closeIdleSessions(now);
+                    nextIdleCheck = now + checkInterval;
+                }
+            }
+            for(ServerSession session : new ArrayList<>(sessions)){
+                session.close(null);
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                //the loop is stopped anyway
+            }
+        }
+
+        private void closeIdleSessions(long now){
+            List<ServerSession> idle = new ArrayList<>();
+            for(ServerSession session : sessions){
+                if(session.getGame() == null && session.getWatchedGame() == null
+                        && now - session.getLastActivity() > idleTimeoutMillis){
+                    idle.add(session);
+                }
+            }
+            for(ServerSession session : idle){
+                idleTimeouts.increment();
+                session.close("ERROR idle timeout");
+            }
+        }
+    }
+
+    /**
+     * Start a server and print its statistics every 10 seconds.
+     *
+     * Usage: GameServer [port [selectorLoops [idleTimeoutSeconds]]]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int loopCount = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long idleTimeoutMillis = args.length > 2 ? Long.parseLong(args[2]) * 1000L : DEFAULT_IDLE_TIMEOUT_MILLIS;
+        GameServer server = new GameServer(new InetSocketAddress(port), loopCount, idleTimeoutMillis);
+        server.start();
+        System.out.println(String.format("Listening on port %d with %d selector loops", server.getPort(), loopCount));
+        while(true){
+            Thread.sleep(10000L);
+            System.out.println(String.format("%d sessions open, %d games started, %d games finished, %d moves, %d idle timeouts",
+                    server.getOpenSessions(), server.getStartedGames(), server.getFinishedGames(), server.getMoves(),
+                    server.getIdleTimeouts()));
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.rickey.game.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The class {@code LoadGenerator} connects many clients to a {@link GameServer}
+ * and lets them play random moves against each other as fast as the server answers.
+ * All clients run in one thread with one selector.
+ *
+ * It reports the latency of the moves, from sending MOVE until the MOVED of the
+ * move arrives. When it starts the server itself, it also reports the CPU time of
+ * the server and the number of sessions served per core.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class LoadGenerator {
+    private final Selector selector;
+    private final Client[] clients;
+    private long[] latencies = new long[1 << 16];
+    private int latencyCount;
+    private long games;
+    private long errors;
+    private boolean running = true;
+
+    /**
+     * Connect the clients. Every client joins a game as soon as it is connected.
+     *
+     * @param address
+     *         the address of the server
+     * @param clientCount
+     *         the number of clients
+     */
+    public LoadGenerator(InetSocketAddress address, int clientCount) throws IOException {
+        selector = Selector.open();
+        clients = new Client[clientCount];
+        for(int idx = 0; idx < clientCount; idx++){
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            clients[idx] = new Client(channel, "load" + idx);
+            channel.register(selector, SelectionKey.OP_CONNECT, clients[idx]);
+            channel.connect(address);
+        }
+    }
+
+    /**
+     * Let the clients play for a while. The games running at the deadline are not
+     * finished, the clients simply stop moving.
+     *
+     * @param millis
+     *         how long to play
+     */
+    public void run(long millis) throws IOException {
+        long deadline = System.currentTimeMillis() + millis;
+        while(System.currentTimeMillis() < deadline){
+            selector.select(100);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while(keys.hasNext()){
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                try {
+                    if(key.isConnectable()){
+                        client.channel.finishConnect();
+                        key.interestOps(SelectionKey.OP_READ);
+                        client.send("JOIN " + client.name);
+                    }
+                    if(key.isValid() && key.isWritable()){
+                        client.flush(key);
+                    }
+                    if(key.isValid() && key.isReadable()){
+                        client.read(key);
+                    }
+                } catch (IOException e) {
+                    errors++;
+                    key.cancel();
+                    client.channel.close();
+                }
+            }
+        }
+        running = false;
+    }
+
+    /**
+     * Close all connections.
+     */
+    public void close() throws IOException {
+        for(Client client : clients){
+            client.channel.close();
+        }
+        selector.close();
+    }
+
+    public long getGames(){
+        return games;
+    }
+
+    public long getMoves(){
+        return latencyCount;
+    }
+
+    public long getErrors(){
+        return errors;
+    }
+
+    /**
+     * @return the latency which {@code percent} percent of the moves did not exceed, in nanoseconds
+     */
+    public long getLatencyPercentile(double percent){
+        if(latencyCount == 0){
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(latencyCount * percent / 100.0);
+        return sorted[Math.min(Math.max(rank, 1), latencyCount) - 1];
+    }
+
+    private void recordLatency(long nanos){
+        if(latencyCount == latencies.length){
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = nanos;
+    }
+
+    /**
+     * A client which plays random moves.
+     */
+    private final class Client {
+        private final SocketChannel channel;
+        private final String name;
+        private final ByteBuffer readBuffer = ByteBuffer.allocate(GameServer.MAX_LINE_LENGTH);
+        private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+        private final StringBuilder line = new StringBuilder();
+        private int[] heights;
+        private int maxY;
+        private int player;
+        private long sentAt;
+
+        private Client(SocketChannel channel, String name){
+            this.channel = channel;
+            this.name = name;
+        }
+
+        private void read(SelectionKey key) throws IOException {
+            if(channel.read(readBuffer) < 0){
+                throw new IOException("closed by the server");
+            }
+            readBuffer.flip();
+            while(readBuffer.hasRemaining()){
+                char c = (char) (readBuffer.get() & 0xff);
+                if(c == '\n'){
+                    handle(line.toString(), key);
+                    line.setLength(0);
+                }else{
+                    line.append(c);
+                }
+            }
+            readBuffer.clear();
+        }
+
+        private void handle(String message, SelectionKey key) throws IOException {
+            String[] words = message.split(" ");
+            switch (words[0]){
+                case "START":
+                    heights = new int[Integer.parseInt(words[1])];
+                    maxY = Integer.parseInt(words[2]);
+                    player = Integer.parseInt(words[3]);
+                    break;
+                case "TURN":
+                    if(running && Integer.parseInt(words[1]) == player){
+                        sentAt = System.nanoTime();
+                        send("MOVE " + randomColumn(), key);
+                    }
+                    break;
+                case "MOVED":
+                    heights[Integer.parseInt(words[2]) - 1]++;
+                    if(Integer.parseInt(words[1]) == player){
+                        recordLatency(System.nanoTime() - sentAt);
+                    }
+                    break;
+                case "WIN":
+                case "DRAW":
+                case "ABANDONED":
+                    games++;
+                    if(running){
+                        send("JOIN " + name, key);
+                    }
+                    break;
+                case "ERROR":
+                    errors++;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private int randomColumn(){
+            int open = 0;
+            for(int height : heights){
+                if(height < maxY){
+                    open++;
+                }
+            }
+            int choice = ThreadLocalRandom.current().nextInt(open);
+            for(int x = 0; ; x++){
+                if(heights[x] < maxY && choice-- == 0){
+                    return x + 1;
+                }
+            }
+        }
+
+        private void send(String message) throws IOException {
+            send(message, channel.keyFor(selector));
+        }
+
+        private void send(String message, SelectionKey key) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.US_ASCII));
+            if(writeQueue.isEmpty()){
+                channel.write(buffer);
+                if(!buffer.hasRemaining()){
+                    return;
+                }
+            }
+            writeQueue.add(buffer);
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        private void flush(SelectionKey key) throws IOException {
+            while(!writeQueue.isEmpty()){
+                ByteBuffer buffer = writeQueue.peek();
+                channel.write(buffer);
+                if(buffer.hasRemaining()){
+                    return;
+                }
+                writeQueue.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Usage: LoadGenerator [clients [seconds [host:port | embedded [selectorLoops]]]]
+     *
+     * With "embedded", the default, a server is started in this JVM on a free port.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int clientCount = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        String target = args.length > 2 ? args[2] : "embedded";
+        int loopCount = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        GameServer server = null;
+        InetSocketAddress address;
+        if("embedded".equals(target)){
+            server = new GameServer(new InetSocketAddress("127.0.0.1", 0), loopCount, GameServer.DEFAULT_IDLE_TIMEOUT_MILLIS);
+            server.start();
+            address = new InetSocketAddress("127.0.0.1", server.getPort());
+        }else{
+            int colon = target.lastIndexOf(':');
+            address = new InetSocketAddress(target.substring(0, colon), Integer.parseInt(target.substring(colon + 1)));
+        }
+
+        LoadGenerator generator = new LoadGenerator(address, clientCount);
+        long start = System.nanoTime();
+        long serverCpuStart = server == null ? 0 : server.getCpuNanos();
+        generator.run(seconds * 1000L);
+        long elapsed = System.nanoTime() - start;
+        long serverCpu = server == null ? 0 : server.getCpuNanos() - serverCpuStart;
+        generator.close();
+
+        System.out.println(String.format("%d clients, %d s: %d games, %d moves (%.0f moves/s), %d errors",
+                clientCount, seconds, generator.getGames(), generator.getMoves(), generator.getMoves() * 1e9 / elapsed,
+                generator.getErrors()));
+        System.out.println(String.format("Move latency: p50 %.3f ms, p99 %.3f ms, p99.9 %.3f ms, max %.3f ms",
+                generator.getLatencyPercentile(50) / 1e6, generator.getLatencyPercentile(99) / 1e6,
+                generator.getLatencyPercentile(99.9) / 1e6, generator.getLatencyPercentile(100) / 1e6));
+        if(server != null){
+            double cores = (double) serverCpu / elapsed;
+            System.out.println(String.format("Server: %d selector loops, %.2f cores busy, %.0f sessions per core, %.0f moves/s per core",
+                    server.getLoopCount(), cores, cores == 0 ? 0 : clientCount / cores,
+                    cores == 0 ? 0 : generator.getMoves() * 1e9 / elapsed / cores));
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.rickey.game.server;
+
+import com.rickey.game.common.GameUserException;
+import com.rickey.game.datamodel.Cell;
+import com.rickey.game.datamodel.ColorDisc;
+import com.rickey.game.datamodel.FallDownGridPanel;
+import com.rickey.game.datamodel.IDisc;
+import com.rickey.game.datamodel.Step;
+import com.rickey.game.spectator.SpectatorFeed;
+import com.rickey.game.strategy.IWinStrategy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * The class {@code ServerGame} is a game between two sessions of the
+ * {@link GameServer}. It follows the same rules as {@code ConnectGameController}:
+ * players take alternate turns, the player to move can undo the latest move, and
+ * after every move the game checks for a winner first, then for a draw.
+ *
+ * After every move, both players are told the move and then the state of the game:
+ * <pre>
+ * MOVED &lt;player&gt; &lt;column&gt;
+ * WIN &lt;player&gt; | DRAW | TURN &lt;player&gt;
+ * </pre>
+ *
+ * A game can be watched by spectators. The game publishes every move and undo to a
+ * {@link SpectatorFeed}, which is created for the first spectator. A spectator gets
+ * the frames of the feed as they are published, Base64 encoded, and the result:
+ * <pre>
+ * SPECTATING &lt;game&gt; &lt;width&gt; &lt;height&gt;
+ * FRAMES &lt;frames&gt;
+ * WIN &lt;player&gt; | DRAW | ABANDONED
+ * </pre>
+ * The first frame is a snapshot of the panel, a {@code SpectatorBoard} applies them.
+ * Spectators who read the same frames get the same line, it is encoded once.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class ServerGame {
+    private static final IDisc[] DISCS = {ColorDisc.RED_DISC, ColorDisc.GREEN_DISC};
+
+    private final ServerSession[] players;
+    private final FallDownGridPanel<IDisc> panel;
+    private final IWinStrategy winStrategy;
+    private final GameServer server;
+    private final int id;
+    //the loop of both players, the game and its spectators are only touched by its thread
+    private final GameServer.SelectorLoop loop;
+    private int currentPlayer = 0;
+    private boolean finished;
+    //created for the first spectator
+    private SpectatorFeed<IDisc> feed;
+    private final List<ServerSession> spectators = new ArrayList<>();
+    private final List<SpectatorFeed<IDisc>.Cursor> cursors = new ArrayList<>();
+
+    ServerGame(GameServer server, int id, ServerSession first, ServerSession second){
+        this.server = server;
+        this.id = id;
+        loop = first.getLoop();
+        players = new ServerSession[]{first, second};
+        panel = new FallDownGridPanel<>(server.getWidth(), server.getHeight());
+        winStrategy = server.getWinStrategy();
+    }
+
+    int getId(){
+        return id;
+    }
+
+    GameServer.SelectorLoop getLoop(){
+        return loop;
+    }
+
+    void start(){
+        for(int idx = 0; idx < players.length; idx++){
+            players[idx].setGame(this);
+            players[idx].send(String.format("START %d %d %d %s %d", panel.getMaxX(), panel.getMaxY(), idx + 1,
+                    players[1 - idx].getName(), id));
+        }
+        broadcast(String.format("TURN %d", currentPlayer + 1));
+    }
+
+    void move(ServerSession session, int column){
+        if(session != players[currentPlayer]){
+            session.send("ERROR not your turn");
+            return;
+        }
+        try {
+            panel.put(column, DISCS[currentPlayer]);
+        } catch (GameUserException e) {
+            session.send(String.format("ERROR %s", e.getMessage()));
+            return;
+        }
+        server.moveHandled();
+        Step<IDisc> step = panel.getLatestStep();
+        if(feed != null){
+            feed.stepIn(step);
+            sendFrames();
+        }
+        broadcast(String.format("MOVED %d %d", currentPlayer + 1, column));
+        //a failed send closes the session, and the game is abandoned
+        if(finished){
+            return;
+        }
+        if(winStrategy.isWin(panel, step)){
+            broadcast(String.format("WIN %d", currentPlayer + 1));
+            finish(String.format("WIN %d", currentPlayer + 1));
+        }else if(winStrategy.isGameADraw(panel)){
+            broadcast("DRAW");
+            finish("DRAW");
+        }else{
+            currentPlayer = 1 - currentPlayer;
+            broadcast(String.format("TURN %d", currentPlayer + 1));
+        }
+    }
+
+    /**
+     * Take back the latest move, the player who made it moves again.
+     */
+    void undo(ServerSession session){
+        if(session != players[currentPlayer]){
+            session.send("ERROR not your turn");
+            return;
+        }
+        Step<IDisc> step = panel.getLatestStep();
+        try {
+            panel.stepBack();
+        } catch (GameUserException e) {
+            session.send(String.format("ERROR %s", e.getMessage()));
+            return;
+        }
+        if(feed != null){
+            feed.stepBack(step);
+            sendFrames();
+        }
+        Cell<IDisc> cell = step.getCellChangeList().get(0).getCell();
+        currentPlayer = 1 - currentPlayer;
+        broadcast(String.format("UNDONE %d %d", currentPlayer + 1, cell.getPositionX() + 1));
+        if(finished){
+            return;
+        }
+        broadcast(String.format("TURN %d", currentPlayer + 1));
+    }
+
+    /**
+     * Send the panel as it is printed by the game controller, followed by a line END.
+     */
+    void display(ServerSession session){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        panel.displayGridPanel(new PrintStream(bytes));
+        for(String row : bytes.toString().split("\r?\n")){
+            session.send(row);
+        }
+        session.send("END");
+    }
+
+    /**
+     * A player left before the end, the game is over for the other one too.
+     */
+    void abandon(ServerSession session){
+        if(finished){
+            return;
+        }
+        for(ServerSession player : players){
+            if(player != session){
+                player.send("ABANDONED");
+            }
+        }
+        finish("ABANDONED");
+    }
+
+    /**
+     * Let a session watch the game. It is called in the thread of the loop of the game.
+     */
+    void watch(ServerSession session){
+        if(finished){
+            session.send(String.format("ERROR game [%d] is over", id));
+            return;
+        }
+        if(feed == null){
+            feed = new SpectatorFeed<>(panel);
+        }
+        spectators.add(session);
+        cursors.add(feed.subscribe());
+        session.setWatchedGame(this);
+        session.send(String.format("SPECTATING %d %d %d", id, panel.getMaxX(), panel.getMaxY()));
+        sendFrames();
+    }
+
+    /**
+     * A spectator left, e.g. its connection was closed.
+     */
+    void unwatch(ServerSession session){
+        int idx = spectators.indexOf(session);
+        if(idx >= 0){
+            spectators.remove(idx);
+            cursors.remove(idx);
+        }
+        session.setWatchedGame(null);
+    }
+
+    /**
+     * Send the new frames of the feed to every spectator. A spectator who is closed
+     * by a failed send leaves the lists, so they are walked from the end.
+     */
+    private void sendFrames(){
+        String line = null;
+        int start = -1;
+        int end = -1;
+        for(int idx = spectators.size() - 1; idx >= 0; idx--){
+            SpectatorFeed<IDisc>.Cursor cursor = cursors.get(idx);
+            if(!cursor.hasFrames()){
+                continue;
+            }
+            ByteBuffer frames = cursor.read();
+            if(line == null || frames.position() != start || frames.limit() != end){
+                start = frames.position();
+                end = frames.limit();
+                byte[] bytes = new byte[end - start];
+                frames.get(bytes);
+                line = "FRAMES " + Base64.getEncoder().encodeToString(bytes);
+            }
+            spectators.get(idx).send(line);
+        }
+    }
+
+    /**
+     * End the game, the spectators are told the result and stop watching. A game
+     * abandoned by a failed send while it was finishing is only finished once.
+     */
+    private void finish(String result){
+        if(finished){
+            return;
+        }
+        finished = true;
+        for(ServerSession player : players){
+            player.setGame(null);
+        }
+        for(int idx = spectators.size() - 1; idx >= 0; idx--){
+            //it is not watching any more when a failed send closes it
+            ServerSession spectator = spectators.get(idx);
+            spectator.setWatchedGame(null);
+            spectator.send(result);
+        }
+        spectators.clear();
+        cursors.clear();
+        server.gameFinished(this);
+    }
+
+    private void broadcast(String message){
+        for(ServerSession player : players){
+            player.send(message);
+        }
+    }
+}
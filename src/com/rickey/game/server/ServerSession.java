@@ -0,0 +1,232 @@
+package com.rickey.game.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+/**
+ * The class {@code ServerSession} is the connection of one client to the
+ * {@link GameServer}. It splits the input into lines, and queues the output
+ * until the channel can take it.
+ *
+ * A session is only touched by the thread of the selector loop it is registered
+ * with. Both sessions of a game are registered with the same loop.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class ServerSession {
+    private final GameServer server;
+    private final SocketChannel channel;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(GameServer.MAX_LINE_LENGTH);
+    private final ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<>();
+    private final StringBuilder line = new StringBuilder();
+    private GameServer.SelectorLoop loop;
+    private SelectionKey key;
+    private String name;
+    private ServerGame game;
+    //the game the session watches as a spectator
+    private ServerGame watchedGame;
+    private boolean waiting;
+    private boolean closed;
+    private long lastActivity;
+    //runs after the read buffer is compacted, e.g. the move to the loop of the opponent
+    private Runnable handOff;
+
+    ServerSession(GameServer server, SocketChannel channel){
+        this.server = server;
+        this.channel = channel;
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Register the session with a selector loop. It is called in the thread of the loop.
+     */
+    void register(GameServer.SelectorLoop loop) throws IOException {
+        this.loop = loop;
+        key = channel.register(loop.getSelector(), writeQueue.isEmpty() ? SelectionKey.OP_READ
+                : SelectionKey.OP_READ | SelectionKey.OP_WRITE, this);
+    }
+
+    /**
+     * Leave the current selector loop, e.g. to join the loop of the opponent.
+     */
+    void unregister(){
+        key.cancel();
+        key = null;
+        loop = null;
+    }
+
+    GameServer.SelectorLoop getLoop(){
+        return loop;
+    }
+
+    /**
+     * Read what the client sent, and handle every complete line.
+     */
+    void read(){
+        try {
+            if(channel.read(readBuffer) < 0){
+                close(null);
+                return;
+            }
+        } catch (IOException e) {
+            close(null);
+            return;
+        }
+        lastActivity = System.currentTimeMillis();
+        handleLines();
+    }
+
+    /**
+     * Handle the complete lines in the read buffer. It stops when the session moves
+     * to another loop, the new loop continues with the rest of the buffer. The move
+     * is handed off after the buffer is compacted, so the buffer and the line are
+     * never touched by two threads.
+     */
+    void handleLines(){
+        readBuffer.flip();
+        while(readBuffer.hasRemaining() && !closed && key != null){
+            char c = (char) (readBuffer.get() & 0xff);
+            if(c == '\n'){
+                String command = line.toString().trim();
+                line.setLength(0);
+                server.handle(this, command);
+            }else if(line.length() >= GameServer.MAX_LINE_LENGTH){
+                close("ERROR line too long");
+            }else{
+                line.append(c);
+            }
+        }
+        readBuffer.compact();
+        if(handOff != null){
+            Runnable task = handOff;
+            handOff = null;
+            task.run();
+        }
+    }
+
+    /**
+     * Run a task after the current lines are handled, it is the last thing this
+     * thread does with the session.
+     */
+    void handOff(Runnable task){
+        handOff = task;
+    }
+
+    /**
+     * Send a line to the client. What the channel cannot take now is sent when it
+     * becomes writable.
+     */
+    void send(String message){
+        if(closed){
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.US_ASCII));
+        if(writeQueue.isEmpty()){
+            try {
+                channel.write(buffer);
+            } catch (IOException e) {
+                close(null);
+                return;
+            }
+            if(!buffer.hasRemaining()){
+                return;
+            }
+        }
+        writeQueue.add(buffer);
+        if(key != null){
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Write the queued output, called when the channel is writable.
+     */
+    void flush(){
+        try {
+            while(!writeQueue.isEmpty()){
+                ByteBuffer buffer = writeQueue.peek();
+                channel.write(buffer);
+                if(buffer.hasRemaining()){
+                    return;
+                }
+                writeQueue.poll();
+            }
+            key.interestOps(SelectionKey.OP_READ);
+        } catch (IOException e) {
+            close(null);
+        }
+    }
+
+    /**
+     * Close the connection. The game of the session, if any, is abandoned.
+     *
+     * @param message
+     *         the last line sent to the client, {@code null} for none
+     */
+    void close(String message){
+        if(closed){
+            return;
+        }
+        if(message != null){
+            send(message);
+        }
+        closed = true;
+        if(key != null){
+            key.cancel();
+        }
+        if(loop != null){
+            loop.removeSession(this);
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //nothing else to do with a broken connection
+        }
+        server.sessionClosed(this);
+    }
+
+    boolean isClosed(){
+        return closed;
+    }
+
+    long getLastActivity(){
+        return lastActivity;
+    }
+
+    String getName(){
+        return name;
+    }
+
+    void setName(String name){
+        this.name = name;
+    }
+
+    ServerGame getGame(){
+        return game;
+    }
+
+    void setGame(ServerGame game){
+        this.game = game;
+    }
+
+    ServerGame getWatchedGame(){
+        return watchedGame;
+    }
+
+    void setWatchedGame(ServerGame watchedGame){
+        this.watchedGame = watchedGame;
+    }
+
+    boolean isWaiting(){
+        return waiting;
+    }
+
+    void setWaiting(boolean waiting){
+        this.waiting = waiting;
+    }
+}
@@ -0,0 +1,91 @@
+package com.rickey.game.spectator;
+
+import com.rickey.game.common.GameSystemException;
+
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+
+/**
+ * The class {@code SpectatorBoard} is the panel as a spectator sees it. It applies
+ * the frames of a {@link SpectatorFeed}, and prints the panel like
+ * {@code GridPanel.displayGridPanel}.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class SpectatorBoard {
+    private int width;
+    private int height;
+    private byte[] cells = new byte[0];
+    private int sequence;
+
+    /**
+     * Apply all frames of a buffer, from its position to its limit.
+     *
+     * @param frames
+     *         the frames read from a feed
+     */
+    public void apply(ByteBuffer frames){
+        while(frames.hasRemaining()){
+            byte type = frames.get();
+            sequence = frames.getInt();
+            if(type == SpectatorFeed.SNAPSHOT_FRAME){
+                width = frames.getShort();
+                height = frames.getShort();
+                if(cells.length != width * height){
+                    cells = new byte[width * height];
+                }
+                frames.get(cells);
+            }else if(type == SpectatorFeed.DELTA_FRAME){
+                int count = frames.getShort();
+                for(int idx = 0; idx < count; idx++){
+                    int x = frames.getShort();
+                    int y = frames.getShort();
+                    cells[x * height + y] = frames.get();
+                }
+            }else{
+                throw new GameSystemException(String.format("Internal error: unknown spectator frame [%d]", type));
+            }
+        }
+    }
+
+    /**
+     * @return the character of a cell, ' ' if it is empty
+     */
+    public char getCell(int x, int y){
+        return (char) cells[x * height + y];
+    }
+
+    public int getWidth(){
+        return width;
+    }
+
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * @return the sequence number of the latest frame applied
+     */
+    public int getSequence(){
+        return sequence;
+    }
+
+    /**
+     * Print the panel, the top row first.
+     *
+     * @param out
+     *         where to print the panel
+     */
+    public void display(PrintStream out){
+        StringBuilder stringBuilder = new StringBuilder(width * 2 + 1);
+        for(int y = height - 1; y >= 0; y--){
+            stringBuilder.setLength(0);
+            for(int x = 0; x < width; x++){
+                stringBuilder.append('|').append((char) cells[x * height + y]);
+            }
+            stringBuilder.append('|');
+            out.println(stringBuilder);
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.rickey.game.spectator;
+
+import com.rickey.game.common.GameSystemException;
+import com.rickey.game.datamodel.Cell;
+import com.rickey.game.datamodel.CellChange;
+import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IDisc;
+import com.rickey.game.datamodel.Step;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The class {@code SpectatorFeed} lets many spectators watch one game without
+ * rendering the panel for every spectator. Every change of the panel is encoded
+ * once, as a small delta frame built from the cell changes of a {@link Step}, and
+ * appended to a log in one direct {@link ByteBuffer}. The spectators read the log
+ * through their own {@link Cursor}, which is a read-only view of the same buffer,
+ * so no bytes are copied or encoded per spectator.
+ *
+ * The log always starts with a snapshot frame of the whole panel, so a spectator
+ * who joins late reads the snapshot and the deltas after it. When the log is full,
+ * it starts again with a new snapshot, and every cursor reads from there.
+ * <pre>
+ * snapshot: 'S', sequence (int), width (short), height (short), a byte per cell, cell (x, y) at x * height + y
+ * delta:    'D', sequence (int), count (short), count * (x (short), y (short), cell (byte))
+ * </pre>
+ * A cell is the first character of the short display of its disc, or ' ' when it
+ * is empty. {@link SpectatorBoard} applies the frames and prints the panel.
+ *
+ * A feed is not thread safe, the game and its spectators use it in one thread,
+ * like a game of the server is only touched by its selector loop.
+ *
+ * @author Rickey Shao
+ * @since 1.2
+ */
+public class SpectatorFeed<T extends IDisc> {
+    public static final byte SNAPSHOT_FRAME = 'S';
+    public static final byte DELTA_FRAME = 'D';
+    public static final byte EMPTY_CELL = ' ';
+    //the log holds at least this many bytes of deltas after the snapshot
+    public static final int DEFAULT_DELTA_BYTES = 1 << 16;
+
+    private static final int HEADER_BYTES = 1 + 4;
+    private static final int CHANGE_BYTES = 2 + 2 + 1;
+
+    private final int width;
+    private final int height;
+    //the cells as the spectators see them, to write the snapshots
+    private final byte[] cells;
+    private final ByteBuffer log;
+    private int epoch;
+    private int sequence;
+    //the discs seen so far, with their cell bytes
+    private IDisc[] discs = new IDisc[0];
+    private byte[] discBytes = new byte[0];
+
+    /**
+     * Constructs a feed of a panel, which starts with a snapshot of the panel.
+     *
+     * @param panel
+     *         the panel of the game
+     */
+    public SpectatorFeed(GridPanel<T> panel){
+        this(panel, DEFAULT_DELTA_BYTES);
+    }
+
+    /**
+     * Constructs a feed of a panel, which starts with a snapshot of the panel.
+     *
+     * @param panel
+     *         the panel of the game
+     * @param deltaBytes
+     *         the room for the deltas in the log, after the snapshot
+     */
+    public SpectatorFeed(GridPanel<T> panel, int deltaBytes){
+        width = panel.getMaxX();
+        height = panel.getMaxY();
+        if(width > Short.MAX_VALUE || height > Short.MAX_VALUE){
+            throw new GameSystemException(String.format("Internal error: a %d * %d panel is too large to watch.", width, height));
+        }
+        cells = new byte[width * height];
+        for(int x = 0; x < width; x++){
+            for(int y = 0; y < height; y++){
+                T data = panel.getData(x, y);
+                cells[x * height + y] = data == null ? EMPTY_CELL : toByte(data);
+            }
+        }
+        log = ByteBuffer.allocateDirect(snapshotBytes() + Math.max(deltaBytes, HEADER_BYTES + 2 + CHANGE_BYTES));
+        writeSnapshot();
+    }
+
+    /**
+     * Publish the step which was just taken, or redone.
+     *
+     * @param step
+     *         the latest step of the panel
+     */
+    public void stepIn(Step<T> step){
+        publish(step.getCellChangeList(), false);
+    }
+
+    /**
+     * Publish the step which was just taken back. The step must be read from the
+     * panel before it is taken back.
+     *
+     * @param step
+     *         the step which was taken back
+     */
+    public void stepBack(Step<T> step){
+        publish(step.getCellChangeList(), true);
+    }
+
+    /**
+     * Encode the cell changes as one delta frame.
+     *
+     * @param changes
+     *         the cell changes of a step
+     * @param undo
+     *         {@code true} to publish the previous values of the cells
+     */
+    public void publish(List<CellChange<T>> changes, boolean undo){
+        int count = changes.size();
+        int frameBytes = HEADER_BYTES + 2 + count * CHANGE_BYTES;
+        for(int idx = 0; idx < count; idx++){
+            CellChange<T> change = changes.get(idx);
+            Cell<T> cell = change.getCell();
+            T data = undo ? change.getPreviousValue() : change.getCurrentValue();
+            cells[cell.getPositionX() * height + cell.getPositionY()] = data == null ? EMPTY_CELL : toByte(data);
+        }
+        if(count > Short.MAX_VALUE || log.position() + frameBytes > log.capacity()){
+            //the snapshot has the changes, the cursors read from it again
+            epoch++;
+            log.clear();
+            writeSnapshot();
+            return;
+        }
+        log.put(DELTA_FRAME).putInt(++sequence).putShort((short) count);
+        for(int idx = 0; idx < count; idx++){
+            Cell<T> cell = changes.get(idx).getCell();
+            int x = cell.getPositionX();
+            int y = cell.getPositionY();
+            log.putShort((short) x).putShort((short) y).put(cells[x * height + y]);
+        }
+    }
+
+    /**
+     * Add a spectator, who reads the latest snapshot first.
+     *
+     * @return the cursor of the spectator
+     */
+    public Cursor subscribe(){
+        return new Cursor();
+    }
+
+    /**
+     * @return the sequence number of the latest frame
+     */
+    public int getSequence(){
+        return sequence;
+    }
+
+    /**
+     * @return the number of bytes in the log, from the latest snapshot
+     */
+    public int getLogBytes(){
+        return log.position();
+    }
+
+    private int snapshotBytes(){
+        return HEADER_BYTES + 2 + 2 + cells.length;
+    }
+
+    private void writeSnapshot(){
+        log.put(SNAPSHOT_FRAME).putInt(++sequence).putShort((short) width).putShort((short) height).put(cells);
+    }
+
+    private byte toByte(T data){
+        for(int idx = 0; idx < discs.length; idx++){
+            if(discs[idx] == data){
+                return discBytes[idx];
+            }
+        }
+        int idx = discs.length;
+        discs = Arrays.copyOf(discs, idx + 1);
+        discBytes = Arrays.copyOf(discBytes, idx + 1);
+        discs[idx] = data;
+        String display = data.getShortDisplay();
+        discBytes[idx] = display.isEmpty() ? EMPTY_CELL : (byte) display.charAt(0);
+        return discBytes[idx];
+    }
+
+    /**
+     * The reading position of a spectator in the log.
+     */
+    public class Cursor {
+        //a read-only view of the log, only the position and the limit belong to the cursor
+        private final ByteBuffer view = log.asReadOnlyBuffer();
+        private int cursorEpoch = epoch;
+        private int position;
+
+        /**
+         * Read the frames which were published since the latest read, the first
+         * read starts with a snapshot.
+         *
+         * @return a view of the frames, it is valid until the next change of the feed
+         */
+        public ByteBuffer read(){
+            if(cursorEpoch != epoch){
+                cursorEpoch = epoch;
+                position = 0;
+            }
+            view.limit(log.position());
+            view.position(position);
+            position = log.position();
+            return view;
+        }
+
+        /**
+         * @return {@code true} if there are frames which were not read yet
+         */
+        public boolean hasFrames(){
+            return cursorEpoch != epoch || position < log.position();
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.rickey.game.strategy;
 
+import com.rickey.game.datamodel.BitboardGridPanel;
 import com.rickey.game.datamodel.Cell;
 import com.rickey.game.datamodel.CellChange;
 import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IDisc;
+import com.rickey.game.datamodel.LineTrackingGridPanel;
+import com.rickey.game.datamodel.PackedGridPanel;
 import com.rickey.game.datamodel.Step;
+import com.rickey.game.metrics.Metrics;
+import com.rickey.game.metrics.Probe;
 
 /**
  * An implement class of interface {@code IWinStrategy}.
@@ -20,12 +26,22 @@ public class ConnectWinStrategy implements IWinStrategy {
             {1, 1},    //diagonal
             {1, -1}};  //back diagonal
 
+    private static final Probe WIN_PROBE = Metrics.probe("strategy.isWin");
+    private static final Probe DRAW_PROBE = Metrics.probe("strategy.isGameADraw");
+
     private int winCount;
 
     public ConnectWinStrategy(int count){
         winCount = count;
     }
 
+    /**
+     * @return the number of connected discs to win
+     */
+    public int getWinCount(){
+        return winCount;
+    }
+
     /**
      * After a cell is filled, check whether the current player is a winner.
      * If the player connects more than three discs of his color in a
@@ -43,21 +59,69 @@ public class ConnectWinStrategy implements IWinStrategy {
      */
     @Override
     public boolean isWin(GridPanel panel, Step step) {
+        long start = WIN_PROBE.start();
+        boolean win = checkWin(panel, step);
+        WIN_PROBE.stop(start);
+        return win;
+    }
+
+    private boolean checkWin(GridPanel panel, Step step) {
         //For 'Connect *' games, there is only one cell change in a step
         Cell cell = ((CellChange)step.getCellChangeList().get(0)).getCell();
+        if(panel instanceof BitboardGridPanel){
+            //a bitboard panel reads the four lines through the cell from the mask of its owner
+            return ((BitboardGridPanel) panel).isWinAt(cell.getPositionX(), cell.getPositionY(), winCount);
+        }
+        if(isTracking(panel)){
+            //a line tracking panel has counted the discs of every segment through the cell
+            return ((LineTrackingGridPanel) panel).isWinAt(cell.getPositionX(), cell.getPositionY());
+        }
+        if(panel instanceof PackedGridPanel){
+            return isWin((PackedGridPanel) panel, cell.getPositionX(), cell.getPositionY());
+        }
+        return isWin(panel, cell.getPositionX(), cell.getPositionY(), cell.getData());
+    }
+
+    /**
+     * The same check as {@link #isWin(GridPanel, Step)}, but reads the panel by
+     * coordinates, so no object is created.
+     *
+     * @param panel
+     *         The grid panel where the strategy works on
+     * @param x
+     *         column index of the filled cell
+     * @param y
+     *         row index of the filled cell
+     * @return {@code true} if the owner of the cell is win, {@code false} otherwise
+     */
+    @Override
+    public boolean isWin(GridPanel panel, int x, int y) {
+        long start = WIN_PROBE.start();
+        boolean win;
+        if(isTracking(panel)){
+            win = ((LineTrackingGridPanel) panel).isWinAt(x, y);
+        }else if(panel instanceof BitboardGridPanel){
+            win = ((BitboardGridPanel) panel).isWinAt(x, y, winCount);
+        }else if(panel instanceof PackedGridPanel){
+            win = isWin((PackedGridPanel) panel, x, y);
+        }else{
+            win = isWin(panel, x, y, panel.getData(x, y));
+        }
+        WIN_PROBE.stop(start);
+        return win;
+    }
+
+    private boolean isWin(GridPanel panel, int x, int y, IDisc disc) {
+        if(null == disc){
+            return false;
+        }
         for(int n = 0; n < WIN_DIRECTIONS.length; n++){
             int[] direction = WIN_DIRECTIONS[n];
             int count = 1;
-            Cell tempCell = cell;
             //check positive direction
-            while ((tempCell = panel.getSameCell(tempCell, direction[0], direction[1])) != null){
-                count++;
-            }
+            count += countSameDiscs(panel, disc, x, y, direction[0], direction[1]);
             //check negative direction
-            tempCell = cell;
-            while ((tempCell = panel.getSameCell(tempCell, -direction[0], -direction[1])) != null){
-                count++;
-            }
+            count += countSameDiscs(panel, disc, x, y, -direction[0], -direction[1]);
             if(count >= winCount){
                 return true;
             }
@@ -66,11 +130,73 @@ public class ConnectWinStrategy implements IWinStrategy {
         return false;
     }
 
+    /**
+     * The same check on a packed panel, which compares the codes of the cells as ints.
+     */
+    private boolean isWin(PackedGridPanel panel, int x, int y) {
+        int code = panel.getCode(x, y);
+        if(code == 0){
+            return false;
+        }
+        for(int n = 0; n < WIN_DIRECTIONS.length; n++){
+            int[] direction = WIN_DIRECTIONS[n];
+            int count = 1 + countSameCodes(panel, code, x, y, direction[0], direction[1])
+                    + countSameCodes(panel, code, x, y, -direction[0], -direction[1]);
+            if(count >= winCount){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isTracking(GridPanel panel) {
+        return panel instanceof LineTrackingGridPanel && ((LineTrackingGridPanel) panel).getWinCount() == winCount;
+    }
+
+    /**
+     * Count the discs next to a cell in one direction which are the same as {@code disc}.
+     * No more than {@code winCount - 1} cells are visited, which is enough to find a win.
+     */
+    private int countSameDiscs(GridPanel panel, IDisc disc, int x, int y, int xDiff, int yDiff) {
+        int maxX = panel.getMaxX();
+        int maxY = panel.getMaxY();
+        int count = 0;
+        x += xDiff;
+        y += yDiff;
+        while (count < winCount - 1 && x >= 0 && x < maxX && y >= 0 && y < maxY && disc.equals(panel.getData(x, y))){
+            count++;
+            x += xDiff;
+            y += yDiff;
+        }
+        return count;
+    }
+
+    /**
+     * Count the cells next to a cell in one direction which have the same code, like
+     * {@link #countSameDiscs(GridPanel, IDisc, int, int, int, int)}.
+     */
+    private int countSameCodes(PackedGridPanel panel, int code, int x, int y, int xDiff, int yDiff) {
+        int maxX = panel.getMaxX();
+        int maxY = panel.getMaxY();
+        int count = 0;
+        x += xDiff;
+        y += yDiff;
+        while (count < winCount - 1 && x >= 0 && x < maxX && y >= 0 && y < maxY && panel.getCode(x, y) == code){
+            count++;
+            x += xDiff;
+            y += yDiff;
+        }
+        return count;
+    }
+
     /**
      * After a cell is filled, check whether the current state is a draw.
      * For connect games, when there is no place empty (also means the grid
      * panel is full), and no winners, it is a draw.
      *
+     * On a {@link LineTrackingGridPanel} it is a draw as soon as no line can be
+     * completed by any player, even if there are empty cells.
+     *
      * This check should be performed after win check {@code isWin()}.
      *
      * @param panel
@@ -80,6 +206,9 @@ public class ConnectWinStrategy implements IWinStrategy {
      */
     @Override
     public boolean isGameADraw(GridPanel panel) {
-        return panel.isPanelFull();
+        long start = DRAW_PROBE.start();
+        boolean draw = isTracking(panel) ? ((LineTrackingGridPanel) panel).isDrawn() || panel.isPanelFull() : panel.isPanelFull();
+        DRAW_PROBE.stop(start);
+        return draw;
     }
 }
\ No newline at end of file
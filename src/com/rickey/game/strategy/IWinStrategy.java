@@ -1,8 +1,13 @@
 package com.rickey.game.strategy;
 
+import com.rickey.game.datamodel.Cell;
+import com.rickey.game.datamodel.CellChange;
 import com.rickey.game.datamodel.GridPanel;
+import com.rickey.game.datamodel.IDisc;
 import com.rickey.game.datamodel.Step;
 
+import java.util.Collections;
+
 /**
  * An interface of the strategy on how to identify the winner in the game.
  *
@@ -22,6 +27,25 @@ public interface IWinStrategy {
      */
     public boolean isWin(GridPanel panel, Step step);
 
+    /**
+     * After a cell is filled, check whether the player who owns the cell is a winner.
+     * This check does not need a {@code Step}. By default it builds the step which
+     * filled the cell, a strategy which reads the panel by coordinates overrides it.
+     *
+     * @param panel
+     *         The grid panel where the strategy works on
+     * @param x
+     *         column index of the filled cell
+     * @param y
+     *         row index of the filled cell
+     * @return {@code true} if the owner of the cell is win, {@code false} otherwise
+     */
+    public default boolean isWin(GridPanel panel, int x, int y){
+        IDisc data = panel.getData(x, y);
+        CellChange<IDisc> change = new CellChange<>(new Cell<>(x, y, data), null, data);
+        return isWin(panel, new Step<>(Collections.singletonList(change)));
+    }
+
     /**
      * After a cell is filled, check whether the current state is a draw.
      * This check should be performed after win check {@code isWin()}.